@@ -0,0 +1,74 @@
+package com.awe.onlinestore.dao;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Base class for the hand-written, versioned binary codecs of the model classes.
+ *
+ * <p>Every record starts with a one-byte format version so fields can be added
+ * later without breaking existing files: a codec reads any version up to its
+ * own and writes only its own. Payloads that start with the Java serialization
+ * stream header are decoded with the legacy codec, which lets journals written
+ * before the binary format existed still be replayed.</p>
+ *
+ * @param <T> the record type
+ */
+abstract class BinaryCodec<T extends Serializable> implements RecordCodec<T> {
+    private final int version;
+    private final SerializingCodec<T> legacy;
+
+    BinaryCodec(int version, Class<T> type) {
+        this.version = version;
+        this.legacy = new SerializingCodec<>(type);
+    }
+
+    /**
+     * Writes the record's fields in the current format version.
+     */
+    abstract void writeFields(BinaryWriter out, T record);
+
+    /**
+     * Reads a record's fields written in the given format version.
+     */
+    abstract T readFields(BinaryReader in, int version) throws IOException;
+
+    final void write(BinaryWriter out, T record) {
+        out.writeByte(version);
+        writeFields(out, record);
+    }
+
+    final T read(BinaryReader in) throws IOException {
+        int recordVersion = in.readByte();
+        if (recordVersion < 1 || recordVersion > version) {
+            throw new IOException("Unsupported record version " + recordVersion);
+        }
+        return readFields(in, recordVersion);
+    }
+
+    @Override
+    public byte[] encode(T record) {
+        BinaryWriter out = new BinaryWriter(128);
+        write(out, record);
+        return out.toByteArray();
+    }
+
+    @Override
+    public T decode(byte[] bytes) throws IOException {
+        if (isJavaSerialized(bytes)) {
+            return legacy.decode(bytes);
+        }
+        return read(new BinaryReader(ByteBuffer.wrap(bytes)));
+    }
+
+    /**
+     * Checks for the {@code 0xACED} stream header written by {@code ObjectOutputStream}.
+     *
+     * @param bytes the bytes to check
+     * @return true if the bytes hold a Java serialization stream
+     */
+    static boolean isJavaSerialized(byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+    }
+}
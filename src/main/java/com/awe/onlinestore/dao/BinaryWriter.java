@@ -0,0 +1,104 @@
+package com.awe.onlinestore.dao;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Growable NIO buffer for writing the compact binary record format.
+ *
+ * <p>Lengths and counts are written as unsigned LEB128 varints, strings as a
+ * varint of {@code byteLength + 1} followed by UTF-8 bytes ({@code 0} marks
+ * {@code null}), and numbers in big-endian fixed width.</p>
+ */
+final class BinaryWriter {
+    private ByteBuffer buffer;
+
+    BinaryWriter(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+    }
+
+    void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    void writeLong(long value) {
+        ensureCapacity(8);
+        buffer.putLong(value);
+    }
+
+    void writeDouble(double value) {
+        ensureCapacity(8);
+        buffer.putDouble(value);
+    }
+
+    void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Gets the number of bytes written since the last {@link #reset()}.
+     *
+     * @return written byte count
+     */
+    int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Gets the backing array; valid bytes are {@code [0, size())}.
+     *
+     * @return backing array
+     */
+    byte[] array() {
+        return buffer.array();
+    }
+
+    byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Discards everything written so far, keeping the allocated capacity.
+     */
+    void reset() {
+        buffer.clear();
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() >= extra) {
+            return;
+        }
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+}
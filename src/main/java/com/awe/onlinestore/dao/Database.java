@@ -3,44 +3,259 @@ package com.awe.onlinestore.dao;
 import com.awe.onlinestore.model.*;
 import org.springframework.stereotype.Repository;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.*;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * File-backed store for products, customers, orders and payments.
+ *
+ * <p>Each entity type is persisted as a snapshot file ({@code *.dat}) plus an
+ * append-only journal ({@code *.log}); see {@link EntityStore}. Saves append a
+ * single record to the journal rather than rewriting the snapshot, and a
+ * background compactor periodically folds the journal into a new snapshot so
+ * that {@link #init()} only has to replay a short tail on restart.</p>
+ *
+ * <p>Saves are write-behind: the in-memory map is updated immediately and the
+ * journal record is handed to a {@link GroupCommitter}, which coalesces all
+ * saves made within one flush interval into a single durable write. Every
+ * {@code save*} method returns a future that callers may wait on when they
+ * need the record to be on disk before continuing.</p>
+ *
+ * <p>The catalogue lives off-heap in a memory-mapped {@link ProductTable};
+ * the other entities are held encoded in a {@link SnapshotTable}. Stock
+ * changes are recorded as events in an {@link InventoryLedger}, which is the
+ * record of stock for every product it has seen; the catalogue's stock
+ * quantities are brought in line with it on startup.</p>
+ *
+ * <p>Orders, payments and stock changes that must be durable together are
+ * staged in a {@link UnitOfWork} from {@link #beginUnitOfWork()} and written
+ * as one record of a {@link TransactionLog}, so a checkout is a single
+ * journal write and a crash can never keep some of its writes and lose the
+ * rest. Every order and payment save goes through that log.</p>
+ *
+ * <p>Consistency model: the Database is safe to use from any number of
+ * request threads at once.</p>
+ * <ul>
+ *   <li>Saves to the same entity type are serialized. A saved product or
+ *       customer is visible to every reader as soon as the {@code save*}
+ *       call returns, before its future completes; orders, payments and
+ *       stock changes, which go through the transaction log, become visible
+ *       once they are durable, just before their future completes.</li>
+ *   <li>Each read returns a private copy of one whole saved version of a
+ *       record, never a mix of two saves. Changing the copy has no effect
+ *       until it is passed to the matching {@code save*} method.</li>
+ *   <li>There is no isolation across records: a listing or search running
+ *       during saves may show some of them and not others, but never fails
+ *       and never shows a record twice.</li>
+ *   <li>Concurrent saves of the same record are last-writer-wins; callers
+ *       doing read-modify-write, such as stock updates, must coordinate
+ *       among themselves.</li>
+ * </ul>
+ */
 @Repository
 public class Database {
-    private Map<String, Product> products;
-    private Map<String, Customer> customers;
-    private Map<String, Order> orders;
-    private Map<String, Payment> payments;
+    private static final long COMPACTION_INTERVAL_SECONDS = 30;
+    private static final long COMPACTION_THRESHOLD_BYTES = 1024 * 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5;
+
+    private ProductTable productTable;
+    private EntityStore<Product> products;
+    private EntityStore<Customer> customers;
+    private EntityStore<Order> orders;
+    private EntityStore<Payment> payments;
+    private InventoryLedger inventoryLedger;
+    private TransactionLog transactionLog;
     
-    private final String DATA_DIR = "data/";
-    private final String PRODUCTS_FILE = DATA_DIR + "products.dat";
-    private final String CUSTOMERS_FILE = DATA_DIR + "customers.dat";
-    private final String ORDERS_FILE = DATA_DIR + "orders.dat";
-    private final String PAYMENTS_FILE = DATA_DIR + "payments.dat";
+    private final String DATA_DIR;
+    private final long flushIntervalMillis;
+
+    private ProductSearchIndex searchIndex;
+    private ProductSuggestIndex suggestIndex;
+    private ProductCategoryIndex categoryIndex;
+    private ProductPriceIndex priceIndex;
+    private ProductBitmapIndex bitmapIndex;
+    private final AtomicLong catalogueVersion = new AtomicLong();
+    /** Serializes product saves against stock level saves, so neither overwrites the other. */
+    private final Object stockLock = new Object();
+    private volatile StockKeeper stockKeeper;
+    private GroupCommitter committer;
+    private ScheduledExecutorService compactor;
+
+    public Database() {
+        this("data/", DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Creates a database rooted at the given directory.
+     *
+     * @param dataDir directory holding the snapshot and journal files
+     * @param flushIntervalMillis how long the flusher gathers saves per group commit
+     */
+    Database(String dataDir, long flushIntervalMillis) {
+        this.DATA_DIR = dataDir.endsWith("/") ? dataDir : dataDir + "/";
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
 
     @PostConstruct
     public void init() {
         // Create data directory
         new File(DATA_DIR).mkdirs();
         
-        this.products = new HashMap<>();
-        this.customers = new HashMap<>();
-        this.orders = new HashMap<>();
-        this.payments = new HashMap<>();
+        this.committer = new GroupCommitter(flushIntervalMillis);
+        BinaryCodec<Product> productCodec = ModelCodecs.products();
+        this.productTable = new ProductTable(DATA_DIR, "products", productCodec);
+        this.products = new EntityStore<>(DATA_DIR, "products", productTable,
+                                          productCodec, Product::getProductId, committer);
+        this.customers = new EntityStore<>(DATA_DIR, "customers", ModelCodecs.customers(),
+                                           Customer::getCustomerId, committer);
+        // Orders are resolved against the catalogue and accounts, so those must be loaded first
+        BinaryCodec<Order> orderCodec = ModelCodecs.orders(this::getProduct, this::getCustomer);
+        BinaryCodec<Payment> paymentCodec = ModelCodecs.payments();
+        this.orders = new EntityStore<>(DATA_DIR, "orders", orderCodec, Order::getOrderId, committer);
+        this.payments = new EntityStore<>(DATA_DIR, "payments", paymentCodec, Payment::getPaymentId, committer);
         
         loadDataFromFiles();
+        buildProductIndexes();
+        openTransactionLog(ModelCodecs.transactions(orderCodec, paymentCodec));
         
         // Create sample data if no data exists
         if (products.isEmpty()) {
             createSampleData();
         }
+
+        compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> compactJournals(COMPACTION_THRESHOLD_BYTES),
+            COMPACTION_INTERVAL_SECONDS, COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (compactor == null) {
+            return;
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactor = null;
+
+        // Commit whatever is still queued before taking the final snapshot
+        committer.close();
+
+        // Leave a fresh snapshot behind so the next startup replays nothing
+        compactJournals(1);
+
+        for (Closeable store : closeables()) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("❌ Error closing journal: " + e.getMessage());
+            }
+        }
     }
 
     // Product operations
-    public void saveProduct(Product product) {
-        products.put(product.getProductId(), product);
-        saveProductsToFile();
+
+    /**
+     * Saves a product. A new product starts with the stock it is saved with.
+     * For a product already in the catalogue, the stock it is saved with is
+     * handed to the {@link StockKeeper} first, if one is registered, which
+     * moves its count and records the difference in the inventory ledger;
+     * the product is saved with the level the keeper settles on.
+     * Without one, a changed stock quantity of a product the ledger already
+     * records is recorded as a restock or a write-off here, so it is not lost
+     * when the catalogue is brought in line with the ledger.
+     *
+     * @param product the product to save
+     * @return a future completed when the product, and any stock change, is
+     *         on stable storage
+     */
+    public CompletableFuture<Void> saveProduct(Product product) {
+        String productId = product.getProductId();
+        synchronized (stockLock) {
+            int previousStock = productTable.stockQuantity(productId);
+            if (previousStock < 0) {
+                return save(products, product, "product");
+            }
+            StockKeeper keeper = stockKeeper;
+            if (keeper != null) {
+                product.setStockQuantity(keeper.stockSaved(productId, product.getStockQuantity()));
+                return save(products, product, "product");
+            }
+            int change = product.getStockQuantity() - previousStock;
+            if (change == 0 || inventoryLedger.unreserved(productId) < 0) {
+                // The ledger takes the opening balance from the catalogue when it first sees the product
+                return save(products, product, "product");
+            }
+            StockEvent.Type type = change > 0 ? StockEvent.Type.RESTOCK : StockEvent.Type.WRITE_OFF;
+            // Staged first, so an opening balance is taken from the stock before this save
+            CompletableFuture<Void> recorded = recordStockEvent(productId, type, Math.abs(change));
+            return CompletableFuture.allOf(save(products, product, "product"), recorded);
+        }
+    }
+
+    /**
+     * Sets the catalogue's stock quantity of a product to a level already
+     * recorded in the inventory ledger, without recording it again. The rest
+     * of the product is left as last saved.
+     *
+     * @param productId the product
+     * @param level the stock quantity
+     * @return a future completed when the product is on stable storage
+     */
+    public CompletableFuture<Void> saveStockLevel(String productId, int level) {
+        synchronized (stockLock) {
+            Product product = products.get(productId);
+            if (product == null || product.getStockQuantity() == level) {
+                return CompletableFuture.completedFuture(null);
+            }
+            product.setStockQuantity(level);
+            return save(products, product, "product");
+        }
+    }
+
+    /**
+     * Registers the owner of the live stock counts, which is then handed
+     * the stock of every product saved from here on.
+     *
+     * @param stockKeeper the stock keeper
+     */
+    public void setStockKeeper(StockKeeper stockKeeper) {
+        this.stockKeeper = stockKeeper;
+    }
+
+    /**
+     * Deletes a product from the catalogue. Orders that include it keep the
+     * name and price they were placed with.
+     *
+     * @param productId the product to delete
+     * @return a future completed when the deletion is on stable storage
+     */
+    public CompletableFuture<Void> deleteProduct(String productId) {
+        return products.remove(productId);
+    }
+
+    /**
+     * Gets a number that changes whenever a product is saved or deleted, so
+     * results derived from the catalogue can tell when they are out of date.
+     *
+     * @return the current catalogue version
+     */
+    public long getCatalogueVersion() {
+        return catalogueVersion.get();
     }
 
     public Product getProduct(String productId) {
@@ -51,34 +266,287 @@ public class Database {
         return new ArrayList<>(products.values());
     }
 
+    /**
+     * Searches product names, descriptions and categories. Every word of the
+     * query must match the start of a word in one of those fields, ignoring
+     * case; see {@link ProductSearchIndex}.
+     *
+     * @param query the search text
+     * @return the matching products, most relevant first
+     */
     public List<Product> searchProducts(String query) {
-        return products.values().stream()
-            .filter(product -> product.getName().toLowerCase().contains(query.toLowerCase()) ||
-                             product.getDescription().toLowerCase().contains(query.toLowerCase()) ||
-                             product.getCategory().toLowerCase().contains(query.toLowerCase()))
-            .toList();
+        return searchProducts(query, Integer.MAX_VALUE);
     }
 
+    /**
+     * Searches the catalogue like {@link #searchProducts(String)}, returning
+     * only the best matches.
+     *
+     * @param query the search text
+     * @param limit the maximum number of products to return
+     * @return the most relevant matching products, best first
+     */
+    public List<Product> searchProducts(String query, int limit) {
+        return searchProducts(query, limit, false);
+    }
+
+    /**
+     * Searches the catalogue like {@link #searchProducts(String, int)},
+     * optionally tolerating typing mistakes: in fuzzy mode each query word
+     * also matches words one or two edits away.
+     *
+     * @param query the search text
+     * @param limit the maximum number of products to return
+     * @param fuzzy true to match misspelt words
+     * @return the most relevant matching products, best first
+     */
+    public List<Product> searchProducts(String query, int limit, boolean fuzzy) {
+        return loadProductsInOrder(searchIndex.search(query, limit, fuzzy));
+    }
+
+    /**
+     * Suggests product names for a search box as the user types.
+     *
+     * @param prefix the text typed so far
+     * @param limit the maximum number of names to return
+     * @return product names containing a word that starts with the prefix
+     */
+    public List<String> suggestProductNames(String prefix, int limit) {
+        return suggestIndex.suggest(prefix, limit);
+    }
+
+    /**
+     * Gets the products in a category.
+     *
+     * @param category the category, matched ignoring case
+     * @return the products in the category, ordered by product ID
+     */
     public List<Product> getProductsByCategory(String category) {
-        return products.values().stream()
-            .filter(product -> product.getCategory().equalsIgnoreCase(category))
-            .toList();
+        return loadProducts(categoryIndex.productIds(category));
+    }
+
+    /**
+     * Gets the products within a price range, optionally limited to one
+     * category, already in price order.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param descending true to list the most expensive first
+     * @return the matching products ordered by price, ties by product ID
+     */
+    public List<Product> getProductsByPrice(String category, Double minPrice, Double maxPrice,
+                                            boolean descending) {
+        return loadProductsInOrder(getProductIdsByPrice(category, minPrice, maxPrice, descending));
+    }
+
+    /**
+     * Same as {@link #getProductsByPrice(String, Double, Double, boolean)} but
+     * returns only the product IDs, so callers can page through a large range
+     * and load just the products they show.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param descending true to list the most expensive first
+     * @return the matching product IDs ordered by price, ties by product ID
+     */
+    public List<String> getProductIdsByPrice(String category, Double minPrice, Double maxPrice,
+                                             boolean descending) {
+        return priceIndex.productIds(category, minPrice, maxPrice, descending);
+    }
+
+    /**
+     * Gets the products passing a combination of listing filters, evaluated
+     * on bitmap indexes; see {@link ProductBitmapIndex}.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param inStockOnly true to include only products in stock
+     * @return the matching products, ordered by product ID
+     */
+    public List<Product> getFilteredProducts(String category, Double minPrice, Double maxPrice,
+                                             boolean inStockOnly) {
+        return loadProducts(bitmapIndex.productIds(category, minPrice, maxPrice, inStockOnly));
+    }
+
+    /**
+     * Gets the products passing a combination of listing filters, sorted on
+     * the index's column arrays rather than by comparing products.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param inStockOnly true to include only products in stock
+     * @param sortBy "price", "stock" or "category"; see {@link #canSortByColumn(String)}
+     * @param descending true to sort highest first; ties stay in product ID order
+     * @return the matching products, sorted
+     */
+    public List<Product> getFilteredProducts(String category, Double minPrice, Double maxPrice,
+                                             boolean inStockOnly, String sortBy, boolean descending) {
+        return loadProductsInOrder(getFilteredProductIds(category, minPrice, maxPrice, inStockOnly,
+                                                         sortBy, descending));
+    }
+
+    /**
+     * Same as {@link #getFilteredProducts(String, Double, Double, boolean, String, boolean)}
+     * but returns only the product IDs, so callers can load just one page.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param inStockOnly true to include only products in stock
+     * @param sortBy "price", "stock" or "category"; see {@link #canSortByColumn(String)}
+     * @param descending true to sort highest first; ties stay in product ID order
+     * @return the matching product IDs, sorted
+     */
+    public List<String> getFilteredProductIds(String category, Double minPrice, Double maxPrice,
+                                              boolean inStockOnly, String sortBy, boolean descending) {
+        return bitmapIndex.productIds(category, minPrice, maxPrice, inStockOnly, sortBy, descending);
+    }
+
+    /**
+     * Checks whether filtered listings can be sorted on an index column.
+     *
+     * @param sortBy the sort field
+     * @return true for "price", "stock" and "category", ignoring case
+     */
+    public boolean canSortByColumn(String sortBy) {
+        return ProductBitmapIndex.isSortable(sortBy);
+    }
+
+    /**
+     * Same as {@link #getFilteredProducts(String, Double, Double, boolean)}
+     * but returns only the product IDs.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param inStockOnly true to include only products in stock
+     * @return the matching product IDs, in no particular order
+     */
+    public List<String> getFilteredProductIds(String category, Double minPrice, Double maxPrice,
+                                              boolean inStockOnly) {
+        return bitmapIndex.productIds(category, minPrice, maxPrice, inStockOnly);
+    }
+
+    /**
+     * Gets a product's stock quantity without loading the rest of the product.
+     *
+     * @param productId the product
+     * @return the stock quantity, or -1 if there is no such product
+     */
+    public int getStockQuantity(String productId) {
+        return productTable.stockQuantity(productId);
+    }
+
+    /**
+     * Records a change to a product's stock in the inventory ledger.
+     *
+     * @param productId the product
+     * @param type the kind of change; not {@link StockEvent.Type#OPENING},
+     *             which the ledger records by itself
+     * @param quantity the number of units, positive
+     * @return a future completed when the event is on stable storage
+     */
+    public CompletableFuture<Void> recordStockEvent(String productId, StockEvent.Type type, int quantity) {
+        UnitOfWork unitOfWork = beginUnitOfWork();
+        unitOfWork.recordStockEvent(productId, type, quantity);
+        return unitOfWork.commit();
+    }
+
+    /**
+     * Gets the stock of a product that is neither sold nor reserved,
+     * according to the inventory ledger, or the catalogue if the ledger has
+     * not seen the product yet.
+     *
+     * @param productId the product
+     * @return the unreserved stock, or -1 if there is no such product
+     */
+    public int getUnreservedStock(String productId) {
+        int catalogueStock = productTable.stockQuantity(productId);
+        if (catalogueStock < 0) {
+            return -1;
+        }
+        int ledgerStock = inventoryLedger.unreserved(productId);
+        return ledgerStock < 0 ? catalogueStock : ledgerStock;
+    }
+
+    /**
+     * Reads back the stock changes recorded for a product, for reconciliation.
+     *
+     * @param productId the product
+     * @return the durable events, oldest first; empty if they cannot be read
+     */
+    public List<StockEvent> getStockHistory(String productId) {
+        try {
+            return transactionLog.history(productId);
+        } catch (IOException e) {
+            System.err.println("❌ Error reading inventory ledger: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Gets the lowest and highest product price.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @return {@code [min, max]}, or {@code [0, 0]} if there are no products
+     */
+    public double[] getPriceRange(String category) {
+        return priceIndex.priceRange(category);
+    }
+
+    /**
+     * Counts the category, price band and stock facets of a listing on the
+     * bitmap indexes; see {@link ProductFacets} for what each facet counts.
+     *
+     * @param category the selected category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param inStockOnly true to include only products in stock
+     * @param bandBounds the lowest price of every price band after the first, ascending
+     * @return the facet counts, with a count for every category
+     */
+    public ProductFacets getProductFacets(String category, Double minPrice, Double maxPrice,
+                                          boolean inStockOnly, double[] bandBounds) {
+        return bitmapIndex.facets(category, minPrice, maxPrice, inStockOnly, categoryIndex.categories(), bandBounds);
+    }
+
+    /**
+     * Gets every category that has at least one product.
+     *
+     * @return the category names in alphabetical order, unmodifiable
+     */
+    public List<String> getCategories() {
+        return categoryIndex.categories();
     }
 
     // Customer operations
-    public void saveCustomer(Customer customer) {
-        customers.put(customer.getCustomerId(), customer);
-        saveCustomersToFile();
+    public CompletableFuture<Void> saveCustomer(Customer customer) {
+        return save(customers, customer, "customer");
     }
 
     public Customer getCustomer(String customerId) {
         return customers.get(customerId);
     }
 
+    /**
+     * Starts a unit of work, whose writes become durable together when it is
+     * committed.
+     *
+     * @return a new, empty unit of work
+     */
+    public UnitOfWork beginUnitOfWork() {
+        return new UnitOfWork(transactionLog);
+    }
+
     // Order operations
-    public void saveOrder(Order order) {
-        orders.put(order.getOrderId(), order);
-        saveOrdersToFile();
+    public CompletableFuture<Void> saveOrder(Order order) {
+        UnitOfWork unitOfWork = beginUnitOfWork();
+        unitOfWork.saveOrder(order);
+        return unitOfWork.commit();
     }
 
     public Order getOrder(String orderId) {
@@ -86,9 +554,10 @@ public class Database {
     }
 
     // Payment operations
-    public void savePayment(Payment payment) {
-        payments.put(payment.getPaymentId(), payment);
-        savePaymentsToFile();
+    public CompletableFuture<Void> savePayment(Payment payment) {
+        UnitOfWork unitOfWork = beginUnitOfWork();
+        unitOfWork.savePayment(payment);
+        return unitOfWork.commit();
     }
 
     public Payment getPayment(String paymentId) {
@@ -96,73 +565,166 @@ public class Database {
     }
 
     // File operations
-    @SuppressWarnings("unchecked")
     private void loadDataFromFiles() {
-        try {
-            // Load products
-            if (new File(PRODUCTS_FILE).exists()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(PRODUCTS_FILE))) {
-                    products = (Map<String, Product>) ois.readObject();
-                }
+        for (EntityStore<?> store : stores()) {
+            try {
+                store.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not open journals in " + DATA_DIR, e);
             }
-            
-            // Load customers
-            if (new File(CUSTOMERS_FILE).exists()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(CUSTOMERS_FILE))) {
-                    customers = (Map<String, Customer>) ois.readObject();
-                }
+        }
+    }
+
+    /**
+     * Loads the inventory ledger, replays the transaction log and brings the
+     * catalogue's stock quantities in line with the ledger, in case a crash
+     * lost stock updates that the ledger had already made durable. Stock
+     * saved with a product is in the ledger too, so nothing is reverted.
+     *
+     * @param transactionCodec the transaction log's record codec
+     */
+    private void openTransactionLog(BinaryCodec<Transaction> transactionCodec) {
+        try {
+            inventoryLedger = new InventoryLedger(Paths.get(DATA_DIR, "inventory.ledger"),
+                                                  Paths.get(DATA_DIR, "inventory.dat"));
+            transactionLog = new TransactionLog(DATA_DIR, transactionCodec, committer, orders, payments,
+                                                inventoryLedger, productTable::stockQuantity);
+            transactionLog.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open transaction log in " + DATA_DIR, e);
+        }
+        for (Map.Entry<String, Integer> entry : inventoryLedger.onHand().entrySet()) {
+            saveStockLevel(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Builds the in-memory product indexes from the loaded catalogue and keeps
+     * them up to date with every later save.
+     */
+    private void buildProductIndexes() {
+        searchIndex = new ProductSearchIndex();
+        suggestIndex = new ProductSuggestIndex();
+        categoryIndex = new ProductCategoryIndex();
+        priceIndex = new ProductPriceIndex();
+        bitmapIndex = new ProductBitmapIndex();
+        for (Product product : products.values()) {
+            searchIndex.saved(product);
+            suggestIndex.saved(product);
+            categoryIndex.saved(product);
+            priceIndex.saved(product);
+            bitmapIndex.saved(product);
+        }
+        products.addListener(searchIndex);
+        products.addListener(suggestIndex);
+        products.addListener(categoryIndex);
+        products.addListener(priceIndex);
+        products.addListener(bitmapIndex);
+        // Registered last, so the indexes already reflect a change once the version moves
+        products.addListener(new RecordListener<Product>() {
+            @Override
+            public void saved(Product product) {
+                catalogueVersion.incrementAndGet();
             }
-            
-            // Load orders
-            if (new File(ORDERS_FILE).exists()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(ORDERS_FILE))) {
-                    orders = (Map<String, Order>) ois.readObject();
-                }
+
+            @Override
+            public void removed(String productId) {
+                catalogueVersion.incrementAndGet();
             }
-            
-            // Load payments
-            if (new File(PAYMENTS_FILE).exists()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(PAYMENTS_FILE))) {
-                    payments = (Map<String, Payment>) ois.readObject();
-                }
+        });
+    }
+
+    /**
+     * Looks up the products for a set of ids taken from an index.
+     *
+     * @param productIds the ids to load
+     * @return the products still in the catalogue, ordered by product ID
+     */
+    private List<Product> loadProducts(Collection<String> productIds) {
+        List<Product> results = new ArrayList<>(productIds.size());
+        for (String productId : productIds) {
+            Product product = products.get(productId);
+            if (product != null) {
+                results.add(product);
             }
-            
-        } catch (Exception e) {
-            System.out.println("⚠️  Could not load data from files: " + e.getMessage());
-            // Continue with empty data
         }
+        results.sort(Comparator.comparing(Product::getProductId));
+        return results;
     }
 
-    private void saveProductsToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(PRODUCTS_FILE))) {
-            oos.writeObject(products);
-        } catch (IOException e) {
-            System.err.println("❌ Error saving products: " + e.getMessage());
+    /**
+     * Looks up the products for a list of ids taken from an index, keeping
+     * the index's order.
+     *
+     * @param productIds the ids to load
+     * @return the products still in the catalogue
+     */
+    private List<Product> loadProductsInOrder(List<String> productIds) {
+        List<Product> results = new ArrayList<>(productIds.size());
+        for (String productId : productIds) {
+            Product product = products.get(productId);
+            if (product != null) {
+                results.add(product);
+            }
         }
+        return results;
     }
 
-    private void saveCustomersToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(CUSTOMERS_FILE))) {
-            oos.writeObject(customers);
+    private <T extends Serializable> CompletableFuture<Void> save(EntityStore<T> store, T record, String label) {
+        try {
+            return store.put(record);
         } catch (IOException e) {
-            System.err.println("❌ Error saving customers: " + e.getMessage());
+            System.err.println("❌ Error saving " + label + ": " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
     }
 
-    private void saveOrdersToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(ORDERS_FILE))) {
-            oos.writeObject(orders);
+    /**
+     * Gets the number of group commits the journal flusher has performed.
+     *
+     * @return group commit count
+     */
+    long getGroupCommitCount() {
+        return committer.getGroupCommitCount();
+    }
+
+    /**
+     * Compacts every store whose journal has grown to at least the given size.
+     *
+     * @param thresholdBytes minimum journal size worth compacting
+     */
+    void compactJournals(long thresholdBytes) {
+        for (EntityStore<?> store : stores()) {
+            try {
+                if (store.journalSize() >= thresholdBytes) {
+                    store.compact();
+                }
+            } catch (IOException e) {
+                System.err.println("❌ Error compacting journal: " + e.getMessage());
+            }
+        }
+        try {
+            if (transactionLog.size() >= thresholdBytes) {
+                transactionLog.compact();
+            }
         } catch (IOException e) {
-            System.err.println("❌ Error saving orders: " + e.getMessage());
+            System.err.println("❌ Error compacting transaction log: " + e.getMessage());
         }
     }
 
-    private void savePaymentsToFile() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(PAYMENTS_FILE))) {
-            oos.writeObject(payments);
-        } catch (IOException e) {
-            System.err.println("❌ Error saving payments: " + e.getMessage());
+    private List<EntityStore<?>> stores() {
+        return Arrays.asList(products, customers, orders, payments);
+    }
+
+    private List<Closeable> closeables() {
+        List<Closeable> closeables = new ArrayList<>(stores());
+        if (transactionLog != null) {
+            closeables.add(transactionLog);
+        }
+        if (inventoryLedger != null) {
+            closeables.add(inventoryLedger);
         }
+        return closeables;
     }
 
     // Sample data - UPDATED WITH NEW PRODUCTS
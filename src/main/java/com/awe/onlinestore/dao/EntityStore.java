@@ -0,0 +1,227 @@
+package com.awe.onlinestore.dao;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Persistent map of one entity type, stored as a checkpoint plus a journal.
+ *
+ * <p>Files used for an entity called {@code orders}:</p>
+ * <ul>
+ *   <li>the checkpoint kept by the store's {@link RecordTable}; for most
+ *       entities that is {@code orders.dat}, a point-in-time snapshot of the
+ *       whole map, see {@link SnapshotTable}</li>
+ *   <li>{@code orders.log} - journal of saves made since that checkpoint</li>
+ *   <li>{@code orders.log.compacting} - journal segment being folded into
+ *       the next checkpoint; only present while a compaction is running or
+ *       after a crash interrupted one</li>
+ * </ul>
+ *
+ * <p>Compaction rotates the journal, has the table write a fresh checkpoint
+ * and then deletes the rotated segment, so a restart only replays the short
+ * journal tail written since the last compaction. Saves are only held up for
+ * the rotation and {@link RecordTable#capture()}; the checkpoint itself is
+ * written without holding the write lock.</p>
+ *
+ * <p>Records saved by a {@link UnitOfWork} are journaled in the shared
+ * {@link TransactionLog} instead, which compacts its stores together with
+ * its own log.</p>
+ *
+ * <p>Journal appends are handed to a shared {@link GroupCommitter}; frames
+ * still queued when the journal is rotated simply land in the new log, which
+ * is safe because replaying a save on top of a checkpoint that already holds
+ * it is a no-op.</p>
+ *
+ * @param <T> the entity type
+ */
+class EntityStore<T extends Serializable> implements Closeable {
+    private final String name;
+    private final RecordTable<T> table;
+    private final BinaryCodec<T> codec;
+    private final Function<T, String> idOf;
+    private final Path journalFile;
+    private final Path compactingFile;
+    private final GroupCommitter committer;
+
+    private final Object writeLock = new Object();
+    private final Object compactionLock = new Object();
+    private final List<RecordListener<T>> listeners = new CopyOnWriteArrayList<>();
+
+    private Journal<T> journal;
+
+    /**
+     * Creates a store that keeps its records in a {@link SnapshotTable}.
+     */
+    EntityStore(String dataDir, String name, BinaryCodec<T> codec, Function<T, String> idOf,
+                GroupCommitter committer) {
+        this(dataDir, name, new SnapshotTable<>(dataDir, name, codec, idOf), codec, idOf, committer);
+    }
+
+    EntityStore(String dataDir, String name, RecordTable<T> table, BinaryCodec<T> codec,
+                Function<T, String> idOf, GroupCommitter committer) {
+        this.name = name;
+        this.table = table;
+        this.codec = codec;
+        this.idOf = idOf;
+        this.journalFile = Paths.get(dataDir, name + ".log");
+        this.compactingFile = Paths.get(dataDir, name + ".log.compacting");
+        this.committer = committer;
+    }
+
+    /**
+     * Loads the checkpoint and replays any journal segments written after it.
+     * If a previous compaction was interrupted, or the checkpoint was in an
+     * older format, a new checkpoint is written before the store accepts saves.
+     *
+     * @throws IOException if the checkpoint or journal cannot be opened
+     */
+    void open() throws IOException {
+        boolean rewrite = table.load();
+
+        boolean interruptedCompaction = Files.exists(compactingFile);
+        if (interruptedCompaction) {
+            try (Journal<T> segment = new Journal<>(compactingFile, codec)) {
+                replay(segment);
+            }
+        }
+
+        journal = new Journal<>(journalFile, codec);
+        replay(journal);
+
+        if (rewrite || interruptedCompaction) {
+            compact();
+        }
+    }
+
+    /**
+     * Stores a record and queues it for the next group commit. The record is
+     * visible to readers immediately; the returned future completes once its
+     * journal entry is durable.
+     *
+     * @param record the record to save
+     * @return a future completed when the record is on stable storage
+     * @throws IOException if the record cannot be encoded
+     */
+    CompletableFuture<Void> put(T record) throws IOException {
+        synchronized (writeLock) {
+            // Encode now, under the lock, so journal order matches table order and
+            // later in-place changes to the model object cannot leak into this entry
+            byte[] frame = journal.frame(record);
+            table.put(idOf.apply(record), record);
+            for (RecordListener<T> listener : listeners) {
+                listener.saved(record);
+            }
+            return committer.submit(journal, frame);
+        }
+    }
+
+    /**
+     * Stores a record whose journal entry is written elsewhere, by a
+     * {@link TransactionLog}, either as a new change or while replaying.
+     *
+     * @param record the record to store
+     */
+    void apply(T record) {
+        synchronized (writeLock) {
+            table.put(idOf.apply(record), record);
+            for (RecordListener<T> listener : listeners) {
+                listener.saved(record);
+            }
+        }
+    }
+
+    /**
+     * Deletes a record and queues a tombstone for the next group commit.
+     *
+     * @param id the id of the record to delete
+     * @return a future completed when the deletion is on stable storage;
+     *         already complete if there was no such record
+     */
+    CompletableFuture<Void> remove(String id) {
+        synchronized (writeLock) {
+            if (!table.remove(id)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            for (RecordListener<T> listener : listeners) {
+                listener.removed(id);
+            }
+            return committer.submit(journal, journal.tombstone(id));
+        }
+    }
+
+    /**
+     * Registers a listener for changes made from now on. Records that are
+     * already stored are not replayed to it.
+     *
+     * @param listener the listener to add
+     */
+    void addListener(RecordListener<T> listener) {
+        listeners.add(listener);
+    }
+
+    T get(String id) {
+        return table.get(id);
+    }
+
+    Collection<T> values() {
+        return table.values();
+    }
+
+    boolean isEmpty() {
+        return table.size() == 0;
+    }
+
+    /**
+     * Gets the number of journal bytes written since the last compaction.
+     *
+     * @return journal size in bytes
+     * @throws IOException if the size cannot be read
+     */
+    long journalSize() throws IOException {
+        return journal.size();
+    }
+
+    /**
+     * Folds the journal into a new checkpoint and discards the folded segment.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    void compact() throws IOException {
+        synchronized (compactionLock) {
+            RecordTable.Checkpoint checkpoint;
+            synchronized (writeLock) {
+                // A leftover segment from an interrupted run is already reflected
+                // in the table, so it is folded into this checkpoint as-is.
+                if (!Files.exists(compactingFile)) {
+                    journal.rotate(compactingFile);
+                }
+                checkpoint = table.capture();
+            }
+
+            checkpoint.write();
+            Files.deleteIfExists(compactingFile);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+        table.close();
+    }
+
+    private void replay(Journal<T> source) throws IOException {
+        int replayed = source.replay(record -> table.put(idOf.apply(record), record), table::remove);
+        if (replayed > 0) {
+            System.out.printf("🔁 Replayed %d %s journal records%n", replayed, name);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.awe.onlinestore.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind flusher that turns many journal appends into one durable write.
+ *
+ * <p>Callers hand over an encoded frame and get back a future that completes
+ * once the frame has been written and synced. A single flusher thread waits
+ * for the first pending frame, lingers for the configured interval to let
+ * concurrent saves pile up, and then writes everything queued so far with one
+ * gathering write and one {@code fsync} per journal. A checkout that saves
+ * several products and an order, or several checkouts running at once, thus
+ * share a single group commit instead of syncing once per save.</p>
+ */
+class GroupCommitter implements Closeable {
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final long intervalMillis;
+    private final Thread flusher;
+    private final AtomicLong groupCommits = new AtomicLong();
+    private final Object submitLock = new Object();
+    private volatile boolean running = true;
+
+    /**
+     * Starts a committer whose flusher lingers {@code intervalMillis} per group.
+     *
+     * @param intervalMillis how long to gather writes before committing them
+     */
+    GroupCommitter(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+        this.flusher = new Thread(this::run, "database-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues a frame for the next group commit.
+     *
+     * @param journal the journal the frame belongs to
+     * @param frame a frame produced by {@link Journal#frame(Object)}
+     * @return a future completed once the frame is durable
+     */
+    CompletableFuture<Void> submit(Journal<?> journal, byte[] frame) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        synchronized (submitLock) {
+            if (!running) {
+                durable.completeExceptionally(new IOException("Journal flusher is closed"));
+                return durable;
+            }
+            queue.add(new PendingWrite(journal, frame, durable));
+        }
+        return durable;
+    }
+
+    /**
+     * Gets the number of group commits performed so far.
+     *
+     * @return group commit count
+     */
+    long getGroupCommitCount() {
+        return groupCommits.get();
+    }
+
+    /**
+     * Stops the flusher after committing every frame submitted before the call.
+     */
+    @Override
+    public void close() {
+        synchronized (submitLock) {
+            running = false;
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            commit(remaining);
+        }
+    }
+
+    private void run() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (running) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                if (intervalMillis > 0) {
+                    Thread.sleep(intervalMillis);
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingWrite> batch) {
+        // Keep per-journal append order while grouping
+        Map<Journal<?>, List<PendingWrite>> byJournal = new LinkedHashMap<>();
+        for (PendingWrite write : batch) {
+            byJournal.computeIfAbsent(write.journal, journal -> new ArrayList<>()).add(write);
+        }
+
+        for (Map.Entry<Journal<?>, List<PendingWrite>> entry : byJournal.entrySet()) {
+            List<PendingWrite> writes = entry.getValue();
+            List<byte[]> frames = new ArrayList<>(writes.size());
+            for (PendingWrite write : writes) {
+                frames.add(write.frame);
+            }
+            try {
+                entry.getKey().append(frames);
+                for (PendingWrite write : writes) {
+                    write.durable.complete(null);
+                }
+            } catch (IOException e) {
+                System.err.println("❌ Error writing journal: " + e.getMessage());
+                for (PendingWrite write : writes) {
+                    write.durable.completeExceptionally(e);
+                }
+            }
+        }
+        groupCommits.incrementAndGet();
+    }
+
+    private static final class PendingWrite {
+        private final Journal<?> journal;
+        private final byte[] frame;
+        private final CompletableFuture<Void> durable;
+
+        private PendingWrite(Journal<?> journal, byte[] frame, CompletableFuture<Void> durable) {
+            this.journal = journal;
+            this.frame = frame;
+            this.durable = durable;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.StockEvent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Record of every change to product stock, kept as a checkpointed
+ * per-product projection plus an append-only history.
+ *
+ * <p>Files used:</p>
+ * <ul>
+ *   <li>{@code inventory.dat} - checkpoint of the stock on hand and the
+ *       units reserved for each product, with the sequence number of the
+ *       last event it includes</li>
+ *   <li>{@code inventory.ledger} - every {@link StockEvent} folded so far, one
+ *       short frame each, kept as the stock history for reconciliation and
+ *       never replayed on a normal startup</li>
+ * </ul>
+ *
+ * <p>Every event is written as part of a {@link TransactionLog} record: the
+ * log numbers it here with {@link #stage(List, ToIntFunction)}, applies it
+ * with {@link #apply(List)} and, when it is compacted, appends it to the
+ * history with {@link #fold(List)} and writes a new checkpoint. A startup
+ * therefore loads the checkpoint and replays only the transaction log on
+ * top of it. The first event for a product is an
+ * {@link StockEvent.Type#OPENING} balance taken from the catalogue; from then
+ * on the ledger, not the catalogue, is the record of its stock.</p>
+ *
+ * <p>Events are numbered and applied in the order they are logged, so the
+ * checkpoint holds exactly the events up to its sequence number and replay
+ * skips everything at or below it. Only the first opening balance of a
+ * product counts. Without a checkpoint, as after an upgrade, the projection
+ * is rebuilt from the history and the log, applying each sequence number
+ * once, and the caller checkpoints it straight away. A checkout commits its
+ * reservation in the same transaction that saves its order, so reservations
+ * left open by a crash never got an order and are released on startup; they
+ * are reported for reconciliation.</p>
+ */
+class InventoryLedger implements Closeable {
+    private static final int CHECKPOINT_MAGIC = 0x41574549; // "AWEI"
+    private static final int CHECKPOINT_VERSION = 1;
+
+    private final Path historyFile;
+    private final Path checkpointFile;
+    private final Journal<StockEvent> history;
+    private final Map<String, Level> levels = new HashMap<>();
+    /** Products whose opening balance is staged but not applied yet. */
+    private final Set<String> opening = new HashSet<>();
+    /** Sequence number of the last event in the loaded or last written checkpoint. */
+    private long watermark;
+    /** Sequence number of the last event applied. */
+    private long lastApplied;
+    /** Sequence numbers applied while rebuilding without a checkpoint; null otherwise. */
+    private Set<Long> rebuilding;
+    private long nextSequence = 1;
+
+    InventoryLedger(Path historyFile, Path checkpointFile) throws IOException {
+        this.historyFile = historyFile;
+        this.checkpointFile = checkpointFile;
+        this.history = new Journal<>(historyFile, ModelCodecs.stockEvents());
+    }
+
+    /**
+     * Loads the checkpoint, or rebuilds the projection from the history if
+     * there is none. History appended after the checkpoint was written, by
+     * a compaction that did not get to finish, is cut off; the transaction
+     * log segment it came from is folded again.
+     *
+     * @return true if the projection was rebuilt and should be checkpointed
+     *         once the transaction log has been replayed
+     * @throws IOException if the history cannot be read
+     */
+    synchronized boolean open() throws IOException {
+        if (Files.exists(checkpointFile)) {
+            try {
+                long historySize = readCheckpoint();
+                if (history.size() > historySize) {
+                    history.truncate(historySize);
+                }
+                return false;
+            } catch (IOException e) {
+                System.out.println("⚠️  Could not load inventory checkpoint: " + e.getMessage());
+                levels.clear();
+                watermark = 0;
+                lastApplied = 0;
+            }
+        } else if (history.size() == 0) {
+            return false;
+        }
+
+        rebuilding = new HashSet<>();
+        int replayed = history.replay(this::apply, productId -> { });
+        System.out.printf("🔁 Rebuilt inventory from %d ledger events%n", replayed);
+        return true;
+    }
+
+    /**
+     * Works out how to settle the reservations a crash left open, once every
+     * event has been replayed: open reservations are released, and
+     * reservations that were committed but whose own event was lost are
+     * recorded again.
+     *
+     * @return the changes to record, as events whose sequence and time are ignored
+     */
+    synchronized List<StockEvent> openReservations() {
+        List<StockEvent> changes = new ArrayList<>();
+        for (Map.Entry<String, Level> entry : levels.entrySet()) {
+            int open = entry.getValue().reserved;
+            if (open > 0) {
+                System.out.printf("⚠️  Releasing %d units of %s reserved before the last shutdown%n",
+                    open, entry.getKey());
+                changes.add(new StockEvent(0, 0, entry.getKey(), StockEvent.Type.RELEASE, open));
+            } else if (open < 0) {
+                System.out.printf("⚠️  Recording lost reservation of %d units of %s%n", -open, entry.getKey());
+                changes.add(new StockEvent(0, 0, entry.getKey(), StockEvent.Type.RESERVE, -open));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Numbers the stock changes of a transaction, adding an opening balance
+     * for each product that has no events yet. Nothing is written or applied;
+     * the caller writes the events and then passes them to {@link #apply(List)},
+     * or to {@link #discard(List)} if they could not be written.
+     *
+     * @param changes the changes, as events whose sequence and time are ignored
+     * @param openingStock supplies the opening balance of a product
+     * @return the events to write, in ledger sequence
+     */
+    synchronized List<StockEvent> stage(List<StockEvent> changes, ToIntFunction<String> openingStock) {
+        List<StockEvent> events = new ArrayList<>(changes.size());
+        long now = System.currentTimeMillis();
+        for (StockEvent change : changes) {
+            String productId = change.getProductId();
+            checkChange(change.getType(), change.getQuantity());
+            if (!levels.containsKey(productId) && opening.add(productId)) {
+                events.add(new StockEvent(nextSequence++, now, productId, StockEvent.Type.OPENING,
+                                          Math.max(openingStock.applyAsInt(productId), 0)));
+            }
+            events.add(new StockEvent(nextSequence++, now, productId, change.getType(), change.getQuantity()));
+        }
+        return events;
+    }
+
+    /**
+     * Applies events written to the transaction log, either just committed
+     * or replayed, to the projection. Events the checkpoint already holds
+     * are skipped.
+     *
+     * @param events the events, in ledger sequence
+     */
+    synchronized void apply(List<StockEvent> events) {
+        for (StockEvent event : events) {
+            apply(event);
+        }
+    }
+
+    /**
+     * Forgets staged events that could not be written, so that the next
+     * change to a product whose opening balance was among them opens it again.
+     *
+     * @param events the events returned by {@link #stage(List, ToIntFunction)}
+     */
+    synchronized void discard(List<StockEvent> events) {
+        for (StockEvent event : events) {
+            if (event.getType() == StockEvent.Type.OPENING) {
+                opening.remove(event.getProductId());
+            }
+        }
+    }
+
+    /**
+     * Appends events to the history and forces them to disk, without
+     * applying them again. Called while compacting the transaction log, so
+     * it writes directly rather than through the committer, which may
+     * already be closed at shutdown.
+     *
+     * @param events the events, already in the projection
+     * @throws IOException if the history cannot be written
+     */
+    void fold(List<StockEvent> events) throws IOException {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<byte[]> frames = new ArrayList<>(events.size());
+        for (StockEvent event : events) {
+            frames.add(history.frame(event));
+        }
+        history.append(frames);
+    }
+
+    /**
+     * Captures the projection as it stands, with everything folded into the
+     * history so far, for a new checkpoint.
+     *
+     * @return the captured checkpoint
+     * @throws IOException if the size of the history cannot be read
+     */
+    synchronized RecordTable.Checkpoint capture() throws IOException {
+        BinaryWriter out = new BinaryWriter(64 + levels.size() * 32);
+        out.writeVarInt(CHECKPOINT_MAGIC);
+        out.writeVarInt(CHECKPOINT_VERSION);
+        out.writeLong(lastApplied);
+        out.writeLong(history.size());
+        out.writeVarInt(levels.size());
+        for (Map.Entry<String, Level> entry : levels.entrySet()) {
+            Level level = entry.getValue();
+            out.writeString(entry.getKey());
+            out.writeBoolean(level.opened);
+            out.writeVarInt(level.onHand);
+            out.writeVarInt(level.reserved);
+        }
+        byte[] snapshot = out.toByteArray();
+        long sequence = lastApplied;
+        return () -> {
+            Path tempFile = Paths.get(checkpointFile + ".tmp");
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tempFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            checkpointed(sequence);
+        };
+    }
+
+    /**
+     * Gets a product's stock on hand less its open reservations.
+     *
+     * @param productId the product
+     * @return the unreserved stock, or -1 if the ledger has no events for it
+     */
+    synchronized int unreserved(String productId) {
+        Level level = levels.get(productId);
+        return level == null ? -1 : level.onHand - level.reserved;
+    }
+
+    /**
+     * Gets the stock on hand of every product in the ledger.
+     *
+     * @return stock on hand keyed by product id
+     */
+    synchronized Map<String, Integer> onHand() {
+        Map<String, Integer> onHand = new HashMap<>(levels.size() * 2);
+        for (Map.Entry<String, Level> entry : levels.entrySet()) {
+            onHand.put(entry.getKey(), entry.getValue().onHand);
+        }
+        return onHand;
+    }
+
+    /**
+     * Reads a product's folded events back from the history, without
+     * disturbing a fold in progress.
+     *
+     * @param productId the product
+     * @return the events, oldest first
+     * @throws IOException if the history cannot be read
+     */
+    List<StockEvent> history(String productId) throws IOException {
+        List<StockEvent> events = new ArrayList<>();
+        Journal.scan(historyFile, ModelCodecs.stockEvents(), event -> {
+            if (event.getProductId().equals(productId)) {
+                events.add(event);
+            }
+        }, id -> { });
+        return events;
+    }
+
+    @Override
+    public void close() throws IOException {
+        history.close();
+    }
+
+    private static void checkChange(StockEvent.Type type, int quantity) {
+        if (quantity <= 0 || type == StockEvent.Type.OPENING) {
+            throw new IllegalArgumentException("Invalid stock event: " + type + " x" + quantity);
+        }
+    }
+
+    /**
+     * Loads the projection from the checkpoint.
+     *
+     * @return the size the history had when the checkpoint was taken
+     */
+    private long readCheckpoint() throws IOException {
+        BinaryReader in = new BinaryReader(ByteBuffer.wrap(Files.readAllBytes(checkpointFile)));
+        if (in.readVarInt() != CHECKPOINT_MAGIC) {
+            throw new IOException("Not an inventory checkpoint: " + checkpointFile);
+        }
+        int version = in.readVarInt();
+        if (version != CHECKPOINT_VERSION) {
+            throw new IOException("Unsupported inventory checkpoint version " + version);
+        }
+        watermark = in.readLong();
+        long historySize = in.readLong();
+        int count = in.readVarInt();
+        for (int i = 0; i < count; i++) {
+            Level level = new Level();
+            String productId = in.readString();
+            level.opened = in.readBoolean();
+            level.onHand = in.readVarInt();
+            level.reserved = in.readVarInt();
+            levels.put(productId, level);
+        }
+        lastApplied = watermark;
+        nextSequence = watermark + 1;
+        return historySize;
+    }
+
+    private synchronized void checkpointed(long sequence) {
+        watermark = Math.max(watermark, sequence);
+        // Every event applied from now on is newer than the checkpoint
+        rebuilding = null;
+    }
+
+    private void apply(StockEvent event) {
+        long sequence = event.getSequence();
+        if (sequence <= watermark || (rebuilding != null && !rebuilding.add(sequence))) {
+            return;
+        }
+        lastApplied = Math.max(lastApplied, sequence);
+        nextSequence = Math.max(nextSequence, sequence + 1);
+        Level level = levels.computeIfAbsent(event.getProductId(), id -> new Level());
+        int quantity = event.getQuantity();
+        switch (event.getType()) {
+            case OPENING:
+                opening.remove(event.getProductId());
+                // A history rebuilt from before checkpoints may open a product twice
+                if (!level.opened) {
+                    level.opened = true;
+                    level.onHand += quantity;
+                }
+                break;
+            case RESTOCK:
+                level.onHand += quantity;
+                break;
+            case RESERVE:
+                level.reserved += quantity;
+                break;
+            case COMMIT:
+                level.reserved -= quantity;
+                level.onHand -= quantity;
+                break;
+            case RELEASE:
+                level.reserved -= quantity;
+                break;
+            case WRITE_OFF:
+                level.onHand -= quantity;
+                break;
+            default:
+                throw new IllegalStateException("Unknown stock event " + event.getType());
+        }
+    }
+
+    /**
+     * One product's place in the projection.
+     */
+    private static final class Level {
+        private boolean opened;
+        private int onHand;
+        private int reserved;
+    }
+}
@@ -0,0 +1,345 @@
+package com.awe.onlinestore.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log holding the mutations of one entity type.
+ *
+ * <p>Each record is stored as a frame of {@code [length][crc32][payload]}, so a
+ * save costs one small append instead of rewriting the whole entity file.
+ * A deletion is a tombstone frame whose payload is a zero byte followed by
+ * the UTF-8 id; encoded records never start with a zero byte.
+ * Writes are normally batched by a {@link GroupCommitter}.
+ * On startup the log is replayed in order on top of the last snapshot; a torn
+ * frame at the tail (e.g. after a crash mid-write) ends the replay and is cut
+ * off so that later appends start from a clean boundary. Damage anywhere
+ * else, or a record that is intact but cannot be decoded, fails the replay
+ * instead and leaves the log as it is. Readers that only want to look, such
+ * as stock history, use {@link #scan} instead, which never cuts anything
+ * off.</p>
+ *
+ * @param <T> the record type
+ */
+class Journal<T> implements Closeable {
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final byte TOMBSTONE = 0;
+
+    private final Path path;
+    private final RecordCodec<T> codec;
+    private FileChannel channel;
+    private IOException failure;
+
+    Journal(Path path, RecordCodec<T> codec) throws IOException {
+        this.path = path;
+        this.codec = codec;
+        this.channel = openChannel(path);
+    }
+
+    private Journal(Path path, RecordCodec<T> codec, FileChannel channel) {
+        this.path = path;
+        this.codec = codec;
+        this.channel = channel;
+    }
+
+    /**
+     * Replays every intact record from the start of the log.
+     *
+     * @param saved receives each saved record in append order
+     * @param removed receives the id of each deleted record, in the same order
+     * @return the number of records replayed
+     * @throws IOException if the log cannot be read, is damaged before its
+     *         tail or holds a record that cannot be decoded
+     */
+    synchronized int replay(Consumer<T> saved, Consumer<String> removed) throws IOException {
+        long size = channel.size();
+        int[] count = new int[1];
+        long position = readFrames(size, record -> {
+            count[0]++;
+            saved.accept(record);
+        }, id -> {
+            count[0]++;
+            removed.accept(id);
+        });
+
+        if (position < size) {
+            System.out.printf("⚠️  Discarding %d trailing bytes of %s%n", size - position, path.getFileName());
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return count[0];
+    }
+
+    /**
+     * Reads every intact record of a log without changing it, through a
+     * read-only channel of its own, so it is safe while the log is being
+     * appended to. Reading stops at the first frame that is torn or not yet
+     * completely written; nothing is cut off.
+     *
+     * @param path the log to read; a missing log has no records
+     * @param codec the record codec
+     * @param saved receives each saved record in append order
+     * @param removed receives the id of each deleted record, in the same order
+     * @throws IOException if the log cannot be read or is damaged before its tail
+     */
+    static <T> void scan(Path path, RecordCodec<T> codec, Consumer<T> saved, Consumer<String> removed)
+            throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Journal<T> reader = new Journal<>(path, codec, FileChannel.open(path, StandardOpenOption.READ))) {
+            reader.readFrames(reader.channel.size(), saved, removed);
+        }
+    }
+
+    /**
+     * Encodes a record into a complete frame, ready for {@link #append(List)}.
+     * This does no I/O, so callers can prepare frames outside any lock.
+     *
+     * @param record the record to encode
+     * @return the framed bytes
+     * @throws IOException if the record cannot be encoded
+     */
+    byte[] frame(T record) throws IOException {
+        return frameOf(codec.encode(record));
+    }
+
+    /**
+     * Frames a record already encoded with the journal's codec.
+     *
+     * @param payload the encoded record
+     * @return the framed bytes
+     */
+    byte[] frame(byte[] payload) {
+        return frameOf(payload);
+    }
+
+    /**
+     * Builds a tombstone frame recording that a record was deleted.
+     *
+     * @param id the id of the deleted record
+     * @return the framed bytes
+     */
+    byte[] tombstone(String id) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[1 + idBytes.length];
+        payload[0] = TOMBSTONE;
+        System.arraycopy(idBytes, 0, payload, 1, idBytes.length);
+        return frameOf(payload);
+    }
+
+    private static byte[] frameOf(byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+        frame.putInt(payload.length);
+        frame.putInt(checksum(payload));
+        frame.put(payload);
+        return frame.array();
+    }
+
+    /**
+     * Appends a batch of frames with a single gathering write and syncs it.
+     * If either step fails the log is cut back to where the batch started,
+     * so a later batch is never appended after a partly written one; if even
+     * that fails the journal refuses every further append.
+     *
+     * @param frames frames produced by {@link #frame(Object)}, in append order
+     * @throws IOException if the batch could not be made durable
+     */
+    synchronized void append(List<byte[]> frames) throws IOException {
+        if (failure != null) {
+            throw new IOException(path.getFileName() + " no longer accepts writes", failure);
+        }
+        long start = channel.size();
+        try {
+            write(frames);
+            channel.force(false);
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                channel.position(start);
+                channel.force(false);
+            } catch (IOException rollbackFailed) {
+                e.addSuppressed(rollbackFailed);
+                failure = e;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a batch of frames at the end of the log with a single gathering
+     * write, without syncing it. Only called by {@link #append(List)}, which
+     * holds the journal's lock.
+     *
+     * @param frames frames produced by {@link #frame(Object)}, in append order
+     * @throws IOException if the write fails
+     */
+    void write(List<byte[]> frames) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[frames.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(frames.get(i));
+            remaining += buffers[i].remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * Moves the current log aside and starts a fresh, empty one in its place.
+     * Records appended before this call end up in {@code segment}; records
+     * appended afterwards go to the new log.
+     *
+     * @param segment where to move the current log
+     * @throws IOException if the log cannot be moved or reopened
+     */
+    synchronized void rotate(Path segment) throws IOException {
+        channel.force(false);
+        channel.close();
+        try {
+            Files.move(path, segment, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            channel = openChannel(path);
+        }
+    }
+
+    /**
+     * Cuts the log back to the given size, dropping every frame appended
+     * after that point.
+     *
+     * @param size the size to keep, in bytes
+     * @throws IOException if the log cannot be truncated
+     */
+    synchronized void truncate(long size) throws IOException {
+        System.out.printf("⚠️  Discarding %d trailing bytes of %s%n", channel.size() - size, path.getFileName());
+        channel.truncate(size);
+        channel.position(size);
+    }
+
+    /**
+     * Gets the current size of the log on disk.
+     *
+     * @return log size in bytes
+     * @throws IOException if the size cannot be read
+     */
+    synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static FileChannel openChannel(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    /**
+     * Decodes frames from the start of the log up to the torn tail, if any:
+     * a frame that runs past the end of the log, or one that fails its
+     * checksum and is not followed by an intact frame.
+     *
+     * @return the position just past the last intact frame
+     * @throws IOException if the log cannot be read, if a damaged frame is
+     *         followed by intact ones, or if an intact frame cannot be
+     *         decoded; nothing is cut off in those cases
+     */
+    private long readFrames(long size, Consumer<T> saved, Consumer<String> removed) throws IOException {
+        long position = 0;
+        while (true) {
+            byte[] bytes = readFrame(position, size);
+            if (bytes == null) {
+                long next = nextFrame(position, size);
+                if (next >= 0 && readFrame(next, size) != null) {
+                    throw new IOException("Damaged frame at offset " + position + " of " + path.getFileName()
+                        + " is followed by intact records");
+                }
+                return position;
+            }
+
+            if (bytes.length > 0 && bytes[0] == TOMBSTONE) {
+                removed.accept(new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8));
+            } else {
+                T record;
+                try {
+                    record = codec.decode(bytes);
+                } catch (IOException e) {
+                    throw new IOException("Cannot decode the record at offset " + position + " of "
+                        + path.getFileName() + ": " + e.getMessage(), e);
+                }
+                saved.accept(record);
+            }
+            position += FRAME_HEADER_SIZE + bytes.length;
+        }
+    }
+
+    /**
+     * Reads the payload of the frame at a position.
+     *
+     * @return the payload, or null if the frame is short, empty or fails its checksum
+     */
+    private byte[] readFrame(long position, long size) throws IOException {
+        if (position + FRAME_HEADER_SIZE > size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        readFully(header, position);
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        // Every frame has a payload, so a zero length is unwritten space
+        if (length <= 0 || position + FRAME_HEADER_SIZE + length > size) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload, position + FRAME_HEADER_SIZE);
+        return checksum == checksum(payload.array()) ? payload.array() : null;
+    }
+
+    /**
+     * Gets where the frame after a damaged one would start, going by its
+     * length field.
+     *
+     * @return the position, or -1 if the damaged frame's length runs past the end
+     */
+    private long nextFrame(long position, long size) throws IOException {
+        if (position + FRAME_HEADER_SIZE > size) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        readFully(header, position);
+        int length = header.getInt(0);
+        long next = position + FRAME_HEADER_SIZE + length;
+        return length <= 0 || next > size ? -1 : next;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + path.getFileName());
+            }
+        }
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
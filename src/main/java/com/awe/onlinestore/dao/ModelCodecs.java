@@ -0,0 +1,411 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.*;
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Binary codecs for the persisted model classes.
+ *
+ * <p>Compared with Java serialization these skip class descriptors entirely
+ * and store order lines as a product reference (id, name and the unit price
+ * charged) instead of a full copy of the product, and the customer as their
+ * id and name instead of a copy of their account; both are resolved when the
+ * order is read back. Orders written before format 2 embed the customer,
+ * including a shipping address that is one of the customer's addresses
+ * stored as its index.</p>
+ */
+final class ModelCodecs {
+    private static final int VERSION = 1;
+    /** Format 2 stores the order's customer by id and its shipping address in full. */
+    private static final int ORDER_VERSION = 2;
+
+    private static final byte CARD_PAYMENT = 1;
+    private static final byte CHEQUE_PAYMENT = 2;
+    private static final byte FINANCE_PAYMENT = 3;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private ModelCodecs() {
+    }
+
+    static BinaryCodec<Product> products() {
+        return new BinaryCodec<Product>(VERSION, Product.class) {
+            @Override
+            void writeFields(BinaryWriter out, Product product) {
+                out.writeString(product.getProductId());
+                out.writeString(product.getName());
+                out.writeString(product.getDescription());
+                out.writeString(product.getCategory());
+                out.writeDouble(product.getPrice());
+                out.writeVarInt(product.getStockQuantity());
+            }
+
+            @Override
+            Product readFields(BinaryReader in, int version) throws IOException {
+                return new Product(in.readString(), in.readString(), in.readString(),
+                                   in.readString(), in.readDouble(), in.readVarInt());
+            }
+        };
+    }
+
+    static BinaryCodec<Customer> customers() {
+        return new BinaryCodec<Customer>(VERSION, Customer.class) {
+            @Override
+            void writeFields(BinaryWriter out, Customer customer) {
+                writeCustomer(out, customer);
+            }
+
+            @Override
+            Customer readFields(BinaryReader in, int version) throws IOException {
+                return readCustomer(in);
+            }
+        };
+    }
+
+    /**
+     * Creates the order codec.
+     *
+     * @param productLookup resolves the product id stored on each order line
+     * @param customerLookup resolves the customer id stored on each order
+     * @return the order codec
+     */
+    static BinaryCodec<Order> orders(Function<String, Product> productLookup,
+                                     Function<String, Customer> customerLookup) {
+        return new BinaryCodec<Order>(ORDER_VERSION, Order.class) {
+            @Override
+            void writeFields(BinaryWriter out, Order order) {
+                out.writeString(order.getOrderId());
+                writeDate(out, order.getOrderDate());
+                writeEnum(out, order.getStatus());
+                out.writeDouble(order.getTotalAmount());
+
+                Customer customer = order.getCustomer();
+                out.writeBoolean(customer != null);
+                if (customer != null) {
+                    out.writeString(customer.getCustomerId());
+                    out.writeString(customer.getName());
+                }
+                writeShippingAddress(out, order.getShippingAddress());
+
+                List<OrderItem> items = order.getItems();
+                out.writeVarInt(items.size());
+                for (OrderItem item : items) {
+                    Product product = item.getProduct();
+                    out.writeString(product != null ? product.getProductId() : null);
+                    out.writeString(product != null ? product.getName() : null);
+                    out.writeVarInt(item.getQuantity());
+                    out.writeDouble(item.getUnitPrice());
+                }
+            }
+
+            @Override
+            Order readFields(BinaryReader in, int version) throws IOException {
+                Order order = new Order();
+                order.setOrderId(in.readString());
+                order.setOrderDate(readDate(in));
+                order.setStatus(readEnum(in, OrderStatus.values()));
+                double totalAmount = in.readDouble();
+
+                if (version < ORDER_VERSION) {
+                    if (in.readBoolean()) {
+                        order.setCustomer(readCustomer(in));
+                    }
+                    order.setShippingAddress(readShippingAddress(in, order.getCustomer()));
+                } else {
+                    if (in.readBoolean()) {
+                        String customerId = in.readString();
+                        String customerName = in.readString();
+                        Customer customer = customerId == null ? null : customerLookup.apply(customerId);
+                        if (customer == null) {
+                            // Customer account is gone; keep what the order recorded
+                            customer = new Customer(customerId, null, null, customerName, null);
+                        }
+                        order.setCustomer(customer);
+                    }
+                    order.setShippingAddress(readShippingAddress(in, null));
+                }
+
+                int itemCount = in.readVarInt();
+                for (int i = 0; i < itemCount; i++) {
+                    String productId = in.readString();
+                    String productName = in.readString();
+                    int quantity = in.readVarInt();
+                    double unitPrice = in.readDouble();
+
+                    OrderItem item = new OrderItem();
+                    if (productId != null) {
+                        Product product = productLookup.apply(productId);
+                        if (product == null) {
+                            // Product has left the catalogue; keep what the order recorded
+                            product = new Product(productId, productName, null, null, unitPrice, 0);
+                        }
+                        item.setProduct(product);
+                    }
+                    item.setQuantity(quantity);
+                    item.setUnitPrice(unitPrice);
+                    order.getItems().add(item);
+                }
+
+                // Restore the stored total rather than recomputing it
+                order.setTotalAmount(totalAmount);
+                return order;
+            }
+        };
+    }
+
+    static BinaryCodec<Payment> payments() {
+        return new BinaryCodec<Payment>(VERSION, Payment.class) {
+            @Override
+            void writeFields(BinaryWriter out, Payment payment) {
+                if (payment instanceof CardDetails) {
+                    CardDetails card = (CardDetails) payment;
+                    out.writeByte(CARD_PAYMENT);
+                    writePaymentBase(out, payment);
+                    out.writeString(card.getCardNumber());
+                    out.writeString(card.getExpiryDate());
+                    out.writeString(card.getCardHolderName());
+                    out.writeString(card.getCvv());
+                } else if (payment instanceof ChequeDetails) {
+                    ChequeDetails cheque = (ChequeDetails) payment;
+                    out.writeByte(CHEQUE_PAYMENT);
+                    writePaymentBase(out, payment);
+                    out.writeString(cheque.getChequeNumber());
+                    out.writeString(cheque.getBankName());
+                } else if (payment instanceof FinanceAccount) {
+                    FinanceAccount finance = (FinanceAccount) payment;
+                    out.writeByte(FINANCE_PAYMENT);
+                    writePaymentBase(out, payment);
+                    out.writeString(finance.getAccountNumber());
+                    out.writeString(finance.getBankName());
+                    out.writeString(finance.getFinanceProvider());
+                } else {
+                    throw new IllegalArgumentException("Unsupported payment type: " + payment.getClass().getName());
+                }
+            }
+
+            @Override
+            Payment readFields(BinaryReader in, int version) throws IOException {
+                int kind = in.readByte();
+                Payment payment;
+                switch (kind) {
+                    case CARD_PAYMENT:
+                        payment = new CardDetails();
+                        break;
+                    case CHEQUE_PAYMENT:
+                        payment = new ChequeDetails();
+                        break;
+                    case FINANCE_PAYMENT:
+                        payment = new FinanceAccount();
+                        break;
+                    default:
+                        throw new IOException("Unknown payment type " + kind);
+                }
+
+                payment.setPaymentId(in.readString());
+                payment.setAmount(in.readDouble());
+                payment.setStatus(readEnum(in, PaymentStatus.values()));
+                payment.setOrderId(in.readString());
+
+                if (payment instanceof CardDetails) {
+                    CardDetails card = (CardDetails) payment;
+                    card.setCardNumber(in.readString());
+                    card.setExpiryDate(in.readString());
+                    card.setCardHolderName(in.readString());
+                    card.setCvv(in.readString());
+                } else if (payment instanceof ChequeDetails) {
+                    ChequeDetails cheque = (ChequeDetails) payment;
+                    cheque.setChequeNumber(in.readString());
+                    cheque.setBankName(in.readString());
+                } else {
+                    FinanceAccount finance = (FinanceAccount) payment;
+                    finance.setAccountNumber(in.readString());
+                    finance.setBankName(in.readString());
+                    finance.setFinanceProvider(in.readString());
+                }
+                return payment;
+            }
+        };
+    }
+
+    // Shared field groups
+
+    private static void writeCustomer(BinaryWriter out, Customer customer) {
+        out.writeString(customer.getCustomerId());
+        out.writeString(customer.getUsername());
+        out.writeString(customer.getPassword());
+        out.writeString(customer.getName());
+        out.writeString(customer.getEmail());
+        List<Address> addresses = customer.getAddresses();
+        out.writeVarInt(addresses.size());
+        for (Address address : addresses) {
+            writeAddress(out, address);
+        }
+    }
+
+    private static Customer readCustomer(BinaryReader in) throws IOException {
+        Customer customer = new Customer(in.readString(), in.readString(), in.readString(),
+                                         in.readString(), in.readString());
+        int addressCount = in.readVarInt();
+        for (int i = 0; i < addressCount; i++) {
+            // Added directly: addAddress() would drop addresses that fail validation
+            customer.getAddresses().add(readAddress(in));
+        }
+        return customer;
+    }
+
+    private static void writeAddress(BinaryWriter out, Address address) {
+        out.writeString(address.getStreet());
+        out.writeString(address.getCity());
+        out.writeString(address.getPostcode());
+        out.writeString(address.getCountry());
+    }
+
+    private static Address readAddress(BinaryReader in) throws IOException {
+        return new Address(in.readString(), in.readString(), in.readString(), in.readString());
+    }
+
+    /**
+     * Writes the shipping address as {@code 0} (none) or {@code 1} followed by
+     * the address. Orders before format 2 also wrote {@code 2 + i} when it was
+     * the embedded customer's i-th address; the customer is no longer
+     * embedded and their addresses may change, so it is always written out.
+     */
+    private static void writeShippingAddress(BinaryWriter out, Address shipping) {
+        if (shipping == null) {
+            out.writeVarInt(0);
+            return;
+        }
+        out.writeVarInt(1);
+        writeAddress(out, shipping);
+    }
+
+    private static Address readShippingAddress(BinaryReader in, Customer customer) throws IOException {
+        int encoded = in.readVarInt();
+        if (encoded == 0) {
+            return null;
+        }
+        if (encoded == 1) {
+            return readAddress(in);
+        }
+        int index = encoded - 2;
+        if (customer == null || index >= customer.getAddresses().size()) {
+            throw new IOException("Shipping address refers to missing customer address " + index);
+        }
+        return customer.getAddresses().get(index);
+    }
+
+    private static void writePaymentBase(BinaryWriter out, Payment payment) {
+        out.writeString(payment.getPaymentId());
+        out.writeDouble(payment.getAmount());
+        writeEnum(out, payment.getStatus());
+        out.writeString(payment.getOrderId());
+    }
+
+    private static void writeDate(BinaryWriter out, LocalDateTime date) {
+        if (date == null) {
+            out.writeLong(NO_DATE);
+            return;
+        }
+        out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+        out.writeVarInt(date.getNano());
+    }
+
+    private static LocalDateTime readDate(BinaryReader in) throws IOException {
+        long epochSecond = in.readLong();
+        if (epochSecond == NO_DATE) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(epochSecond, in.readVarInt(), ZoneOffset.UTC);
+    }
+
+    /**
+     * Creates the codec of inventory ledger events. Every event has the same
+     * short layout: sequence, time, type, quantity and product id.
+     *
+     * @return the stock event codec
+     */
+    static BinaryCodec<StockEvent> stockEvents() {
+        return new BinaryCodec<StockEvent>(VERSION, StockEvent.class) {
+            @Override
+            void writeFields(BinaryWriter out, StockEvent event) {
+                out.writeLong(event.getSequence());
+                out.writeLong(event.getTimestamp());
+                writeEnum(out, event.getType());
+                out.writeVarInt(event.getQuantity());
+                out.writeString(event.getProductId());
+            }
+
+            @Override
+            StockEvent readFields(BinaryReader in, int version) throws IOException {
+                long sequence = in.readLong();
+                long timestamp = in.readLong();
+                StockEvent.Type type = readEnum(in, StockEvent.Type.values());
+                int quantity = in.readVarInt();
+                return new StockEvent(sequence, timestamp, in.readString(), type, quantity);
+            }
+        };
+    }
+
+    /**
+     * Creates the codec of transaction log records: the orders, payments and
+     * stock events of one unit of work, each written with its own codec.
+     *
+     * @param orders the order codec
+     * @param payments the payment codec
+     * @return the transaction codec
+     */
+    static BinaryCodec<Transaction> transactions(BinaryCodec<Order> orders, BinaryCodec<Payment> payments) {
+        BinaryCodec<StockEvent> stockEvents = stockEvents();
+        return new BinaryCodec<Transaction>(VERSION, Transaction.class) {
+            @Override
+            void writeFields(BinaryWriter out, Transaction transaction) {
+                writeAll(out, orders, transaction.getOrders());
+                writeAll(out, payments, transaction.getPayments());
+                writeAll(out, stockEvents, transaction.getStockEvents());
+            }
+
+            @Override
+            Transaction readFields(BinaryReader in, int version) throws IOException {
+                return new Transaction(readAll(in, orders), readAll(in, payments), readAll(in, stockEvents));
+            }
+        };
+    }
+
+    private static <T extends Serializable> void writeAll(BinaryWriter out, BinaryCodec<T> codec, List<T> records) {
+        out.writeVarInt(records.size());
+        for (T record : records) {
+            codec.write(out, record);
+        }
+    }
+
+    private static <T extends Serializable> List<T> readAll(BinaryReader in, BinaryCodec<T> codec)
+            throws IOException {
+        int count = in.readVarInt();
+        List<T> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(codec.read(in));
+        }
+        return records;
+    }
+
+    private static void writeEnum(BinaryWriter out, Enum<?> value) {
+        out.writeByte(value == null ? 0 : value.ordinal() + 1);
+    }
+
+    private static <E extends Enum<E>> E readEnum(BinaryReader in, E[] values) throws IOException {
+        int encoded = in.readByte();
+        if (encoded == 0) {
+            return null;
+        }
+        if (encoded < 0 || encoded > values.length) {
+            throw new IOException("Unknown enum ordinal " + (encoded - 1));
+        }
+        return values[encoded - 1];
+    }
+}
@@ -0,0 +1,440 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import com.awe.onlinestore.model.ProductFacets;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitmap indexes and column arrays over the catalogue for evaluating listing
+ * filters and sorts.
+ *
+ * <p>Every product gets a small integer ordinal, and each filterable value
+ * has a bitmap with a bit set per product that has it: one per category, one
+ * for products in stock and one per price bucket. Combining filters is then
+ * a word-at-a-time AND of bitmaps, 64 products per operation, instead of a
+ * test per product. A price range ORs the buckets it covers whole and checks
+ * exact prices only in the two buckets it cuts through.</p>
+ *
+ * <p>Price, stock and category are also kept as columns: arrays indexed by
+ * ordinal, with categories dictionary-encoded as small integers. Sorting the
+ * matches by one of them compares array elements, so no product is loaded,
+ * boxed or chased through pointers until the sorted page is read.</p>
+ *
+ * <p>Ordinals of deleted products are reused, so the bitmaps stay as dense
+ * as the catalogue. Kept current as a {@link RecordListener} of the product
+ * store, like {@link ProductSearchIndex}; a read-write lock keeps readers
+ * from seeing a product half re-filed.</p>
+ */
+class ProductBitmapIndex implements RecordListener<Product> {
+    /** Upper bounds of the price buckets; the last bucket has no upper bound. */
+    private static final double[] PRICE_BUCKET_BOUNDS =
+        {25, 50, 100, 250, 500, 750, 1000, 1500, 2000, 3000, 5000};
+    private static final Set<String> SORTABLE = Set.of("price", "stock", "category");
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> ordinalById = new HashMap<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private String[] idByOrdinal = new String[64];
+    private double[] priceByOrdinal = new double[64];
+    private int[] stockByOrdinal = new int[64];
+    private int[] categoryByOrdinal = new int[64];
+    private int nextOrdinal;
+
+    /** Category dictionary: the id of each category spelling and back. */
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+
+    private final BitSet live = new BitSet();
+    private final BitSet inStock = new BitSet();
+    private final Map<String, BitSet> byCategory = new HashMap<>();
+    private final BitSet[] byPriceBucket = new BitSet[PRICE_BUCKET_BOUNDS.length + 1];
+
+    ProductBitmapIndex() {
+        for (int i = 0; i < byPriceBucket.length; i++) {
+            byPriceBucket[i] = new BitSet();
+        }
+    }
+
+    @Override
+    public void saved(Product product) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = ordinalById.get(product.getProductId());
+            int ordinal;
+            if (existing != null) {
+                ordinal = existing;
+                unfile(ordinal);
+            } else {
+                ordinal = allocate(product.getProductId());
+            }
+
+            categoryByOrdinal[ordinal] = categoryId(product.getCategory());
+            priceByOrdinal[ordinal] = product.getPrice();
+            stockByOrdinal[ordinal] = product.getStockQuantity();
+            String category = ProductCategoryIndex.categoryKey(product.getCategory());
+            if (category != null) {
+                byCategory.computeIfAbsent(category, key -> new BitSet()).set(ordinal);
+            }
+            byPriceBucket[priceBucketOf(product.getPrice())].set(ordinal);
+            inStock.set(ordinal, product.isInStock());
+            live.set(ordinal);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removed(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = ordinalById.remove(id);
+            if (ordinal != null) {
+                unfile(ordinal);
+                live.clear(ordinal);
+                idByOrdinal[ordinal] = null;
+                freeOrdinals.push(ordinal);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the products passing all the given filters.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param inStockOnly true to include only products in stock
+     * @return the matching product ids, in no particular order
+     */
+    List<String> productIds(String category, Double minPrice, Double maxPrice, boolean inStockOnly) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = matching(category, minPrice, maxPrice, inStockOnly);
+            List<String> ids = new ArrayList<>(matches.cardinality());
+            for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+                ids.add(idByOrdinal[ordinal]);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the products passing all the given filters, sorted on a column.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param inStockOnly true to include only products in stock
+     * @param sortBy the column to sort on, see {@link #isSortable(String)}
+     * @param descending true to sort highest first; ties stay in product ID order
+     * @return the matching product ids, sorted
+     * @throws IllegalArgumentException if there is no column for {@code sortBy}
+     */
+    List<String> productIds(String category, Double minPrice, Double maxPrice, boolean inStockOnly,
+                            String sortBy, boolean descending) {
+        lock.readLock().lock();
+        try {
+            OrdinalOrder byColumn = columnOrder(sortBy);
+            BitSet matches = matching(category, minPrice, maxPrice, inStockOnly);
+            int[] ordinals = matches.stream().toArray();
+            sort(ordinals, (a, b) -> {
+                int order = byColumn.compare(a, b);
+                if (order != 0) {
+                    return descending ? -order : order;
+                }
+                return idByOrdinal[a].compareTo(idByOrdinal[b]);
+            });
+
+            List<String> ids = new ArrayList<>(ordinals.length);
+            for (int ordinal : ordinals) {
+                ids.add(idByOrdinal[ordinal]);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the category, price band and stock facets of a listing; see
+     * {@link ProductFacets} for what each facet counts. Every count is the
+     * cardinality of an AND of bitmaps, so no product is loaded.
+     *
+     * @param category the selected category, matched ignoring case; null or empty for all
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param inStockOnly true to include only products in stock
+     * @param categories the categories to count, in the order to list them
+     * @param bandBounds the lowest price of every price band after the first,
+     *                   ascending; each band runs up to, not including, the next bound
+     * @return the facet counts
+     */
+    ProductFacets facets(String category, Double minPrice, Double maxPrice, boolean inStockOnly,
+                         List<String> categories, double[] bandBounds) {
+        lock.readLock().lock();
+        try {
+            BitSet inCategory = live;
+            if (category != null && !category.trim().isEmpty()) {
+                inCategory = byCategory.getOrDefault(ProductCategoryIndex.categoryKey(category), new BitSet());
+            }
+            BitSet stocked = inStockOnly ? inStock : live;
+            BitSet priced = live;
+            if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+                priced = new BitSet();
+            } else if (minPrice != null || maxPrice != null) {
+                priced = priceRange(live, minPrice, maxPrice);
+            }
+
+            BitSet pricedAndStocked = and(priced, stocked);
+            Map<String, Integer> categoryCounts = new LinkedHashMap<>();
+            for (String name : categories) {
+                BitSet products = byCategory.get(ProductCategoryIndex.categoryKey(name));
+                categoryCounts.put(name, products == null ? 0 : countBoth(products, pricedAndStocked));
+            }
+
+            BitSet inCategoryAndStocked = and(inCategory, stocked);
+            List<ProductFacets.PriceBucket> priceBuckets = new ArrayList<>(bandBounds.length + 1);
+            for (int band = 0; band <= bandBounds.length; band++) {
+                Double low = band == 0 ? null : bandBounds[band - 1];
+                Double high = band == bandBounds.length ? null : bandBounds[band];
+                int count = countBoth(priceBand(low, high), inCategoryAndStocked);
+                priceBuckets.add(new ProductFacets.PriceBucket(low, high, count));
+            }
+
+            BitSet inCategoryAndPriced = and(inCategory, priced);
+            int inStockCount = countBoth(inCategoryAndPriced, inStock);
+            int outOfStockCount = inCategoryAndPriced.cardinality() - inStockCount;
+            int matchCount = countBoth(inCategoryAndPriced, stocked);
+            return new ProductFacets(categoryCounts, priceBuckets, inStockCount, outOfStockCount, matchCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether listings can be sorted on a column of this index.
+     *
+     * @param sortBy the sort field
+     * @return true for "price", "stock" and "category", ignoring case
+     */
+    static boolean isSortable(String sortBy) {
+        return sortBy != null && SORTABLE.contains(sortBy.toLowerCase(Locale.ROOT));
+    }
+
+    /** Evaluates the filters to a fresh bitmap. Called with the read lock held. */
+    private BitSet matching(String category, Double minPrice, Double maxPrice, boolean inStockOnly) {
+        if (minPrice != null && maxPrice != null && minPrice > maxPrice) {
+            return new BitSet();
+        }
+        BitSet matches;
+        if (category != null && !category.trim().isEmpty()) {
+            BitSet inCategory = byCategory.get(ProductCategoryIndex.categoryKey(category));
+            if (inCategory == null) {
+                return new BitSet();
+            }
+            matches = (BitSet) inCategory.clone();
+        } else {
+            matches = (BitSet) live.clone();
+        }
+        if (inStockOnly) {
+            matches.and(inStock);
+        }
+        if (minPrice != null || maxPrice != null) {
+            matches.and(priceRange(matches, minPrice, maxPrice));
+        }
+        return matches;
+    }
+
+    /** Compares two ordinals on a column. Called with the read lock held. */
+    private OrdinalOrder columnOrder(String sortBy) {
+        switch (sortBy == null ? "" : sortBy.toLowerCase(Locale.ROOT)) {
+            case "price":
+                double[] prices = priceByOrdinal;
+                return (a, b) -> Double.compare(prices[a], prices[b]);
+            case "stock":
+                int[] stock = stockByOrdinal;
+                return (a, b) -> Integer.compare(stock[a], stock[b]);
+            case "category":
+                // Rank the dictionary once so products compare by category name without touching strings
+                Integer[] byName = new Integer[categoryNames.size()];
+                for (int i = 0; i < byName.length; i++) {
+                    byName[i] = i;
+                }
+                Arrays.sort(byName, Comparator.comparing(categoryNames::get));
+                int[] rank = new int[byName.length];
+                for (int i = 0; i < byName.length; i++) {
+                    rank[byName[i]] = i;
+                }
+                int[] categories = categoryByOrdinal;
+                return (a, b) -> Integer.compare(rankOf(rank, categories[a]), rankOf(rank, categories[b]));
+            default:
+                throw new IllegalArgumentException("No column to sort by " + sortBy);
+        }
+    }
+
+    /** Products without a category sort first. */
+    private static int rankOf(int[] rank, int categoryId) {
+        return categoryId < 0 ? -1 : rank[categoryId];
+    }
+
+    private int categoryId(String category) {
+        if (category == null) {
+            return -1;
+        }
+        Integer id = categoryIds.get(category);
+        if (id == null) {
+            id = categoryNames.size();
+            categoryIds.put(category, id);
+            categoryNames.add(category);
+        }
+        return id;
+    }
+
+    /**
+     * Builds the bitmap of products priced within a range. Only the
+     * candidates in buckets the range cuts through have their price checked.
+     */
+    private BitSet priceRange(BitSet candidates, Double minPrice, Double maxPrice) {
+        BitSet range = new BitSet();
+        for (int bucket = 0; bucket < byPriceBucket.length; bucket++) {
+            double low = bucket == 0 ? Double.NEGATIVE_INFINITY : PRICE_BUCKET_BOUNDS[bucket - 1];
+            double high = bucket == PRICE_BUCKET_BOUNDS.length ? Double.POSITIVE_INFINITY : PRICE_BUCKET_BOUNDS[bucket];
+            if ((maxPrice != null && low > maxPrice) || (minPrice != null && high <= minPrice)) {
+                continue;
+            }
+            // Prices in a bucket are >= low and < high
+            if ((minPrice == null || low >= minPrice) && (maxPrice == null || high <= maxPrice)) {
+                range.or(byPriceBucket[bucket]);
+                continue;
+            }
+            BitSet partial = (BitSet) byPriceBucket[bucket].clone();
+            partial.and(candidates);
+            for (int ordinal = partial.nextSetBit(0); ordinal >= 0; ordinal = partial.nextSetBit(ordinal + 1)) {
+                double price = priceByOrdinal[ordinal];
+                if ((minPrice == null || price >= minPrice) && (maxPrice == null || price <= maxPrice)) {
+                    range.set(ordinal);
+                }
+            }
+        }
+        return range;
+    }
+
+    /**
+     * Builds the bitmap of products priced from {@code low} up to, but not
+     * including, {@code high}. Only buckets the band cuts through have their
+     * prices checked, and none do when its bounds are bucket bounds.
+     */
+    private BitSet priceBand(Double low, Double high) {
+        BitSet band = new BitSet();
+        for (int bucket = 0; bucket < byPriceBucket.length; bucket++) {
+            double bucketLow = bucket == 0 ? Double.NEGATIVE_INFINITY : PRICE_BUCKET_BOUNDS[bucket - 1];
+            double bucketHigh = bucket == PRICE_BUCKET_BOUNDS.length
+                ? Double.POSITIVE_INFINITY : PRICE_BUCKET_BOUNDS[bucket];
+            if ((high != null && bucketLow >= high) || (low != null && bucketHigh <= low)) {
+                continue;
+            }
+            if ((low == null || bucketLow >= low) && (high == null || bucketHigh <= high)) {
+                band.or(byPriceBucket[bucket]);
+                continue;
+            }
+            BitSet partial = byPriceBucket[bucket];
+            for (int ordinal = partial.nextSetBit(0); ordinal >= 0; ordinal = partial.nextSetBit(ordinal + 1)) {
+                double price = priceByOrdinal[ordinal];
+                if ((low == null || price >= low) && (high == null || price < high)) {
+                    band.set(ordinal);
+                }
+            }
+        }
+        return band;
+    }
+
+    private static BitSet and(BitSet a, BitSet b) {
+        BitSet both = (BitSet) a.clone();
+        both.and(b);
+        return both;
+    }
+
+    private static int countBoth(BitSet a, BitSet b) {
+        return and(a, b).cardinality();
+    }
+
+    private int allocate(String id) {
+        int ordinal;
+        if (!freeOrdinals.isEmpty()) {
+            ordinal = freeOrdinals.pop();
+        } else {
+            ordinal = nextOrdinal++;
+            if (ordinal == idByOrdinal.length) {
+                int capacity = idByOrdinal.length * 2;
+                idByOrdinal = Arrays.copyOf(idByOrdinal, capacity);
+                priceByOrdinal = Arrays.copyOf(priceByOrdinal, capacity);
+                stockByOrdinal = Arrays.copyOf(stockByOrdinal, capacity);
+                categoryByOrdinal = Arrays.copyOf(categoryByOrdinal, capacity);
+            }
+        }
+        ordinalById.put(id, ordinal);
+        idByOrdinal[ordinal] = id;
+        return ordinal;
+    }
+
+    /** Clears a product's bits from the category, price and stock bitmaps. */
+    private void unfile(int ordinal) {
+        int categoryId = categoryByOrdinal[ordinal];
+        if (categoryId >= 0) {
+            String category = ProductCategoryIndex.categoryKey(categoryNames.get(categoryId));
+            BitSet inCategory = byCategory.get(category);
+            inCategory.clear(ordinal);
+            if (inCategory.isEmpty()) {
+                byCategory.remove(category);
+            }
+            categoryByOrdinal[ordinal] = -1;
+        }
+        byPriceBucket[priceBucketOf(priceByOrdinal[ordinal])].clear(ordinal);
+        inStock.clear(ordinal);
+    }
+
+    /**
+     * Merge sorts ordinals in place, comparing them without boxing.
+     */
+    private static void sort(int[] ordinals, OrdinalOrder order) {
+        mergeSort(ordinals, new int[ordinals.length], 0, ordinals.length, order);
+    }
+
+    private static void mergeSort(int[] ordinals, int[] buffer, int from, int to, OrdinalOrder order) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(ordinals, buffer, from, mid, order);
+        mergeSort(ordinals, buffer, mid, to, order);
+        if (order.compare(ordinals[mid - 1], ordinals[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(ordinals, from, buffer, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < mid && order.compare(buffer[left], buffer[right]) <= 0)) {
+                ordinals[i] = buffer[left++];
+            } else {
+                ordinals[i] = buffer[right++];
+            }
+        }
+    }
+
+    private interface OrdinalOrder {
+        int compare(int a, int b);
+    }
+
+    private static int priceBucketOf(double price) {
+        int bucket = Arrays.binarySearch(PRICE_BUCKET_BOUNDS, price);
+        // A price equal to a bound starts the next bucket
+        return bucket >= 0 ? bucket + 1 : -bucket - 1;
+    }
+}
@@ -0,0 +1,110 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secondary index from category to the ids of the products in it.
+ *
+ * <p>Categories are matched ignoring case and surrounding spaces; the name
+ * shown for a category is the spelling of the first product filed under it.
+ * The sorted list of category names is rebuilt only when a category appears
+ * or disappears, so listing categories costs nothing per request.</p>
+ *
+ * <p>Kept current as a {@link RecordListener} of the product store, like
+ * {@link ProductSearchIndex}, including when a product moves category.</p>
+ */
+class ProductCategoryIndex implements RecordListener<Product> {
+    private final Map<String, Set<String>> idsByCategory = new ConcurrentHashMap<>();
+    private final Map<String, String> displayNames = new ConcurrentHashMap<>();
+    private final Map<String, String> categoryById = new ConcurrentHashMap<>();
+
+    private volatile List<String> categories = Collections.emptyList();
+
+    @Override
+    public void saved(Product product) {
+        String id = product.getProductId();
+        String category = categoryKey(product.getCategory());
+        String previous = category == null ? categoryById.remove(id) : categoryById.put(id, category);
+        if (Objects.equals(previous, category)) {
+            return;
+        }
+
+        boolean changed = previous != null && unfile(id, previous);
+        if (category != null) {
+            Set<String> ids = idsByCategory.get(category);
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+                idsByCategory.put(category, ids);
+                displayNames.put(category, product.getCategory().trim());
+                changed = true;
+            }
+            ids.add(id);
+        }
+        if (changed) {
+            rebuildCategoryList();
+        }
+    }
+
+    @Override
+    public void removed(String id) {
+        String previous = categoryById.remove(id);
+        if (previous != null && unfile(id, previous)) {
+            rebuildCategoryList();
+        }
+    }
+
+    /**
+     * Gets the ids of the products in a category.
+     *
+     * @param category the category, matched ignoring case
+     * @return the product ids; empty if the category is unknown
+     */
+    Set<String> productIds(String category) {
+        String key = categoryKey(category);
+        Set<String> ids = key == null ? null : idsByCategory.get(key);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Gets every category that has at least one product.
+     *
+     * @return the category names in alphabetical order, unmodifiable
+     */
+    List<String> categories() {
+        return categories;
+    }
+
+    /**
+     * Takes a product out of a category.
+     *
+     * @return true if that emptied the category
+     */
+    private boolean unfile(String id, String category) {
+        Set<String> ids = idsByCategory.get(category);
+        ids.remove(id);
+        if (!ids.isEmpty()) {
+            return false;
+        }
+        idsByCategory.remove(category);
+        displayNames.remove(category);
+        return true;
+    }
+
+    private void rebuildCategoryList() {
+        List<String> names = new ArrayList<>(displayNames.values());
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        categories = Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Normalizes a category name for lookups.
+     *
+     * @param category the category name, may be null
+     * @return the trimmed, lower-case name, or null
+     */
+    static String categoryKey(String category) {
+        return category == null ? null : category.trim().toLowerCase(Locale.ROOT);
+    }
+}
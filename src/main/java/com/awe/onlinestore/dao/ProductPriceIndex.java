@@ -0,0 +1,171 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Price-ordered index of the catalogue, kept once for all products and once
+ * per category.
+ *
+ * <p>Entries are (price, product id) pairs in a sorted set, so a price range
+ * is a sub-set view that is already in price order: listing the k products
+ * of a category between two prices costs O(log n + k) and needs no sort.
+ * Ties on price are ordered by product id.</p>
+ *
+ * <p>Kept current as a {@link RecordListener} of the product store, like
+ * {@link ProductSearchIndex}, including when a product changes price or
+ * category or is deleted.</p>
+ */
+class ProductPriceIndex implements RecordListener<Product> {
+    private final NavigableSet<PriceEntry> all = new ConcurrentSkipListSet<>();
+    private final Map<String, NavigableSet<PriceEntry>> byCategory = new ConcurrentHashMap<>();
+    private final Map<String, PriceEntry> entryById = new ConcurrentHashMap<>();
+    private final Map<String, String> categoryById = new ConcurrentHashMap<>();
+
+    @Override
+    public void saved(Product product) {
+        String id = product.getProductId();
+        PriceEntry entry = new PriceEntry(product.getPrice(), id);
+        String category = ProductCategoryIndex.categoryKey(product.getCategory());
+
+        PriceEntry previous = entryById.put(id, entry);
+        String previousCategory = category == null ? categoryById.remove(id) : categoryById.put(id, category);
+        if (entry.equals(previous) && Objects.equals(category, previousCategory)) {
+            return;
+        }
+
+        if (previous != null) {
+            unfile(previous, previousCategory);
+        }
+        all.add(entry);
+        if (category != null) {
+            byCategory.computeIfAbsent(category, key -> new ConcurrentSkipListSet<>()).add(entry);
+        }
+    }
+
+    @Override
+    public void removed(String id) {
+        PriceEntry previous = entryById.remove(id);
+        String previousCategory = categoryById.remove(id);
+        if (previous != null) {
+            unfile(previous, previousCategory);
+        }
+    }
+
+    /**
+     * Gets the lowest and highest price, read off the two ends of the sorted
+     * entries, so it stays right as products are repriced or deleted.
+     *
+     * @param category the category, matched ignoring case; null or empty for all
+     * @return {@code [min, max]}, or {@code [0, 0]} if there are no products
+     */
+    double[] priceRange(String category) {
+        NavigableSet<PriceEntry> entries = all;
+        if (category != null && !category.trim().isEmpty()) {
+            entries = byCategory.get(ProductCategoryIndex.categoryKey(category));
+        }
+        // Iterators rather than first()/last(), which throw if the set empties meanwhile
+        Iterator<PriceEntry> lowest = entries == null ? Collections.emptyIterator() : entries.iterator();
+        Iterator<PriceEntry> highest = entries == null ? Collections.emptyIterator() : entries.descendingIterator();
+        if (!lowest.hasNext() || !highest.hasNext()) {
+            return new double[]{0, 0};
+        }
+        return new double[]{lowest.next().price, highest.next().price};
+    }
+
+    /**
+     * Gets the products within a price range, in price order.
+     *
+     * @param category the category to restrict to, matched ignoring case;
+     *                 null or empty for all categories
+     * @param minPrice the lowest price to include, or null for no lower bound
+     * @param maxPrice the highest price to include, or null for no upper bound
+     * @param descending true to list the most expensive first
+     * @return the matching product ids
+     */
+    List<String> productIds(String category, Double minPrice, Double maxPrice, boolean descending) {
+        NavigableSet<PriceEntry> entries = all;
+        if (category != null && !category.trim().isEmpty()) {
+            entries = byCategory.get(ProductCategoryIndex.categoryKey(category));
+            if (entries == null) {
+                return Collections.emptyList();
+            }
+        }
+
+        NavigableSet<PriceEntry> range = entries;
+        if (minPrice != null && maxPrice != null) {
+            if (minPrice > maxPrice) {
+                return Collections.emptyList();
+            }
+            range = entries.subSet(lowerBound(minPrice), true, upperBound(maxPrice), false);
+        } else if (minPrice != null) {
+            range = entries.tailSet(lowerBound(minPrice), true);
+        } else if (maxPrice != null) {
+            range = entries.headSet(upperBound(maxPrice), false);
+        }
+        if (descending) {
+            range = range.descendingSet();
+        }
+
+        List<String> ids = new ArrayList<>();
+        for (PriceEntry entry : range) {
+            ids.add(entry.productId);
+        }
+        return ids;
+    }
+
+    private void unfile(PriceEntry entry, String category) {
+        all.remove(entry);
+        if (category != null) {
+            NavigableSet<PriceEntry> entries = byCategory.get(category);
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                byCategory.remove(category);
+            }
+        }
+    }
+
+    /** Sorts before every entry priced at {@code price}. */
+    private static PriceEntry lowerBound(double price) {
+        return new PriceEntry(price, "");
+    }
+
+    /** Sorts after every entry priced at {@code price}. */
+    private static PriceEntry upperBound(double price) {
+        return new PriceEntry(Math.nextUp(price), "");
+    }
+
+    /**
+     * A product's position in the price order.
+     */
+    private static final class PriceEntry implements Comparable<PriceEntry> {
+        private final double price;
+        private final String productId;
+
+        PriceEntry(double price, String productId) {
+            this.price = price;
+            this.productId = productId;
+        }
+
+        @Override
+        public int compareTo(PriceEntry other) {
+            int byPrice = Double.compare(price, other.price);
+            return byPrice != 0 ? byPrice : productId.compareTo(other.productId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PriceEntry)) return false;
+            PriceEntry other = (PriceEntry) o;
+            return Double.compare(price, other.price) == 0 && productId.equals(other.productId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(price, productId);
+        }
+    }
+}
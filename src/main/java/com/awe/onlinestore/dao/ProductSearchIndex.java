@@ -0,0 +1,447 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Inverted index over product names, descriptions and categories, ranking
+ * matches by relevance.
+ *
+ * <p>Text is split into lower-case runs of letters and digits, so
+ * "Galaxy S25+" yields the tokens {@code galaxy} and {@code s25}. Each token
+ * maps to the ids of the products containing it. The token dictionary is
+ * sorted, which lets a query term match every token it is a prefix of:
+ * "iph" finds "iPhone". A query with several terms matches products that
+ * contain all of them.</p>
+ *
+ * <p>Matches are scored with BM25F. Each posting records how often the token
+ * occurs in each field, and each field's count is weighted (a match in the
+ * name counts most) and normalized by the field's length against the
+ * catalogue average before term frequencies saturate. Terms found in fewer
+ * products weigh more. Tokens matched only by prefix count half as much as
+ * the exact word. The term statistics are maintained as products change, so
+ * a query only visits the postings of its own terms, and a bounded heap keeps
+ * the best matches without sorting the rest.</p>
+ *
+ * <p>In fuzzy mode a query word also matches tokens within one typing
+ * mistake, or two for words longer than five letters, so "samsng galxy"
+ * finds the Samsung Galaxy. Those tokens are found through a
+ * {@link TokenTrigramIndex} of the dictionary and count for less than exact
+ * and prefix matches.</p>
+ *
+ * <p>Updates are applied incrementally as a {@link RecordListener} of the
+ * product store and are therefore serialized; searches run concurrently
+ * with them and are weakly consistent, in line with the rest of
+ * {@link Database}.</p>
+ */
+class ProductSearchIndex implements RecordListener<Product> {
+    private static final int NAME = 0;
+    private static final int CATEGORY = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int FIELDS = 3;
+
+    // BM25F parameters: per-field weights and length normalization, and term frequency saturation
+    private static final double[] FIELD_WEIGHTS = {3.0, 1.5, 1.0};
+    private static final double[] FIELD_LENGTH_NORMALIZATION = {0.5, 0.3, 0.75};
+    private static final double K1 = 1.2;
+    private static final double PREFIX_MATCH_WEIGHT = 0.5;
+    /** Weight of a token one edit away; two edits count half as much again. */
+    private static final double FUZZY_MATCH_WEIGHT = 0.4;
+
+    /** Token to the products containing it, with the token's count per field. */
+    private final ConcurrentSkipListMap<String, Map<String, int[]>> postings = new ConcurrentSkipListMap<>();
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+    private final AtomicLongArray totalFieldLengths = new AtomicLongArray(FIELDS);
+    private final TokenTrigramIndex trigrams = new TokenTrigramIndex();
+
+    /**
+     * Indexes a product, replacing whatever was indexed for it before.
+     *
+     * @param product the product to index
+     */
+    @Override
+    public void saved(Product product) {
+        String id = product.getProductId();
+        Map<String, int[]> counts = new HashMap<>();
+        int[] lengths = new int[FIELDS];
+        lengths[NAME] = count(product.getName(), NAME, counts);
+        lengths[CATEGORY] = count(product.getCategory(), CATEGORY, counts);
+        lengths[DESCRIPTION] = count(product.getDescription(), DESCRIPTION, counts);
+
+        Document previous = documents.get(id);
+        if (previous != null && previous.hasCounts(counts)) {
+            return; // only price or stock changed
+        }
+        documents.put(id, new Document(counts, lengths));
+        if (previous != null) {
+            for (String token : previous.tokens) {
+                if (!counts.containsKey(token)) {
+                    removePosting(token, id);
+                }
+            }
+        }
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            Map<String, int[]> posting = postings.get(entry.getKey());
+            if (posting == null) {
+                posting = new ConcurrentHashMap<>();
+                postings.put(entry.getKey(), posting);
+                trigrams.add(entry.getKey());
+            }
+            posting.put(id, entry.getValue());
+        }
+        for (int field = 0; field < FIELDS; field++) {
+            totalFieldLengths.addAndGet(field, lengths[field] - (previous == null ? 0 : previous.lengths[field]));
+        }
+    }
+
+    @Override
+    public void removed(String id) {
+        Document document = documents.remove(id);
+        if (document != null) {
+            for (String token : document.tokens) {
+                removePosting(token, id);
+            }
+            for (int field = 0; field < FIELDS; field++) {
+                totalFieldLengths.addAndGet(field, -document.lengths[field]);
+            }
+        }
+    }
+
+    /**
+     * Finds the products matching every term of a query, most relevant first.
+     *
+     * @param query the search text
+     * @param limit the maximum number of ids to return
+     * @return ids of the best matching products, ties in id order; empty if
+     *         the query has no terms
+     */
+    List<String> search(String query, int limit) {
+        return search(query, limit, false);
+    }
+
+    /**
+     * Finds the products matching every term of a query, most relevant first,
+     * optionally tolerating typing mistakes.
+     *
+     * @param query the search text
+     * @param limit the maximum number of ids to return
+     * @param fuzzy true to also match words a few edits away from each term
+     * @return ids of the best matching products, ties in id order; empty if
+     *         the query has no terms
+     */
+    List<String> search(String query, int limit, boolean fuzzy) {
+        List<String> terms = new ArrayList<>(tokenize(query, new LinkedHashSet<>()));
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        int documentCount = Math.max(documents.size(), 1);
+        List<Term> matches = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            NavigableMap<String, Map<String, int[]>> tokens = postings.subMap(term, true, term + Character.MAX_VALUE, false);
+            Map<String, Integer> corrections = fuzzy ? corrections(term, tokens) : Collections.emptyMap();
+            if (!corrections.isEmpty()) {
+                tokens = new TreeMap<>(tokens);
+                for (String token : corrections.keySet()) {
+                    Map<String, int[]> posting = postings.get(token);
+                    if (posting != null) {
+                        tokens.put(token, posting);
+                    }
+                }
+            }
+            if (tokens.isEmpty()) {
+                return Collections.emptyList();
+            }
+            matches.add(new Term(term, tokens, corrections, documentCount));
+        }
+        double[] averageLengths = new double[FIELDS];
+        for (int field = 0; field < FIELDS; field++) {
+            averageLengths[field] = Math.max((double) totalFieldLengths.get(field) / documentCount, 1);
+        }
+
+        Comparator<Match> byRelevance = Comparator.comparingDouble((Match match) -> match.score)
+            .reversed().thenComparing(match -> match.id);
+        if (matches.size() == 1 && matches.get(0).tokens.size() == 1) {
+            // A single word: score its postings straight into the heap
+            Term term = matches.get(0);
+            PriorityQueue<Match> best = new PriorityQueue<>(Math.min(limit, 1024) + 1, byRelevance.reversed());
+            for (Map.Entry<String, int[]> posting : term.tokens.firstEntry().getValue().entrySet()) {
+                Document document = documents.get(posting.getKey());
+                if (document != null) {
+                    Match match = new Match(posting.getKey(), document);
+                    match.frequency = document.fieldFrequency(posting.getValue(), averageLengths);
+                    match.addTermScore(term.idf);
+                    offer(best, match, limit, byRelevance);
+                }
+            }
+            return ranked(best, byRelevance);
+        }
+
+        // Start from the rarest term's products, then narrow down to those containing the other terms
+        matches.sort(Comparator.comparingLong(term -> term.postingCount));
+        Term driver = matches.get(0);
+        Map<String, Match> candidates = new HashMap<>();
+        for (Map.Entry<String, Map<String, int[]>> token : driver.tokens.entrySet()) {
+            double tokenWeight = driver.weightOf(token.getKey());
+            for (Map.Entry<String, int[]> posting : token.getValue().entrySet()) {
+                Match match = candidates.get(posting.getKey());
+                if (match == null) {
+                    Document document = documents.get(posting.getKey());
+                    if (document == null) {
+                        continue;
+                    }
+                    match = new Match(posting.getKey(), document);
+                    candidates.put(match.id, match);
+                }
+                match.frequency += tokenWeight * match.document.fieldFrequency(posting.getValue(), averageLengths);
+            }
+        }
+        for (Match match : candidates.values()) {
+            match.addTermScore(driver.idf);
+        }
+
+        for (Term term : matches.subList(1, matches.size())) {
+            if (candidates.isEmpty()) {
+                return Collections.emptyList();
+            }
+            if ((long) term.tokens.size() * candidates.size() <= term.postingCount) {
+                // Few candidates: look each one up in the term's postings
+                for (Match match : candidates.values()) {
+                    for (Map.Entry<String, Map<String, int[]>> token : term.tokens.entrySet()) {
+                        int[] counts = token.getValue().get(match.id);
+                        if (counts != null) {
+                            match.frequency += term.weightOf(token.getKey())
+                                * match.document.fieldFrequency(counts, averageLengths);
+                        }
+                    }
+                }
+            } else {
+                // Many candidates: walk the term's postings once
+                for (Map.Entry<String, Map<String, int[]>> token : term.tokens.entrySet()) {
+                    double tokenWeight = term.weightOf(token.getKey());
+                    for (Map.Entry<String, int[]> posting : token.getValue().entrySet()) {
+                        Match match = candidates.get(posting.getKey());
+                        if (match != null) {
+                            match.frequency += tokenWeight * match.document.fieldFrequency(posting.getValue(), averageLengths);
+                        }
+                    }
+                }
+            }
+            Iterator<Match> remaining = candidates.values().iterator();
+            while (remaining.hasNext()) {
+                Match match = remaining.next();
+                if (match.frequency == 0) {
+                    remaining.remove();
+                } else {
+                    match.addTermScore(term.idf);
+                }
+            }
+        }
+
+        PriorityQueue<Match> best = new PriorityQueue<>(Math.min(limit, candidates.size()) + 1, byRelevance.reversed());
+        for (Match match : candidates.values()) {
+            offer(best, match, limit, byRelevance);
+        }
+        return ranked(best, byRelevance);
+    }
+
+    /**
+     * Finds the tokens a misspelt term might have been meant as, leaving out
+     * those it already matches as a prefix. Tokens two edits away are only
+     * looked for if there are none one edit away, which keeps the common
+     * single-typo case cheap and its corrections precise.
+     *
+     * @return the tokens and their edit distance from the term
+     */
+    private Map<String, Integer> corrections(String term, NavigableMap<String, Map<String, int[]>> prefixMatches) {
+        int maxEdits = term.length() <= 2 ? 0 : term.length() <= 5 ? 1 : 2;
+        for (int edits = 1; edits <= maxEdits; edits++) {
+            Map<String, Integer> corrections = trigrams.similar(term, edits);
+            corrections.keySet().removeIf(prefixMatches::containsKey);
+            if (!corrections.isEmpty()) {
+                return corrections;
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Adds a match to a heap of the best {@code limit} matches, whose head is
+     * the worst of them.
+     */
+    private static void offer(PriorityQueue<Match> best, Match match, int limit, Comparator<Match> byRelevance) {
+        if (best.size() < limit) {
+            best.add(match);
+        } else if (byRelevance.compare(match, best.peek()) < 0) {
+            best.poll();
+            best.add(match);
+        }
+    }
+
+    private static List<String> ranked(PriorityQueue<Match> best, Comparator<Match> byRelevance) {
+        List<Match> ranked = new ArrayList<>(best);
+        ranked.sort(byRelevance);
+        List<String> ids = new ArrayList<>(ranked.size());
+        for (Match match : ranked) {
+            ids.add(match.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Tokenizes one field of a product, adding to the per-token field counts.
+     *
+     * @return the number of tokens in the field
+     */
+    private static int count(String text, int field, Map<String, int[]> counts) {
+        List<String> tokens = tokenize(text, new ArrayList<>());
+        for (String token : tokens) {
+            counts.computeIfAbsent(token, key -> new int[FIELDS])[field]++;
+        }
+        return tokens.size();
+    }
+
+    private void removePosting(String token, String id) {
+        Map<String, int[]> posting = postings.get(token);
+        if (posting != null) {
+            posting.remove(id);
+            if (posting.isEmpty() && postings.remove(token, posting)) {
+                trigrams.remove(token);
+            }
+        }
+    }
+
+    /**
+     * Splits text into lower-case tokens of letters and digits.
+     *
+     * @param text the text to split, may be null
+     * @param tokens collection the tokens are added to
+     * @return the given collection
+     */
+    static <C extends Collection<String>> C tokenize(String text, C tokens) {
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * The tokens, token counts and field lengths indexed for a product.
+     */
+    private static final class Document {
+        private final String[] tokens;
+        private final int[][] counts;
+        private final int[] lengths;
+
+        Document(Map<String, int[]> counts, int[] lengths) {
+            this.tokens = new String[counts.size()];
+            this.counts = new int[counts.size()][];
+            int i = 0;
+            for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+                tokens[i] = entry.getKey();
+                this.counts[i++] = entry.getValue();
+            }
+            this.lengths = lengths;
+        }
+
+        boolean hasCounts(Map<String, int[]> other) {
+            if (other.size() != tokens.length) {
+                return false;
+            }
+            for (int i = 0; i < tokens.length; i++) {
+                if (!Arrays.equals(counts[i], other.get(tokens[i]))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Weights a token's counts in this product by field and normalizes
+         * them by the length of each field against the catalogue average.
+         */
+        double fieldFrequency(int[] tokenCounts, double[] averageLengths) {
+            double frequency = 0;
+            for (int field = 0; field < FIELDS; field++) {
+                if (tokenCounts[field] > 0) {
+                    double b = FIELD_LENGTH_NORMALIZATION[field];
+                    frequency += FIELD_WEIGHTS[field] * tokenCounts[field] / (1 - b + b * lengths[field] / averageLengths[field]);
+                }
+            }
+            return frequency;
+        }
+    }
+
+    /**
+     * A query term with the tokens it matches.
+     */
+    private static final class Term {
+        private final String text;
+        private final NavigableMap<String, Map<String, int[]>> tokens;
+        /** Tokens matched by fuzzy mode, with their edit distance from the term. */
+        private final Map<String, Integer> corrections;
+        /** Postings of the matching tokens; counts a product once per token it contains. */
+        private final long postingCount;
+        private final double idf;
+
+        Term(String text, NavigableMap<String, Map<String, int[]>> tokens, Map<String, Integer> corrections,
+             int documentCount) {
+            this.text = text;
+            this.tokens = tokens;
+            this.corrections = corrections;
+            long postingCount = 0;
+            for (Map<String, int[]> posting : tokens.values()) {
+                postingCount += posting.size();
+            }
+            this.postingCount = postingCount;
+            // The posting count overstates the products of a prefix matching several tokens
+            long documentFrequency = Math.min(postingCount, documentCount);
+            this.idf = Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        }
+
+        double weightOf(String token) {
+            if (token.equals(text)) {
+                return 1;
+            }
+            Integer edits = corrections.get(token);
+            return edits == null ? PREFIX_MATCH_WEIGHT : FUZZY_MATCH_WEIGHT / edits;
+        }
+    }
+
+    /**
+     * A candidate product and its score so far.
+     */
+    private static final class Match {
+        private final String id;
+        private final Document document;
+        /** Weighted frequency of the term being scored. */
+        private double frequency;
+        private double score;
+
+        Match(String id, Document document) {
+            this.id = id;
+            this.document = document;
+        }
+
+        void addTermScore(double idf) {
+            score += idf * frequency / (K1 + frequency);
+            frequency = 0;
+        }
+    }
+}
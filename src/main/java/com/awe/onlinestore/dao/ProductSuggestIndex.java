@@ -0,0 +1,96 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted dictionary of product names for type-ahead suggestions.
+ *
+ * <p>Every name is entered once for each word it contains, keyed by the
+ * lower-case text from that word to the end of the name, so "Galaxy S25"
+ * under "galaxy s25" and "s25". A prefix lookup is then a range scan of the
+ * sorted keys: "s2" finds "Galaxy S25" and "iph" finds "iPhone 17 Pro". Keys
+ * end with the product id so products with the same name are kept apart.</p>
+ *
+ * <p>Kept current as a {@link RecordListener} of the product store, like
+ * {@link ProductSearchIndex}.</p>
+ */
+class ProductSuggestIndex implements RecordListener<Product> {
+    private static final char ID_SEPARATOR = '\u0000';
+
+    private final ConcurrentSkipListMap<String, String> names = new ConcurrentSkipListMap<>();
+    private final Map<String, String[]> keysById = new ConcurrentHashMap<>();
+
+    @Override
+    public void saved(Product product) {
+        String id = product.getProductId();
+        String[] keys = keysFor(product.getName(), id);
+        String[] previous = keysById.put(id, keys);
+        if (previous != null) {
+            for (String key : previous) {
+                names.remove(key);
+            }
+        }
+        for (String key : keys) {
+            names.put(key, product.getName());
+        }
+    }
+
+    @Override
+    public void removed(String id) {
+        String[] keys = keysById.remove(id);
+        if (keys != null) {
+            for (String key : keys) {
+                names.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Gets the product names with a word starting with the given prefix.
+     *
+     * @param prefix the text typed so far, matched ignoring case
+     * @param limit the maximum number of names to return
+     * @return up to {@code limit} distinct names, ordered by the matching text
+     */
+    List<String> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Set<String> suggestions = new LinkedHashSet<>();
+        for (String name : names.subMap(key, true, key + Character.MAX_VALUE, false).values()) {
+            suggestions.add(name);
+            if (suggestions.size() == limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(suggestions);
+    }
+
+    private static String[] keysFor(String name, String id) {
+        String text = normalize(name);
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < text.length(); i++) {
+            boolean wordStart = Character.isLetterOrDigit(text.charAt(i))
+                && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)));
+            if (wordStart) {
+                keys.add(text.substring(i) + ID_SEPARATOR + id);
+            }
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    /**
+     * Lower-cases text and collapses runs of whitespace, so "galaxy  s25"
+     * still matches "Galaxy S25".
+     */
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,540 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * {@link RecordTable} for the catalogue that keeps products off the Java heap
+ * in two memory-mapped files.
+ *
+ * <p>{@code products.tbl} holds a 64-byte header followed by one fixed-width
+ * 64-byte record per product:</p>
+ * <pre>
+ *   0  int    flags (1 = live, 0 = deleted)
+ *   8  double price
+ *  16  int    epoch       checkpoint epoch the record was written in
+ *  20  int    stock quantity
+ *  24  int,int id          offset, length into the string heap
+ *  32  int,int name        (length -1 = null)
+ *  40  int,int description
+ *  48  int,int category
+ *  56  reserved
+ * </pre>
+ * <p>{@code products.heap} holds the UTF-8 bytes of those strings. Strings are
+ * appended when they change, so price and stock updates never touch the heap.
+ * The only on-heap structures are the id to slot map and the lists of slots
+ * waiting to be reused.</p>
+ *
+ * <p>Reads decode straight out of the mapping under an optimistic
+ * {@link StampedLock} stamp, falling back to a read lock only when a write
+ * raced with them, and return a fresh {@link Product} each time; changing it
+ * has no effect until it is saved.</p>
+ *
+ * <p>A checkpoint forces both mappings and then records the slot count, heap
+ * end and its epoch in the header. On load only the slots and heap bytes
+ * covered by the header, and records of that epoch or older, are trusted:
+ * anything written after the last checkpoint may be on disk or not, and is
+ * rebuilt by replaying the journal.</p>
+ *
+ * <p>So a record a checkpoint vouches for is never changed in place, which
+ * would leave the trusted slot pointing at heap bytes past the trusted end if
+ * the journal entry for the change were lost. Its first change after the
+ * checkpoint copies it to a free slot instead; the old slot stays as it was
+ * and is cleared once the next checkpoint vouches for its replacement, then
+ * reused. Deletions of such records wait for that checkpoint too. If both
+ * copies are still live after a crash, the newer epoch wins.</p>
+ */
+class ProductTable implements RecordTable<Product> {
+    static final int MAGIC = 0x41575054; // "AWPT"
+    static final int FORMAT_VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 64;
+
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_COUNT = 8;
+    private static final int HEADER_HEAP_END = 12;
+    private static final int HEADER_EPOCH = 16;
+
+    private static final int FLAGS = 0;
+    private static final int PRICE = 8;
+    private static final int EPOCH = 16;
+    private static final int STOCK = 20;
+    private static final int ID = 24;
+    private static final int NAME = 32;
+    private static final int DESCRIPTION = 40;
+    private static final int CATEGORY = 48;
+
+    private static final int LIVE = 1;
+
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_HEAP_SIZE = 256 * 1024;
+
+    private final String name;
+    private final Path tableFile;
+    private final Path heapFile;
+    private final Path importFile;
+    private final BinaryCodec<Product> codec;
+
+    private final StampedLock lock = new StampedLock();
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+
+    private FileChannel tableChannel;
+    private FileChannel heapChannel;
+    private volatile MappedByteBuffer table;
+    private volatile MappedByteBuffer heap;
+    private int count;
+    private int heapEnd;
+    // Records of this epoch or older belong to a checkpoint; writes are
+    // stamped with the next one
+    private int frozenEpoch;
+    // Slots whose records were replaced or deleted since the last capture,
+    // cleared once the next checkpoint is on disk
+    private List<Integer> retiring = new ArrayList<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private volatile boolean importPending;
+
+    /**
+     * Creates the table.
+     *
+     * @param dataDir directory holding the table files
+     * @param name entity name used for the file names
+     * @param codec codec of the snapshot to import when no table exists yet
+     */
+    ProductTable(String dataDir, String name, BinaryCodec<Product> codec) {
+        this.name = name;
+        this.tableFile = Paths.get(dataDir, name + ".tbl");
+        this.heapFile = Paths.get(dataDir, name + ".heap");
+        this.importFile = Paths.get(dataDir, name + ".dat");
+        this.codec = codec;
+    }
+
+    @Override
+    public boolean load() throws IOException {
+        boolean created = !Files.exists(tableFile) || Files.size(tableFile) == 0;
+        tableChannel = FileChannel.open(tableFile, StandardOpenOption.CREATE,
+                                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+        heapChannel = FileChannel.open(heapFile, StandardOpenOption.CREATE,
+                                       StandardOpenOption.READ, StandardOpenOption.WRITE);
+        table = map(tableChannel, Math.max(tableChannel.size(), slotOffset(INITIAL_SLOTS)));
+        heap = map(heapChannel, Math.max(heapChannel.size(), INITIAL_HEAP_SIZE));
+
+        if (created) {
+            table.putInt(HEADER_MAGIC, MAGIC);
+            table.putInt(HEADER_VERSION, FORMAT_VERSION);
+            writeHeader(0, 0, 0);
+        } else if (table.getInt(HEADER_MAGIC) != MAGIC) {
+            throw new IOException("Not a product table: " + tableFile);
+        }
+        int version = table.getInt(HEADER_VERSION);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported product table version " + version);
+        }
+        count = table.getInt(HEADER_COUNT);
+        heapEnd = table.getInt(HEADER_HEAP_END);
+        // Files written before epochs were kept have zero in both places
+        frozenEpoch = table.getInt(HEADER_EPOCH);
+
+        if (count == 0 && Files.exists(importFile)) {
+            return importSnapshot();
+        }
+
+        for (int slot = 0; slot < count; slot++) {
+            int base = slotOffset(slot);
+            if (table.getInt(base + FLAGS) != LIVE || table.getInt(base + EPOCH) > frozenEpoch) {
+                freeSlots.add(slot);
+                continue;
+            }
+            String id = readString(table, heap, base + ID);
+            Integer other = slots.get(id);
+            if (other != null) {
+                // A crash came between a checkpoint and clearing the slots it replaced
+                int older = table.getInt(slotOffset(other) + EPOCH) < table.getInt(base + EPOCH) ? other : slot;
+                table.putInt(slotOffset(older) + FLAGS, 0);
+                freeSlots.add(older);
+                if (older == slot) {
+                    continue;
+                }
+            }
+            slots.put(id, slot);
+        }
+        return false;
+    }
+
+    @Override
+    public Product get(String id) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            return null;
+        }
+        Product product = read(slot);
+        // The slot may have been freed and reused since it was looked up
+        return product != null && id.equals(product.getProductId()) ? product : null;
+    }
+
+    /**
+     * Reads just the stock quantity of a product, without decoding its strings.
+     *
+     * @param id the product id
+     * @return the stock quantity, or -1 if there is no such product
+     */
+    int stockQuantity(String id) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            return -1;
+        }
+        int field = slotOffset(slot) + STOCK;
+        long stamp = lock.tryOptimisticRead();
+        int stock = table.getInt(field);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                stock = table.getInt(field);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        // The slot may have been freed and reused since it was looked up
+        return slot.equals(slots.get(id)) ? stock : -1;
+    }
+
+    @Override
+    public void put(String id, Product product) {
+        long stamp = lock.writeLock();
+        try {
+            Integer slot = slots.get(id);
+            boolean moved = slot == null || table.getInt(slotOffset(slot) + EPOCH) <= frozenEpoch;
+            Integer previous = slot;
+            if (moved) {
+                // New records, and records a checkpoint vouches for, are
+                // written to a slot no checkpoint vouches for
+                slot = allocateSlot();
+                int base = slotOffset(slot);
+                if (previous == null) {
+                    for (int i = 0; i < RECORD_SIZE; i += 8) {
+                        table.putLong(base + i, 0L);
+                    }
+                    writeString(base + ID, id);
+                } else {
+                    int previousBase = slotOffset(previous);
+                    for (int i = 0; i < RECORD_SIZE; i += 8) {
+                        table.putLong(base + i, table.getLong(previousBase + i));
+                    }
+                    table.putInt(base + FLAGS, 0);
+                }
+                table.putInt(base + EPOCH, frozenEpoch + 1);
+            }
+
+            int base = slotOffset(slot);
+            table.putDouble(base + PRICE, product.getPrice());
+            table.putInt(base + STOCK, product.getStockQuantity());
+            writeStringIfChanged(base + NAME, product.getName());
+            writeStringIfChanged(base + DESCRIPTION, product.getDescription());
+            writeStringIfChanged(base + CATEGORY, product.getCategory());
+
+            if (moved) {
+                // Publish only once the record is complete
+                table.putInt(base + FLAGS, LIVE);
+                slots.put(id, slot);
+                if (previous != null) {
+                    retiring.add(previous);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not grow " + tableFile, e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Deletes a product by clearing its live flag, straight away or, if a
+     * checkpoint vouches for the record, once the next checkpoint is on disk.
+     * The slot is reused after that; its strings are not.
+     */
+    @Override
+    public boolean remove(String id) {
+        long stamp = lock.writeLock();
+        try {
+            Integer slot = slots.remove(id);
+            if (slot == null) {
+                return false;
+            }
+            if (table.getInt(slotOffset(slot) + EPOCH) <= frozenEpoch) {
+                retiring.add(slot);
+            } else {
+                table.putInt(slotOffset(slot) + FLAGS, 0);
+                freeSlots.add(slot);
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets every product, in slot order, which is the order they were added
+     * except for records moved since the last checkpoint.
+     *
+     * @return fresh copies of the stored products
+     */
+    @Override
+    public List<Product> values() {
+        // Walks the map rather than the slots, so a record moving to a new
+        // slot meanwhile is neither missed nor listed twice
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(slots.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+
+        List<Product> products = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Integer> entry : entries) {
+            Product product = read(entry.getValue());
+            if (product == null || !entry.getKey().equals(product.getProductId())) {
+                product = get(entry.getKey());
+            }
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    @Override
+    public int size() {
+        return slots.size();
+    }
+
+    @Override
+    public Checkpoint capture() {
+        long stamp = lock.writeLock();
+        int capturedCount;
+        int capturedHeapEnd;
+        int capturedEpoch;
+        List<Integer> retired;
+        try {
+            capturedCount = count;
+            capturedHeapEnd = heapEnd;
+            // Records written so far belong to this checkpoint from now on
+            capturedEpoch = ++frozenEpoch;
+            retired = retiring;
+            retiring = new ArrayList<>();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        return () -> {
+            // Data first, then the header that vouches for it
+            heap.force();
+            table.force();
+            long headerStamp = lock.writeLock();
+            try {
+                writeHeader(capturedCount, capturedHeapEnd, capturedEpoch);
+            } finally {
+                lock.unlockWrite(headerStamp);
+            }
+            table.force();
+
+            // The header now vouches for the records that replaced these
+            long retireStamp = lock.writeLock();
+            try {
+                for (int slot : retired) {
+                    table.putInt(slotOffset(slot) + FLAGS, 0);
+                }
+            } finally {
+                lock.unlockWrite(retireStamp);
+            }
+            table.force();
+            retireStamp = lock.writeLock();
+            try {
+                freeSlots.addAll(retired);
+            } finally {
+                lock.unlockWrite(retireStamp);
+            }
+
+            if (importPending) {
+                importPending = false;
+                Path migrated = Paths.get(importFile + ".migrated");
+                Files.move(importFile, migrated, StandardCopyOption.REPLACE_EXISTING);
+                System.out.printf("📦 Imported %s into %s (snapshot kept as %s)%n",
+                                  name, tableFile.getFileName(), migrated.getFileName());
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (tableChannel != null) {
+            tableChannel.close();
+        }
+        if (heapChannel != null) {
+            heapChannel.close();
+        }
+    }
+
+    /**
+     * Reads one record, or returns null if the slot is not live.
+     */
+    private Product read(int slot) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Product product = decode(slot);
+                if (lock.validate(stamp)) {
+                    return product;
+                }
+            } catch (RuntimeException e) {
+                // Read a half-written record; retry under the read lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return decode(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Product decode(int slot) {
+        ByteBuffer records = table;
+        ByteBuffer strings = heap;
+        int base = slotOffset(slot);
+        if (records.getInt(base + FLAGS) != LIVE) {
+            return null;
+        }
+        return new Product(readString(records, strings, base + ID),
+                           readString(records, strings, base + NAME),
+                           readString(records, strings, base + DESCRIPTION),
+                           readString(records, strings, base + CATEGORY),
+                           records.getDouble(base + PRICE),
+                           records.getInt(base + STOCK));
+    }
+
+    private static String readString(ByteBuffer records, ByteBuffer strings, int field) {
+        byte[] bytes = readBytes(records, strings, field);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer records, ByteBuffer strings, int field) {
+        int offset = records.getInt(field);
+        int length = records.getInt(field + 4);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = strings.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    private void writeStringIfChanged(int field, String value) throws IOException {
+        byte[] current = readBytes(table, heap, field);
+        byte[] updated = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        if (!Arrays.equals(current, updated)) {
+            writeBytes(field, updated);
+        }
+    }
+
+    private void writeString(int field, String value) throws IOException {
+        writeBytes(field, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(int field, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            table.putInt(field, 0);
+            table.putInt(field + 4, -1);
+            return;
+        }
+        ensureHeapCapacity((long) heapEnd + bytes.length);
+        ByteBuffer view = heap.duplicate();
+        view.position(heapEnd);
+        view.put(bytes);
+        table.putInt(field, heapEnd);
+        table.putInt(field + 4, bytes.length);
+        heapEnd += bytes.length;
+    }
+
+    private void writeHeader(int slotCount, int heapBytes, int epoch) {
+        table.putInt(HEADER_COUNT, slotCount);
+        table.putInt(HEADER_HEAP_END, heapBytes);
+        table.putInt(HEADER_EPOCH, epoch);
+    }
+
+    /**
+     * Takes a free slot, or a new one past the end of the table.
+     */
+    private int allocateSlot() throws IOException {
+        Integer free = freeSlots.poll();
+        if (free != null) {
+            return free;
+        }
+        // As a long, so a full table is reported instead of overflowing
+        ensureTableCapacity(HEADER_SIZE + ((long) count + 1) * RECORD_SIZE);
+        return count++;
+    }
+
+    private void ensureTableCapacity(long required) throws IOException {
+        if (required > table.capacity()) {
+            table = map(tableChannel, grow(table.capacity(), required));
+        }
+    }
+
+    private void ensureHeapCapacity(long required) throws IOException {
+        if (required > heap.capacity()) {
+            heap = map(heapChannel, grow(heap.capacity(), required));
+        }
+    }
+
+    private long grow(long capacity, long required) throws IOException {
+        if (required > Integer.MAX_VALUE) {
+            throw new IOException(name + " table is full");
+        }
+        return Math.max(required, Math.min(capacity * 2, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Copies the products of an existing snapshot into an empty table. The
+     * snapshot is renamed to {@code *.dat.migrated} once the first checkpoint
+     * of the table is on disk, so a crash part-way simply imports it again.
+     *
+     * @return true if anything was imported
+     */
+    private boolean importSnapshot() {
+        try {
+            SnapshotTable.readSnapshot(importFile, codec, product -> put(product.getProductId(), product));
+        } catch (Exception e) {
+            System.out.println("⚠️  Could not import " + name + " snapshot: " + e.getMessage());
+            // Continue with whatever the journal holds
+            return false;
+        }
+        importPending = true;
+        return true;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
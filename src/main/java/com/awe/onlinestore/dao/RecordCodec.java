@@ -0,0 +1,29 @@
+package com.awe.onlinestore.dao;
+
+import java.io.IOException;
+
+/**
+ * Converts a single persisted record to and from its on-disk byte form.
+ *
+ * @param <T> the record type
+ */
+interface RecordCodec<T> {
+
+    /**
+     * Encodes a record into a self-contained byte array.
+     *
+     * @param record the record to encode
+     * @return the encoded bytes
+     * @throws IOException if the record cannot be encoded
+     */
+    byte[] encode(T record) throws IOException;
+
+    /**
+     * Decodes a record previously produced by {@link #encode(Object)}.
+     *
+     * @param bytes the encoded bytes
+     * @return the decoded record
+     * @throws IOException if the bytes are not a valid record
+     */
+    T decode(byte[] bytes) throws IOException;
+}
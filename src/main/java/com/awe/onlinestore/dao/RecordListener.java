@@ -0,0 +1,29 @@
+package com.awe.onlinestore.dao;
+
+/**
+ * Receives every record saved to or deleted from an {@link EntityStore}, in
+ * the order the changes were made.
+ * Used to keep in-memory indexes in step with the store.
+ *
+ * @param <T> the record type
+ */
+interface RecordListener<T> {
+
+    /**
+     * Called after a record has been stored, while the store still holds its
+     * write lock, so calls are never concurrent and arrive in the same order
+     * as the saves. Implementations must be quick and must not call back into
+     * the store.
+     *
+     * @param record the record just saved
+     */
+    void saved(T record);
+
+    /**
+     * Called after a record has been deleted, under the same guarantees as
+     * {@link #saved(Object)}.
+     *
+     * @param id the id of the deleted record
+     */
+    void removed(String id);
+}
@@ -0,0 +1,61 @@
+package com.awe.onlinestore.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Storage behind an {@link EntityStore}: holds the current records and knows
+ * how to persist a point-in-time checkpoint of them. The store's journal
+ * covers everything written after the last checkpoint.
+ *
+ * @param <T> the record type
+ */
+interface RecordTable<T> extends Closeable {
+
+    /**
+     * Loads the last checkpoint.
+     *
+     * @return true if the data was read from an older format and should be
+     *         checkpointed again straight away
+     * @throws IOException if the checkpoint files cannot be opened
+     */
+    boolean load() throws IOException;
+
+    T get(String id);
+
+    void put(String id, T record);
+
+    /**
+     * Deletes a record.
+     *
+     * @param id the id of the record
+     * @return true if the record existed
+     */
+    boolean remove(String id);
+
+    /**
+     * Gets every record currently stored.
+     *
+     * @return the records, in no particular order
+     */
+    Collection<T> values();
+
+    int size();
+
+    /**
+     * Captures the state to persist. Called while the owning store holds back
+     * writes, so it should be quick; the returned checkpoint does the slow
+     * part without blocking writers.
+     *
+     * @return the captured checkpoint
+     */
+    Checkpoint capture();
+
+    /**
+     * A captured checkpoint waiting to be written.
+     */
+    interface Checkpoint {
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,35 @@
+package com.awe.onlinestore.dao;
+
+import java.io.*;
+
+/**
+ * {@link RecordCodec} backed by standard Java serialization, matching the
+ * format the model classes already support through {@link Serializable}.
+ *
+ * @param <T> the record type
+ */
+class SerializingCodec<T extends Serializable> implements RecordCodec<T> {
+    private final Class<T> type;
+
+    SerializingCodec(Class<T> type) {
+        this.type = type;
+    }
+
+    @Override
+    public byte[] encode(T record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(record);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public T decode(byte[] bytes) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return type.cast(ois.readObject());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unexpected record type: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.awe.onlinestore.dao;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes entity snapshots in the binary record format.
+ *
+ * <p>Layout: a header of {@code [magic "AWES"][format version][record count]}
+ * followed by {@code [varint length][record]} for every record. Writing streams
+ * already-encoded records through a fixed direct buffer; reading maps the file
+ * and decodes records in place, so neither side materializes the whole file on
+ * the heap.</p>
+ */
+final class SnapshotFile {
+    static final int MAGIC = 0x41574553; // "AWES"
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes a snapshot and forces it to stable storage.
+     *
+     * @param file the file to create or overwrite
+     * @param records the records to write, each already encoded with
+     *                {@link BinaryCodec#encode(Serializable)}
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path file, Collection<byte[]> records) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            out.putInt(MAGIC);
+            out.putInt(FORMAT_VERSION);
+            out.putInt(0); // record count, patched below
+
+            int count = 0;
+            for (byte[] record : records) {
+                int length = record.length;
+
+                if (out.remaining() < 5 + length) {
+                    drain(channel, out);
+                }
+                if (out.remaining() < 5 + length) {
+                    // Larger than the whole buffer: write it straight through
+                    putVarInt(out, length);
+                    drain(channel, out);
+                    writeFully(channel, ByteBuffer.wrap(record));
+                } else {
+                    putVarInt(out, length);
+                    out.put(record);
+                }
+                count++;
+            }
+            drain(channel, out);
+
+            ByteBuffer countField = ByteBuffer.allocate(4).putInt(0, count);
+            channel.write(countField, 8);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Reads every record of a snapshot.
+     *
+     * @param file the snapshot file
+     * @param codec the record codec
+     * @param consumer receives each record in file order
+     * @return the number of records read
+     * @throws IOException if the file is not a valid snapshot
+     */
+    static <T extends Serializable> int read(Path file, BinaryCodec<T> codec, Consumer<T> consumer)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int count = buffer.getInt();
+
+            BinaryReader in = new BinaryReader(buffer);
+            for (int i = 0; i < count; i++) {
+                int length = in.readVarInt();
+                int end = in.position() + length;
+                consumer.accept(codec.read(in));
+                in.position(end);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Checks whether a file is a legacy snapshot written with Java serialization.
+     *
+     * @param file the file to check
+     * @return true if the file starts with the Java serialization stream header
+     * @throws IOException if the file cannot be read
+     */
+    static boolean isLegacy(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(2);
+            channel.read(header, 0);
+            return BinaryCodec.isJavaSerialized(header.array());
+        }
+    }
+
+    private static void putVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        writeFully(channel, out);
+        out.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.awe.onlinestore.dao;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link RecordTable} that keeps every record on the heap and checkpoints by
+ * writing the whole map to a {@link SnapshotFile}.
+ *
+ * <p>Records are held encoded, as immutable byte arrays in a
+ * {@link ConcurrentHashMap}, and decoded on every read. Each reader therefore
+ * gets a private copy of one saved version, callers can change what they
+ * read without affecting anyone else, and a checkpoint written in the
+ * background cannot observe a record half-way through an in-place change.
+ * Iteration is weakly consistent: it never throws
+ * {@link java.util.ConcurrentModificationException} and sees each record at
+ * most once.</p>
+ *
+ * @param <T> the record type
+ */
+class SnapshotTable<T extends Serializable> implements RecordTable<T> {
+    private final String name;
+    private final Path snapshotFile;
+    private final BinaryCodec<T> codec;
+    private final Function<T, String> idOf;
+
+    private final Map<String, byte[]> records = new ConcurrentHashMap<>();
+
+    SnapshotTable(String dataDir, String name, BinaryCodec<T> codec, Function<T, String> idOf) {
+        this.name = name;
+        this.snapshotFile = Paths.get(dataDir, name + ".dat");
+        this.codec = codec;
+        this.idOf = idOf;
+    }
+
+    @Override
+    public boolean load() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return false;
+        }
+        try {
+            boolean legacy = readSnapshot(snapshotFile, codec, record -> put(idOf.apply(record), record));
+            if (legacy) {
+                // One-time conversion to the binary format; keep the original around
+                Path backup = Paths.get(snapshotFile + ".legacy");
+                Files.copy(snapshotFile, backup, StandardCopyOption.REPLACE_EXISTING);
+                System.out.printf("📦 Migrating %s snapshot to binary format (%d records, original kept as %s)%n",
+                                  name, records.size(), backup.getFileName());
+            }
+            return legacy;
+        } catch (Exception e) {
+            System.out.println("⚠️  Could not load " + name + " snapshot: " + e.getMessage());
+            // Continue with whatever the journal holds
+            return false;
+        }
+    }
+
+    @Override
+    public T get(String id) {
+        byte[] encoded = records.get(id);
+        return encoded == null ? null : decode(encoded);
+    }
+
+    @Override
+    public void put(String id, T record) {
+        records.put(id, codec.encode(record));
+    }
+
+    @Override
+    public boolean remove(String id) {
+        return records.remove(id) != null;
+    }
+
+    @Override
+    public Collection<T> values() {
+        List<T> values = new ArrayList<>(records.size());
+        for (byte[] encoded : records.values()) {
+            values.add(decode(encoded));
+        }
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return records.size();
+    }
+
+    @Override
+    public Checkpoint capture() {
+        // The owning store holds back writes, so this copy is a consistent cut
+        List<byte[]> snapshot = new ArrayList<>(records.values());
+        return () -> {
+            Path tempFile = Paths.get(snapshotFile + ".tmp");
+            SnapshotFile.write(tempFile, snapshot);
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        };
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private T decode(byte[] encoded) {
+        try {
+            return codec.decode(encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt " + name + " record", e);
+        }
+    }
+
+    /**
+     * Reads a snapshot in either the binary format or the legacy Java
+     * serialization format.
+     *
+     * @param file the snapshot file
+     * @param codec the binary record codec
+     * @param consumer receives each record
+     * @return true if the file was in the legacy format
+     * @throws Exception if the file cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Serializable> boolean readSnapshot(Path file, BinaryCodec<T> codec, Consumer<T> consumer)
+            throws Exception {
+        if (!SnapshotFile.isLegacy(file)) {
+            SnapshotFile.read(file, codec, consumer);
+            return false;
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            ((Map<String, T>) ois.readObject()).values().forEach(consumer);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package com.awe.onlinestore.dao;
+
+/**
+ * Owns the live stock count of every product, so that a product saved with a
+ * new stock quantity changes the stock through it rather than behind its
+ * back. Registered with {@link Database#setStockKeeper(StockKeeper)}.
+ */
+public interface StockKeeper {
+
+    /**
+     * Called before a product already in the catalogue is saved, while no
+     * other product or stock level save can run. The keeper moves its count
+     * as close to the new level as it can and records the difference in the
+     * inventory ledger.
+     *
+     * @param productId the product
+     * @param level the stock quantity the product is being saved with
+     * @return the stock quantity to save the product with
+     */
+    int stockSaved(String productId, int level);
+}
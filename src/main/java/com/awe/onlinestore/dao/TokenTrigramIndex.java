@@ -0,0 +1,175 @@
+package com.awe.onlinestore.dao;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trigram index over a token dictionary, for finding the tokens within a few
+ * typing mistakes of a misspelt word.
+ *
+ * <p>Each token is padded with a marker at both ends and filed under every
+ * three-character run of the result, so "galaxy" is filed under
+ * {@code $ga}, {@code gal}, ... {@code xy$}. A single edit can spoil at most
+ * three trigrams, so a token within {@code k} edits of an {@code n}-letter
+ * word shares all but {@code 3k} of its trigrams, and so must be filed
+ * under one of its {@code 3k + 1} rarest. Candidates are gathered from those
+ * alone, pruned by the number of trigrams shared and by length, and only the
+ * few left are checked with a bounded edit distance.</p>
+ *
+ * <p>That only holds for words with more than {@code 3k} trigrams; a shorter
+ * word can be within reach of a token sharing none of them, as "fon" is of
+ * "fan". Such words are short, so every token of a length within {@code k}
+ * of theirs is checked instead, from a second index of tokens by length.</p>
+ *
+ * <p>Used by {@link ProductSearchIndex}, which adds and removes tokens as
+ * they enter and leave its dictionary.</p>
+ */
+class TokenTrigramIndex {
+    private static final char PAD = '$';
+
+    private final Map<String, Set<String>> tokensByTrigram = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<String>> tokensByLength = new ConcurrentHashMap<>();
+
+    void add(String token) {
+        for (String trigram : trigrams(token)) {
+            tokensByTrigram.computeIfAbsent(trigram, key -> ConcurrentHashMap.newKeySet()).add(token);
+        }
+        tokensByLength.computeIfAbsent(token.length(), key -> ConcurrentHashMap.newKeySet()).add(token);
+    }
+
+    void remove(String token) {
+        for (String trigram : trigrams(token)) {
+            removeFrom(tokensByTrigram, trigram, token);
+        }
+        removeFrom(tokensByLength, token.length(), token);
+    }
+
+    /**
+     * Finds the indexed tokens within a number of edits of a word.
+     *
+     * @param word the lower-case word
+     * @param maxEdits the most insertions, deletions and substitutions allowed
+     * @return the tokens and their edit distance from the word
+     */
+    Map<String, Integer> similar(String word, int maxEdits) {
+        List<Set<String>> postings = new ArrayList<>();
+        for (String trigram : trigrams(word)) {
+            postings.add(tokensByTrigram.getOrDefault(trigram, Collections.emptySet()));
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        // A match shares all but at most 3 * maxEdits of the word's trigrams, so
+        // it must be filed under at least one of the rarest ones
+        int minShared = postings.size() - 3 * maxEdits;
+        if (minShared < 1) {
+            return similarByLength(word, maxEdits);
+        }
+        Set<String> candidates = new HashSet<>();
+        for (Set<String> tokens : postings.subList(0, postings.size() - minShared + 1)) {
+            for (String token : tokens) {
+                if (Math.abs(token.length() - word.length()) <= maxEdits) {
+                    candidates.add(token);
+                }
+            }
+        }
+
+        Map<String, Integer> similar = new HashMap<>();
+        for (String candidate : candidates) {
+            int shared = 0;
+            for (Set<String> tokens : postings) {
+                if (tokens.contains(candidate)) {
+                    shared++;
+                }
+            }
+            if (shared >= minShared) {
+                int distance = editDistance(word, candidate, maxEdits);
+                if (distance <= maxEdits) {
+                    similar.put(candidate, distance);
+                }
+            }
+        }
+        return similar;
+    }
+
+    /**
+     * Checks every token whose length is within reach of a word, for words
+     * too short for their trigrams to narrow the search.
+     */
+    private Map<String, Integer> similarByLength(String word, int maxEdits) {
+        Map<String, Integer> similar = new HashMap<>();
+        for (int length = Math.max(1, word.length() - maxEdits); length <= word.length() + maxEdits; length++) {
+            for (String token : tokensByLength.getOrDefault(length, Collections.emptySet())) {
+                int distance = editDistance(word, token, maxEdits);
+                if (distance <= maxEdits) {
+                    similar.put(token, distance);
+                }
+            }
+        }
+        return similar;
+    }
+
+    private static <K> void removeFrom(Map<K, Set<String>> index, K key, String token) {
+        Set<String> tokens = index.get(key);
+        if (tokens != null) {
+            tokens.remove(token);
+            if (tokens.isEmpty()) {
+                index.remove(key, tokens);
+            }
+        }
+    }
+
+    /**
+     * Gets the distinct trigrams of a token padded at both ends; an
+     * {@code n}-letter token has at most {@code n}.
+     */
+    private static Set<String> trigrams(String token) {
+        String padded = PAD + token + PAD;
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Computes the Levenshtein distance between two strings, giving up once
+     * it must exceed a bound. Only the diagonal band of width
+     * {@code 2 * max + 1} is filled in.
+     *
+     * @param a the first string
+     * @param b the second string
+     * @param max the largest distance of interest
+     * @return the distance, or {@code max + 1} if it is larger than {@code max}
+     */
+    static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int beyond = max + 1;
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j <= max ? j : beyond;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(b.length(), i + max);
+            Arrays.fill(current, beyond);
+            current[0] = i <= max ? i : beyond;
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                int distance = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                current[j] = Math.min(distance, beyond);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return beyond;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,40 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Order;
+import com.awe.onlinestore.model.Payment;
+import com.awe.onlinestore.model.StockEvent;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * The writes of one {@link UnitOfWork}, stored as a single frame of the
+ * {@link TransactionLog} so they become durable together or not at all.
+ */
+final class Transaction implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Order> orders;
+    private final List<Payment> payments;
+    private final List<StockEvent> stockEvents;
+
+    Transaction(List<Order> orders, List<Payment> payments, List<StockEvent> stockEvents) {
+        this.orders = orders;
+        this.payments = payments;
+        this.stockEvents = stockEvents;
+    }
+
+    List<Order> getOrders() {
+        return orders;
+    }
+
+    List<Payment> getPayments() {
+        return payments;
+    }
+
+    /**
+     * Gets the inventory ledger events, already numbered in ledger sequence.
+     */
+    List<StockEvent> getStockEvents() {
+        return stockEvents;
+    }
+}
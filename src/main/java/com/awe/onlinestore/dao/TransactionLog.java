@@ -0,0 +1,244 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Order;
+import com.awe.onlinestore.model.Payment;
+import com.awe.onlinestore.model.StockEvent;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ToIntFunction;
+
+/**
+ * Journal shared by the orders and payments stores and the inventory ledger,
+ * in which every {@link UnitOfWork} is one frame, so its writes become
+ * durable together or not at all.
+ *
+ * <p>Files used:</p>
+ * <ul>
+ *   <li>{@code transactions.log} - one {@link Transaction} per frame</li>
+ *   <li>{@code transactions.log.compacting} - segment being folded away;
+ *       only present while a compaction is running or after a crash
+ *       interrupted one</li>
+ * </ul>
+ *
+ * <p>Every save of an order or payment goes through here, even on its own,
+ * so the log holds all of their changes in order and replays them on top of
+ * the stores' checkpoints. Committing queues the frame for the next group
+ * commit and applies the writes to the stores and the ledger's projection
+ * only once it is durable, so a transaction that fails to reach the disk
+ * is never seen, checkpointed or counted. The flusher completes a journal's
+ * frames in the order they were queued, so transactions are applied in log
+ * order.</p>
+ *
+ * <p>Every stock event goes through here too, so the log holds them all in
+ * sequence order and the ledger's checkpoint only needs to remember the
+ * last sequence number it includes.</p>
+ *
+ * <p>Compaction rotates the log, checkpoints both stores, which then hold
+ * everything in the rotated segment, appends the segment's stock events to
+ * the ledger's history and checkpoints the ledger before deleting it. If a
+ * crash interrupts that, the segment is replayed and folded again on
+ * startup; the ledger skips events its checkpoint already holds.</p>
+ */
+class TransactionLog implements Closeable {
+    private final Path journalFile;
+    private final Path compactingFile;
+    private final BinaryCodec<Transaction> codec;
+    private final GroupCommitter committer;
+    private final EntityStore<Order> orders;
+    private final EntityStore<Payment> payments;
+    private final InventoryLedger ledger;
+    private final ToIntFunction<String> openingStock;
+
+    private final Object writeLock = new Object();
+    private final Object compactionLock = new Object();
+
+    private Journal<Transaction> journal;
+    /** Applies the last transaction committed; completes after every earlier one. */
+    private CompletableFuture<Void> lastCommit = CompletableFuture.completedFuture(null);
+
+    TransactionLog(String dataDir, BinaryCodec<Transaction> codec, GroupCommitter committer,
+                   EntityStore<Order> orders, EntityStore<Payment> payments, InventoryLedger ledger,
+                   ToIntFunction<String> openingStock) {
+        this.journalFile = Paths.get(dataDir, "transactions.log");
+        this.compactingFile = Paths.get(dataDir, "transactions.log.compacting");
+        this.codec = codec;
+        this.committer = committer;
+        this.orders = orders;
+        this.payments = payments;
+        this.ledger = ledger;
+        this.openingStock = openingStock;
+    }
+
+    /**
+     * Loads the inventory ledger's checkpoint and replays the log on top of
+     * it and of the stores, which must be opened first, then settles the
+     * reservations a crash left open. An interrupted compaction is finished,
+     * and a ledger rebuilt without a checkpoint is checkpointed, before the
+     * log accepts commits.
+     *
+     * @throws IOException if the ledger or the log cannot be read
+     */
+    void open() throws IOException {
+        boolean rebuilt = ledger.open();
+
+        boolean interruptedCompaction = Files.exists(compactingFile);
+        if (interruptedCompaction) {
+            try (Journal<Transaction> segment = new Journal<>(compactingFile, codec)) {
+                segment.replay(this::apply, id -> { });
+            }
+        }
+        journal = new Journal<>(journalFile, codec);
+        int replayed = journal.replay(this::apply, id -> { });
+        if (replayed > 0) {
+            System.out.printf("🔁 Replayed %d transactions%n", replayed);
+        }
+
+        // Settle them on disk before anything else is committed
+        List<StockEvent> settling = ledger.openReservations();
+        if (!settling.isEmpty()) {
+            commit(Collections.emptyList(), Collections.emptyList(), settling).join();
+        }
+
+        if (rebuilt || interruptedCompaction) {
+            compact();
+        }
+    }
+
+    /**
+     * Queues the writes of a unit of work for the next group commit as one
+     * frame, and applies them once that frame is durable.
+     *
+     * @param orderList the orders to save
+     * @param paymentList the payments to save
+     * @param stockChanges the stock changes to record, as events whose
+     *                     sequence and time are assigned here
+     * @return a future completed when the whole transaction is on stable
+     *         storage and visible to readers; completed exceptionally, with
+     *         nothing applied, if it could not be written
+     * @throws IOException if the transaction cannot be encoded
+     */
+    CompletableFuture<Void> commit(List<Order> orderList, List<Payment> paymentList,
+                                   List<StockEvent> stockChanges) throws IOException {
+        synchronized (writeLock) {
+            List<StockEvent> events = ledger.stage(stockChanges, openingStock);
+            // Apply the records as encoded now, not as the caller's objects
+            // may look by the time the frame is durable
+            byte[] payload = codec.encode(new Transaction(orderList, paymentList, events));
+            Transaction written = codec.decode(payload);
+            // Submitted under the lock, so log order is sequence order
+            lastCommit = committer.submit(journal, journal.frame(payload))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        ledger.discard(events);
+                    }
+                })
+                .thenRun(() -> apply(written));
+            return lastCommit;
+        }
+    }
+
+    /**
+     * Reads back a product's stock events, both those already folded into the
+     * ledger and those still in the log. Events still waiting for their group
+     * commit are not included.
+     *
+     * @param productId the product
+     * @return the events, oldest first
+     * @throws IOException if the ledger or the log cannot be read
+     */
+    List<StockEvent> history(String productId) throws IOException {
+        TreeMap<Long, StockEvent> events = new TreeMap<>();
+        // Holds off compaction, so an event moving from the log to the ledger
+        // is seen in at least one of them
+        synchronized (compactionLock) {
+            collectStockEvents(compactingFile, productId, events);
+            collectStockEvents(journalFile, productId, events);
+            for (StockEvent event : ledger.history(productId)) {
+                events.put(event.getSequence(), event);
+            }
+        }
+        return new ArrayList<>(events.values());
+    }
+
+    /**
+     * Gets the number of bytes written to the log since the last compaction.
+     *
+     * @return log size in bytes
+     * @throws IOException if the size cannot be read
+     */
+    long size() throws IOException {
+        return journal.size();
+    }
+
+    /**
+     * Checkpoints the orders and payments stores, folds the logged stock
+     * events into the ledger's history, checkpoints the ledger and discards
+     * the folded segment.
+     *
+     * @throws IOException if a checkpoint or the ledger cannot be written
+     */
+    void compact() throws IOException {
+        synchronized (compactionLock) {
+            // A leftover segment from an interrupted run is already reflected
+            // in the stores; folding its events again does no harm
+            CompletableFuture<Void> committed = CompletableFuture.completedFuture(null);
+            if (!Files.exists(compactingFile)) {
+                synchronized (writeLock) {
+                    journal.rotate(compactingFile);
+                    committed = lastCommit;
+                }
+            }
+            // Transactions in the segment are applied as their group commit
+            // completes; wait for them, failed or not, before checkpointing
+            committed.handle((ignored, error) -> null).join();
+            // Both stores now hold every transaction in the segment
+            orders.compact();
+            payments.compact();
+
+            List<StockEvent> events = new ArrayList<>();
+            try (Journal<Transaction> segment = new Journal<>(compactingFile, codec)) {
+                segment.replay(transaction -> events.addAll(transaction.getStockEvents()), id -> { });
+            }
+            ledger.fold(events);
+            ledger.capture().write();
+            Files.deleteIfExists(compactingFile);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void apply(Transaction transaction) {
+        for (Order order : transaction.getOrders()) {
+            orders.apply(order);
+        }
+        for (Payment payment : transaction.getPayments()) {
+            payments.apply(payment);
+        }
+        ledger.apply(transaction.getStockEvents());
+    }
+
+    private void collectStockEvents(Path source, String productId, Map<Long, StockEvent> events)
+            throws IOException {
+        Journal.scan(source, codec, transaction -> {
+            for (StockEvent event : transaction.getStockEvents()) {
+                if (event.getProductId().equals(productId)) {
+                    events.put(event.getSequence(), event);
+                }
+            }
+        }, id -> { });
+    }
+}
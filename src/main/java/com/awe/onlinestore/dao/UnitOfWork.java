@@ -0,0 +1,78 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Order;
+import com.awe.onlinestore.model.Payment;
+import com.awe.onlinestore.model.StockEvent;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A set of order, payment and stock writes that become durable together, as
+ * one record of the {@link TransactionLog}, or not at all.
+ *
+ * <p>Obtained from {@link Database#beginUnitOfWork()}. Writes are only staged
+ * until {@link #commit()}, which queues them for the next group commit and
+ * applies them all at once when it is durable; the records are written as
+ * they are at the point of the commit. A unit of work can be committed
+ * once.</p>
+ */
+public class UnitOfWork {
+    private final TransactionLog transactionLog;
+    private final List<Order> orders = new ArrayList<>();
+    private final List<Payment> payments = new ArrayList<>();
+    private final List<StockEvent> stockChanges = new ArrayList<>();
+    private boolean committed;
+
+    UnitOfWork(TransactionLog transactionLog) {
+        this.transactionLog = transactionLog;
+    }
+
+    public void saveOrder(Order order) {
+        orders.add(order);
+    }
+
+    public void savePayment(Payment payment) {
+        payments.add(payment);
+    }
+
+    /**
+     * Stages a change to a product's stock for the inventory ledger.
+     *
+     * @param productId the product
+     * @param type the kind of change; not {@link StockEvent.Type#OPENING},
+     *             which the ledger records by itself
+     * @param quantity the number of units, positive
+     */
+    public void recordStockEvent(String productId, StockEvent.Type type, int quantity) {
+        if (quantity <= 0 || type == StockEvent.Type.OPENING) {
+            throw new IllegalArgumentException("Invalid stock event: " + type + " x" + quantity);
+        }
+        stockChanges.add(new StockEvent(0, 0, productId, type, quantity));
+    }
+
+    /**
+     * Queues every staged write as one record for the next group commit. The
+     * writes become visible to readers when the record is durable, just
+     * before the returned future completes, and never if it fails.
+     *
+     * @return a future completed when all of the writes are on stable storage
+     * @throws IllegalStateException if the unit of work was already committed
+     */
+    public CompletableFuture<Void> commit() {
+        if (committed) {
+            throw new IllegalStateException("Unit of work already committed");
+        }
+        committed = true;
+        if (orders.isEmpty() && payments.isEmpty() && stockChanges.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return transactionLog.commit(orders, payments, stockChanges);
+        } catch (IOException e) {
+            System.err.println("❌ Error committing unit of work: " + e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.awe.onlinestore.model;
+
+/**
+ * Snapshot of the checkout admission lane for one product: how many
+ * checkouts are in it now and how many have been let in or turned away.
+ */
+public class AdmissionMetrics {
+    private final String productId;
+    private final int inFlight;
+    private final int peakInFlight;
+    private final int capacity;
+    private final long admitted;
+    private final long shed;
+    private final long soldOut;
+    private final int availableStock;
+
+    public AdmissionMetrics(String productId, int inFlight, int peakInFlight, int capacity,
+                            long admitted, long shed, long soldOut, int availableStock) {
+        this.productId = productId;
+        this.inFlight = inFlight;
+        this.peakInFlight = peakInFlight;
+        this.capacity = capacity;
+        this.admitted = admitted;
+        this.shed = shed;
+        this.soldOut = soldOut;
+        this.availableStock = availableStock;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    /**
+     * Gets the number of checkouts for the product currently under way.
+     * Checkouts that do not fit are turned away rather than queued, so this
+     * is an in-flight count, not a queue depth.
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getPeakInFlight() {
+        return peakInFlight;
+    }
+
+    /**
+     * Gets the most checkouts the lane lets in at once.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * Gets the number of checkouts turned away because the lane was full.
+     */
+    public long getShed() {
+        return shed;
+    }
+
+    /**
+     * Gets the number of checkouts turned away because the product had sold out.
+     */
+    public long getSoldOut() {
+        return soldOut;
+    }
+
+    public int getAvailableStock() {
+        return availableStock;
+    }
+}
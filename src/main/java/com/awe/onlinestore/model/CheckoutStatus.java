@@ -0,0 +1,50 @@
+package com.awe.onlinestore.model;
+
+/**
+ * Where a checkout handed to the checkout pipeline has got to, as polled by
+ * the shopper's browser while the order is being placed.
+ */
+public class CheckoutStatus {
+    public enum State {
+        PENDING, CONFIRMED, FAILED
+    }
+
+    private final String orderId;
+    private final State state;
+    private final String stage;
+    private final String message;
+
+    public CheckoutStatus(String orderId, State state, String stage, String message) {
+        this.orderId = orderId;
+        this.state = state;
+        this.stage = stage;
+        this.message = message;
+    }
+
+    /**
+     * Gets the ID the order has, or will have once it is placed.
+     */
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Gets the pipeline stage the checkout is waiting for or running in, or
+     * finished in, such as {@code "reserve"}.
+     */
+    public String getStage() {
+        return stage;
+    }
+
+    /**
+     * Gets the reason a failed checkout failed, fit to show to the shopper;
+     * null unless the state is {@link State#FAILED}.
+     */
+    public String getMessage() {
+        return message;
+    }
+}
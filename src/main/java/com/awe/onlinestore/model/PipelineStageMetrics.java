@@ -0,0 +1,57 @@
+package com.awe.onlinestore.model;
+
+/**
+ * Snapshot of one stage of the checkout pipeline: its workers, how many of
+ * them are busy and how many checkouts are queued in front of it.
+ */
+public class PipelineStageMetrics {
+    private final String stage;
+    private final int threads;
+    private final int active;
+    private final int queued;
+    private final int queueCapacity;
+    private final long completed;
+
+    public PipelineStageMetrics(String stage, int threads, int active, int queued,
+                                int queueCapacity, long completed) {
+        this.stage = stage;
+        this.threads = threads;
+        this.active = active;
+        this.queued = queued;
+        this.queueCapacity = queueCapacity;
+        this.completed = completed;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Gets the number of workers running a checkout right now.
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * Gets the number of checkouts waiting for a worker.
+     */
+    public int getQueued() {
+        return queued;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Gets the number of checkouts the stage has finished with, roughly.
+     */
+    public long getCompleted() {
+        return completed;
+    }
+}
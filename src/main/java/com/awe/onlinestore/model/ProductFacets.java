@@ -0,0 +1,120 @@
+package com.awe.onlinestore.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts for faceted navigation of a product listing.
+ *
+ * <p>Each facet counts the products that pass every active filter except its
+ * own, so the counts show what choosing another value would list: the
+ * category counts ignore the selected category, the price buckets ignore the
+ * price range and the stock counts ignore the in-stock filter.</p>
+ */
+public class ProductFacets {
+    private final Map<String, Integer> categoryCounts;
+    private final List<PriceBucket> priceBuckets;
+    private final int inStockCount;
+    private final int outOfStockCount;
+    private final int matchCount;
+
+    public ProductFacets(Map<String, Integer> categoryCounts, List<PriceBucket> priceBuckets,
+                         int inStockCount, int outOfStockCount, int matchCount) {
+        this.categoryCounts = Collections.unmodifiableMap(categoryCounts);
+        this.priceBuckets = Collections.unmodifiableList(priceBuckets);
+        this.inStockCount = inStockCount;
+        this.outOfStockCount = outOfStockCount;
+        this.matchCount = matchCount;
+    }
+
+    /**
+     * Gets the number of products per category.
+     *
+     * @return counts keyed by category name, in category order
+     */
+    public Map<String, Integer> getCategoryCounts() {
+        return categoryCounts;
+    }
+
+    public List<PriceBucket> getPriceBuckets() {
+        return priceBuckets;
+    }
+
+    public int getInStockCount() {
+        return inStockCount;
+    }
+
+    public int getOutOfStockCount() {
+        return outOfStockCount;
+    }
+
+    /**
+     * Gets the number of products passing all the active filters.
+     *
+     * @return the size of the listing
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * A price band and the number of products in it. A band runs from its
+     * lowest price up to, but not including, the lowest price of the next.
+     */
+    public static class PriceBucket {
+        private final Double minPrice;
+        private final Double priceBelow;
+        private final int count;
+
+        public PriceBucket(Double minPrice, Double priceBelow, int count) {
+            this.minPrice = minPrice;
+            this.priceBelow = priceBelow;
+            this.count = count;
+        }
+
+        /**
+         * Gets the lowest price in the band.
+         *
+         * @return the price, or null for the lowest band
+         */
+        public Double getMinPrice() {
+            return minPrice;
+        }
+
+        /**
+         * Gets the price the band stops short of: the lowest price of the
+         * next band.
+         *
+         * @return the price, or null for the highest band
+         */
+        public Double getPriceBelow() {
+            return priceBelow;
+        }
+
+        /**
+         * Gets the {@code maxPrice} filter value that lists the band: the
+         * highest price below {@link #getPriceBelow()}, since the filter
+         * includes its bound.
+         *
+         * @return the price, or null for the highest band
+         */
+        public Double getMaxPrice() {
+            return priceBelow == null ? null : Math.nextDown(priceBelow);
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public String getLabel() {
+            if (minPrice == null) {
+                return String.format("Under $%.0f", priceBelow);
+            }
+            if (priceBelow == null) {
+                return String.format("$%.0f and over", minPrice);
+            }
+            return String.format("$%.0f to under $%.0f", minPrice, priceBelow);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.awe.onlinestore.model;
+
+import java.util.List;
+
+/**
+ * One page of a product listing.
+ */
+public class ProductPage {
+    private final List<Product> products;
+    private final int page;
+    private final int size;
+    private final int totalCount;
+    private final String nextCursor;
+
+    public ProductPage(List<Product> products, int page, int size, int totalCount, String nextCursor) {
+        this.products = products;
+        this.page = page;
+        this.size = size;
+        this.totalCount = totalCount;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of products matching the listing across all pages.
+     *
+     * @return total matching products
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    public int getTotalPages() {
+        return (totalCount + size - 1) / size;
+    }
+
+    /**
+     * Gets the cursor to pass as {@code after} to fetch the next page: the
+     * sort value and id of the last product on this page.
+     *
+     * @return the cursor, or null on the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public boolean hasPrevious() {
+        return page > 1;
+    }
+}
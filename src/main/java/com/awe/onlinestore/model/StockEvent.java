@@ -0,0 +1,74 @@
+package com.awe.onlinestore.model;
+
+import java.io.Serializable;
+
+/**
+ * One entry in the inventory ledger: a change to a product's stock.
+ *
+ * <p>A product's stock on hand is its opening balance plus restocks minus
+ * committed sales; units reserved for a checkout stay on hand until the
+ * reservation is committed or released.</p>
+ */
+public class StockEvent implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        /** Sets the stock on hand, taken from the catalogue when the ledger first sees a product. */
+        OPENING,
+        /** Adds units to the stock on hand. */
+        RESTOCK,
+        /** Sets units aside for a checkout in progress. */
+        RESERVE,
+        /** Sells reserved units, taking them off the stock on hand. */
+        COMMIT,
+        /** Gives reserved units back without selling them. */
+        RELEASE,
+        /** Takes units off the stock on hand without selling them, as when a product is saved with less stock. */
+        WRITE_OFF
+    }
+
+    private final long sequence;
+    private final long timestamp;
+    private final String productId;
+    private final Type type;
+    private final int quantity;
+
+    public StockEvent(long sequence, long timestamp, String productId, Type type, int quantity) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.productId = productId;
+        this.type = type;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Gets the event's position in the ledger; later events have higher numbers.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets when the event was recorded, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StockEvent[#%d %s %s x%d]", sequence, type, productId, quantity);
+    }
+}
@@ -1,11 +1,21 @@
 package com.awe.onlinestore.service;
 
 import com.awe.onlinestore.dao.Database;
+import com.awe.onlinestore.model.OrderItem;
 import com.awe.onlinestore.model.Product;
+import com.awe.onlinestore.model.ProductFacets;
+import com.awe.onlinestore.model.ProductPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.stream.Collectors;
 
 /**
@@ -23,16 +33,39 @@ import java.util.stream.Collectors;
  *   <li>Stock management and validation</li>
  * </ul>
  * 
+ * <p>Search results and listings are cached until the next product save or
+ * deletion. Cached lists are unmodifiable and their products are shared
+ * between callers, so they must be treated as read-only.</p>
+ * 
  * @author AWE Development Team
  * @version 1.0
  * @since 2024
  */
 @Service
 public class CatalogueService {
+    private static final int MAX_SUGGESTIONS = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    // Stands for a null sort value in a cursor; not a Base64 character
+    private static final String NULL_CURSOR_VALUE = "~";
+    /** Most products kept across all cached results of one kind. */
+    private static final int MAX_CACHED_PRODUCTS = 50_000;
+    private static final int MAX_CACHED_FACETS = 1_000;
+    /** Where each price facet band ends and the next begins; the last band has no upper bound. */
+    private static final double[] PRICE_BUCKET_BOUNDS = {100, 250, 500, 1000, 2000};
     
     @Autowired
     private Database database;
 
+    @Autowired
+    private InventoryService inventoryService;
+
+    private final QueryCache<List<Product>> searchCache = new QueryCache<>(MAX_CACHED_PRODUCTS, List::size);
+    private final QueryCache<List<Product>> listingCache = new QueryCache<>(MAX_CACHED_PRODUCTS, List::size);
+    private final QueryCache<ProductPage> pageCache =
+        new QueryCache<>(MAX_CACHED_PRODUCTS, productPage -> productPage.getProducts().size());
+    private final QueryCache<ProductFacets> facetCache = new QueryCache<>(MAX_CACHED_FACETS, facets -> 1);
+
     /**
      * Retrieves all available products in the catalogue.
      *
@@ -45,17 +78,46 @@ public class CatalogueService {
 
     /**
      * Searches products by name, description, or category using the provided query.
-     * Performs case-insensitive partial matching.
+     * Performs case-insensitive partial matching and ranks the results by relevance,
+     * with matches in the product name counting most.
      *
      * @param query the search term to match against product names, descriptions, and categories
-     * @return a list of products matching the search criteria, or all products if query is empty
-     * @throws IllegalArgumentException if the query is null
+     * @return a read-only list of up to {@value #MAX_SEARCH_RESULTS} products matching the
+     *         search criteria, most relevant first, or all products if query is empty
      */
     public List<Product> searchProducts(String query) {
+        return searchProducts(query, false);
+    }
+
+    /**
+     * Searches products like {@link #searchProducts(String)}, optionally
+     * tolerating typing mistakes: in fuzzy mode "samsng galxy" still finds
+     * the Samsung Galaxy, ranked below exact matches.
+     *
+     * @param query the search term to match against product names, descriptions, and categories
+     * @param fuzzy true to also match words one or two edits away from the query's words
+     * @return a read-only list of up to {@value #MAX_SEARCH_RESULTS} products matching the
+     *         search criteria, most relevant first, or all products if query is empty
+     */
+    public List<Product> searchProducts(String query, boolean fuzzy) {
+        String normalized = normalizeQuery(query);
+        return searchCache.get(QueryCache.key(normalized, fuzzy), database.getCatalogueVersion(), () ->
+            Collections.unmodifiableList(normalized.isEmpty()
+                ? getAllProducts() : database.searchProducts(query.trim(), MAX_SEARCH_RESULTS, fuzzy)));
+    }
+
+    /**
+     * Suggests product names for the search box as the user types.
+     *
+     * @param query the text typed so far
+     * @param limit the maximum number of suggestions, capped at {@value #MAX_SUGGESTIONS}
+     * @return matching product names, or an empty list if the query is empty
+     */
+    public List<String> suggestProductNames(String query, int limit) {
         if (query == null || query.trim().isEmpty()) {
-            return getAllProducts();
+            return new ArrayList<>();
         }
-        return database.searchProducts(query.trim());
+        return database.suggestProductNames(query.trim(), Math.min(limit, MAX_SUGGESTIONS));
     }
 
     /**
@@ -87,13 +149,10 @@ public class CatalogueService {
     /**
      * Retrieves all distinct product categories available in the catalogue.
      *
-     * @return a list of unique category names
+     * @return a list of unique category names in alphabetical order
      */
     public List<String> getAllCategories() {
-        return database.getAllProducts().stream()
-            .map(Product::getCategory)
-            .distinct()
-            .collect(Collectors.toList());
+        return database.getCategories();
     }
 
     /**
@@ -110,7 +169,8 @@ public class CatalogueService {
 
     /**
      * Updates product stock quantity after a successful purchase.
-     * Decreases the stock by the specified quantity if sufficient stock is available.
+     * Decreases the stock by the specified quantity if sufficient stock is available,
+     * recording the sale in the inventory ledger.
      *
      * @param productId the product identifier
      * @param quantity the quantity to deduct from stock
@@ -118,11 +178,14 @@ public class CatalogueService {
      */
     public boolean updateProductStock(String productId, int quantity) {
         Product product = getProductById(productId);
-        if (product != null && product.decreaseStock(quantity)) {
-            database.saveProduct(product);
-            return true;
+        if (product == null || quantity <= 0) {
+            return false;
         }
-        return false;
+        List<OrderItem> sale = Collections.singletonList(new OrderItem(product, quantity));
+        if (!inventoryService.reserve(sale)) {
+            return false;
+        }
+        return inventoryService.commit(sale);
     }
 
     /**
@@ -135,19 +198,24 @@ public class CatalogueService {
      * @param inStockOnly if true, only returns products with available stock
      * @param sortBy field to sort by: "name", "price", "category", or "stock" (optional)
      * @param sortOrder sort direction: "asc" for ascending, "desc" for descending (optional)
-     * @return a filtered and sorted list of products
+     * @return a read-only, filtered and sorted list of products
      */
     public List<Product> getFilteredAndSortedProducts(String category, Double minPrice, Double maxPrice, 
                                                      boolean inStockOnly, String sortBy, String sortOrder) {
-        List<Product> products = getAllProducts();
-        
-        // Apply filters
-        products = products.stream()
-            .filter(product -> category == null || category.isEmpty() || product.getCategory().equalsIgnoreCase(category))
-            .filter(product -> minPrice == null || product.getPrice() >= minPrice)
-            .filter(product -> maxPrice == null || product.getPrice() <= maxPrice)
-            .filter(product -> !inStockOnly || product.isInStock())
-            .collect(Collectors.toList());
+        String key = QueryCache.key(normalizeCategory(category), minPrice, maxPrice, inStockOnly,
+            normalizeSortBy(sortBy), "desc".equalsIgnoreCase(sortOrder));
+        return listingCache.get(key, database.getCatalogueVersion(), () -> Collections.unmodifiableList(
+            filterAndSort(category, minPrice, maxPrice, inStockOnly, sortBy, sortOrder)));
+    }
+
+    private List<Product> filterAndSort(String category, Double minPrice, Double maxPrice,
+                                        boolean inStockOnly, String sortBy, String sortOrder) {
+        // Category, price range and stock filters are combined on the bitmap indexes
+        if (database.canSortByColumn(sortBy)) {
+            return database.getFilteredProducts(category, minPrice, maxPrice, inStockOnly,
+                sortBy, "desc".equalsIgnoreCase(sortOrder));
+        }
+        List<Product> products = database.getFilteredProducts(category, minPrice, maxPrice, inStockOnly);
         
         // Apply sorting
         if (sortBy != null && !sortBy.isEmpty()) {
@@ -163,51 +231,295 @@ public class CatalogueService {
         return products;
     }
 
+    /**
+     * Gets one page of the filtered and sorted product catalogue.
+     *
+     * <p>Candidates come from the bitmap indexes as product IDs, so no product
+     * is loaded just to be filtered out. When sorting by price, stock or
+     * category the IDs are sorted on the index's column arrays and only the
+     * products on the page are loaded. Sorting by name keeps a bounded heap of
+     * the best {@code offset + size} products instead of sorting everything.</p>
+     *
+     * <p>Pages can be addressed by number, or by passing the previous page's
+     * {@link ProductPage#getNextCursor()} as {@code after}. The cursor holds
+     * the sort value and ID of the last product shown, and the next page
+     * starts at the first product that sorts after them, so products added,
+     * removed or re-sorted in front of it do not shift the page. Finding that
+     * product takes a binary search over the sorted IDs when sorting by a
+     * column; when sorting by name, every candidate is still compared.</p>
+     *
+     * @param category filter by specific category (optional)
+     * @param minPrice minimum price filter (optional)
+     * @param maxPrice maximum price filter (optional)
+     * @param inStockOnly if true, only returns products with available stock
+     * @param sortBy field to sort by: "name", "price", "category", or "stock"; defaults to "name"
+     * @param sortOrder sort direction: "asc" for ascending, "desc" for descending (optional)
+     * @param page the page number, starting at 1; ignored when {@code after} is given
+     * @param size the page size, capped at {@value #MAX_PAGE_SIZE}
+     * @param after the cursor that ends the previous page (optional); a cursor
+     *              that cannot be read is ignored
+     * @return the requested page, with a read-only product list
+     */
+    public ProductPage getProductPage(String category, Double minPrice, Double maxPrice, boolean inStockOnly,
+                                      String sortBy, String sortOrder, int page, int size, String after) {
+        String sortKey = normalizeSortBy(sortBy);
+        String key = QueryCache.key(normalizeCategory(category), minPrice, maxPrice, inStockOnly,
+            sortKey == null ? "name" : sortKey, "desc".equalsIgnoreCase(sortOrder),
+            Math.max(page, 1), Math.min(Math.max(size, 1), MAX_PAGE_SIZE), after == null ? "" : after);
+        return pageCache.get(key, database.getCatalogueVersion(), () ->
+            buildProductPage(category, minPrice, maxPrice, inStockOnly, sortBy, sortOrder, page, size, after));
+    }
+
+    private ProductPage buildProductPage(String category, Double minPrice, Double maxPrice, boolean inStockOnly,
+                                         String sortBy, String sortOrder, int page, int size, String after) {
+        int pageNumber = Math.max(page, 1);
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        boolean descending = "desc".equalsIgnoreCase(sortOrder);
+
+        // As a long, so a huge page number lands past the end instead of overflowing
+        long offset = (long) (pageNumber - 1) * pageSize;
+
+        if (database.canSortByColumn(sortBy)) {
+            List<String> candidates = database.getFilteredProductIds(category, minPrice, maxPrice, inStockOnly,
+                sortBy, descending);
+            Product cursor = decodeCursor(sortBy, after);
+            int start;
+            if (cursor != null) {
+                start = seekPast(candidates, columnComparator(sortBy, descending), cursor);
+            } else {
+                start = (int) Math.min(offset, candidates.size());
+            }
+            int end = (int) Math.min((long) start + pageSize, candidates.size());
+            List<Product> products = new ArrayList<>();
+            for (String productId : candidates.subList(start, end)) {
+                Product product = database.getProduct(productId);
+                if (product != null) {
+                    products.add(product);
+                }
+            }
+            String nextCursor = end < candidates.size() && !products.isEmpty()
+                ? encodeCursor(sortBy, products.get(products.size() - 1)) : null;
+            return new ProductPage(Collections.unmodifiableList(products), pageNumber, pageSize,
+                candidates.size(), nextCursor);
+        }
+
+        List<String> candidates = database.getFilteredProductIds(category, minPrice, maxPrice, inStockOnly);
+        String sortKey = sortBy == null || sortBy.isEmpty() ? "name" : sortBy;
+        Comparator<Product> comparator = getComparator(sortKey).thenComparing(Product::getProductId);
+        if (descending) {
+            comparator = comparator.reversed();
+        }
+        Product cursor = decodeCursor(sortKey, after);
+        if (cursor == null && offset >= candidates.size()) {
+            return new ProductPage(Collections.emptyList(), pageNumber, pageSize, candidates.size(), null);
+        }
+        int skip = cursor != null ? 0 : (int) offset;
+
+        // Keep the best skip + pageSize products in a heap whose head is the worst of them
+        int limit = skip + pageSize;
+        PriorityQueue<Product> best = new PriorityQueue<>(Math.min(limit, candidates.size()) + 1,
+            comparator.reversed());
+        int remaining = 0;
+        for (String productId : candidates) {
+            Product product = database.getProduct(productId);
+            if (product == null || (cursor != null && comparator.compare(product, cursor) <= 0)) {
+                continue;
+            }
+            remaining++;
+            if (best.size() < limit) {
+                best.add(product);
+            } else if (comparator.compare(product, best.peek()) < 0) {
+                best.poll();
+                best.add(product);
+            }
+        }
+
+        List<Product> ordered = new ArrayList<>(best);
+        ordered.sort(comparator);
+        List<Product> products = ordered.subList(Math.min(skip, ordered.size()), ordered.size());
+        String nextCursor = remaining > limit && !products.isEmpty()
+            ? encodeCursor(sortKey, products.get(products.size() - 1)) : null;
+        return new ProductPage(Collections.unmodifiableList(new ArrayList<>(products)), pageNumber, pageSize,
+            candidates.size(), nextCursor);
+    }
+
+    /**
+     * Counts the category, price band and stock facets of a listing.
+     *
+     * <p>The counts are cardinalities of ANDed bitmaps from the database's
+     * bitmap indexes, so no product is read. Price bands run from one bound
+     * up to, but not including, the next. See {@link ProductFacets} for what
+     * each facet counts.</p>
+     *
+     * @param category the selected category (optional)
+     * @param minPrice minimum price filter (optional)
+     * @param maxPrice maximum price filter (optional)
+     * @param inStockOnly if true, only products with available stock are listed
+     * @return the facet counts for the listing
+     */
+    public ProductFacets getProductFacets(String category, Double minPrice, Double maxPrice, boolean inStockOnly) {
+        String categoryKey = normalizeCategory(category);
+        String key = QueryCache.key(categoryKey, minPrice, maxPrice, inStockOnly);
+        return facetCache.get(key, database.getCatalogueVersion(), () ->
+            database.getProductFacets(categoryKey, minPrice, maxPrice, inStockOnly, PRICE_BUCKET_BOUNDS));
+    }
+
+    // Cache key normalization: parameters that select the same results map to the same key
+
+    private static String normalizeQuery(String query) {
+        return query == null ? "" : query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalizeCategory(String category) {
+        return category == null || category.trim().isEmpty() ? null : category.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalizeSortBy(String sortBy) {
+        return sortBy == null || sortBy.isEmpty() ? null : sortBy.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds where the products sorting after a cursor start in a list of
+     * product IDs sorted by a column.
+     *
+     * @return the index of the first product after the cursor
+     */
+    private int seekPast(List<String> sortedIds, Comparator<Product> order, Product cursor) {
+        int low = 0;
+        int high = sortedIds.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            Product product = database.getProduct(sortedIds.get(middle));
+            // A product deleted since the IDs were listed is treated as already shown
+            if (product == null || order.compare(product, cursor) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The order of {@link Database#getFilteredProductIds(String, Double, Double, boolean, String, boolean)}:
+     * by the column, highest first if descending, then by product ID.
+     */
+    private static Comparator<Product> columnComparator(String sortBy, boolean descending) {
+        Comparator<Product> byColumn = "category".equalsIgnoreCase(sortBy)
+            ? Comparator.comparing(Product::getCategory, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            : getComparator(sortBy);
+        if (descending) {
+            byColumn = byColumn.reversed();
+        }
+        return byColumn.thenComparing(Product::getProductId);
+    }
+
+    /**
+     * Writes a product's place in a listing as a cursor: its sort value,
+     * Base64 encoded, then a colon and its ID.
+     */
+    private static String encodeCursor(String sortBy, Product product) {
+        String value;
+        switch (sortBy.toLowerCase()) {
+            case "price":
+                value = Double.toString(product.getPrice());
+                break;
+            case "stock":
+                value = Integer.toString(product.getStockQuantity());
+                break;
+            case "category":
+                value = product.getCategory();
+                break;
+            default:
+                value = product.getName();
+                break;
+        }
+        String encoded = value == null ? NULL_CURSOR_VALUE
+            : Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+        return encoded + ":" + product.getProductId();
+    }
+
+    /**
+     * Reads a cursor back into a stand-in product that has only the sort
+     * value and ID set, to compare listed products against.
+     *
+     * @return the stand-in, or null if there is no cursor or it cannot be read
+     */
+    private static Product decodeCursor(String sortBy, String cursor) {
+        int colon = cursor == null ? -1 : cursor.indexOf(':');
+        if (colon < 0 || colon == cursor.length() - 1) {
+            return null;
+        }
+        String productId = cursor.substring(colon + 1);
+        String encoded = cursor.substring(0, colon);
+        try {
+            String value = encoded.equals(NULL_CURSOR_VALUE) ? null
+                : new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            Product position = new Product();
+            position.setProductId(productId);
+            switch (sortBy.toLowerCase()) {
+                case "price":
+                    position.setPrice(Double.parseDouble(value));
+                    break;
+                case "stock":
+                    position.setStockQuantity(Integer.parseInt(value));
+                    break;
+                case "category":
+                    position.setCategory(value);
+                    break;
+                default:
+                    if (value == null) {
+                        return null;
+                    }
+                    position.setName(value);
+                    break;
+            }
+            return position;
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+
     /**
      * Creates a comparator for sorting products based on the specified field.
      *
-     * @param sortBy the field to sort by: "name", "price", "category", or "stock"
+     * @param sortBy the field to sort by: "name", "price", "category", or "stock";
+     *               anything else sorts by name
      * @return a comparator for the specified field
-     * @throws IllegalArgumentException if an invalid sort field is provided
      */
-    private Comparator<Product> getComparator(String sortBy) {
+    private static Comparator<Product> getComparator(String sortBy) {
         switch (sortBy.toLowerCase()) {
             case "name":
                 return Comparator.comparing(Product::getName);
             case "price":
-                return Comparator.comparing(Product::getPrice);
+                return Comparator.comparingDouble(Product::getPrice);
             case "category":
                 return Comparator.comparing(Product::getCategory);
             case "stock":
-                return Comparator.comparing(Product::getStockQuantity);
+                return Comparator.comparingInt(Product::getStockQuantity);
             default:
                 return Comparator.comparing(Product::getName);
         }
     }
 
     /**
-     * Calculates the minimum and maximum prices across all products.
+     * Gets the minimum and maximum prices across all products.
      * Useful for setting price range filters in the UI.
      *
      * @return an array where [0] is minimum price and [1] is maximum price
      */
     public double[] getPriceRange() {
-        List<Product> products = getAllProducts();
-        if (products.isEmpty()) {
-            return new double[]{0, 0};
-        }
-        
-        double minPrice = products.stream()
-            .mapToDouble(Product::getPrice)
-            .min()
-            .orElse(0);
-        
-        double maxPrice = products.stream()
-            .mapToDouble(Product::getPrice)
-            .max()
-            .orElse(0);
-            
-        return new double[]{minPrice, maxPrice};
+        return database.getPriceRange(null);
+    }
+
+    /**
+     * Gets the minimum and maximum prices within one category.
+     *
+     * @param category the category (case-insensitive); all products if empty
+     * @return an array where [0] is minimum price and [1] is maximum price
+     */
+    public double[] getPriceRange(String category) {
+        return database.getPriceRange(category);
     }
 
     // Console display methods (for testing/demo purposes)
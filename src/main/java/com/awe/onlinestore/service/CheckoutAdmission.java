@@ -0,0 +1,167 @@
+package com.awe.onlinestore.service;
+
+import com.awe.onlinestore.model.AdmissionMetrics;
+import com.awe.onlinestore.model.OrderItem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control in front of checkout, so a flash sale on one product
+ * degrades into quick refusals instead of a pile-up.
+ *
+ * <p>Every product has a lane that lets in at most
+ * {@code checkout.admission.lane-capacity} checkouts at once (64 by
+ * default). A checkout must enter the lane of each product in its cart
+ * before any stock is reserved, and leaves them when it finishes. It is
+ * turned away straight away, without waiting and without touching stock,
+ * if a product has sold out, or if a lane is full, in which case the shopper
+ * is told to try again. Stock itself is still taken by the compare-and-set
+ * in {@link InventoryService}; the lanes only bound how many checkouts for
+ * a product pile up behind the order and stock saves.</p>
+ *
+ * <p>The number of checkouts in each lane, its peak and the admitted, shed
+ * and sold-out counts are kept per product for {@link #getMetrics(int)}.
+ * Lanes do not queue anything, so the number in a lane is the number of
+ * checkouts for the product under way, not a queue depth.</p>
+ */
+@Service
+public class CheckoutAdmission {
+    private static final int DEFAULT_LANE_CAPACITY = 64;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Value("${checkout.admission.lane-capacity:64}")
+    private int laneCapacity = DEFAULT_LANE_CAPACITY;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Lets a checkout into the lanes of every product in its cart, or into
+     * none of them.
+     *
+     * @param holdId the stock hold placed for the cart, or null if there is none
+     * @param items the cart lines
+     * @return the ticket to close once the checkout has finished
+     * @throws CheckoutRejectedException if a product has sold out or its lane is full
+     */
+    public Ticket admit(String holdId, List<OrderItem> items) {
+        // Product ID order, and one entry per product however many lines it has
+        Map<String, OrderItem> lines = new TreeMap<>();
+        Map<String, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : items) {
+            String productId = item.getProduct().getProductId();
+            lines.putIfAbsent(productId, item);
+            quantities.merge(productId, item.getQuantity(), Integer::sum);
+        }
+
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            String productId = line.getKey();
+            if (inventoryService.getReservableStock(holdId, productId) < line.getValue()) {
+                lane(productId).soldOut.increment();
+                throw new CheckoutRejectedException(
+                    "Sorry, " + lines.get(productId).getProduct().getName() + " has sold out.", productId, false);
+            }
+        }
+
+        List<Lane> entered = new ArrayList<>(quantities.size());
+        for (String productId : quantities.keySet()) {
+            Lane lane = lane(productId);
+            if (!lane.tryEnter(laneCapacity)) {
+                for (Lane admitted : entered) {
+                    admitted.leave();
+                }
+                lane.shed.increment();
+                throw new CheckoutRejectedException(
+                    lines.get(productId).getProduct().getName()
+                        + " is in very high demand right now. Please try again in a moment.", productId, true);
+            }
+            entered.add(lane);
+        }
+        for (Lane lane : entered) {
+            lane.admitted.increment();
+        }
+        return new Ticket(entered);
+    }
+
+    /**
+     * Gets the state of the busiest lanes.
+     *
+     * @param limit the maximum number of lanes to report
+     * @return lanes ordered by checkouts in flight, then by checkouts shed
+     */
+    public List<AdmissionMetrics> getMetrics(int limit) {
+        List<AdmissionMetrics> metrics = new ArrayList<>(lanes.size());
+        for (Map.Entry<String, Lane> entry : lanes.entrySet()) {
+            Lane lane = entry.getValue();
+            metrics.add(new AdmissionMetrics(entry.getKey(), lane.inFlight.get(), lane.peakInFlight.get(),
+                laneCapacity, lane.admitted.sum(), lane.shed.sum(), lane.soldOut.sum(),
+                inventoryService.getAvailableStock(entry.getKey())));
+        }
+        metrics.sort(Comparator.comparingInt(AdmissionMetrics::getInFlight)
+            .thenComparingLong(AdmissionMetrics::getShed).reversed()
+            .thenComparing(AdmissionMetrics::getProductId));
+        return metrics.size() > limit ? new ArrayList<>(metrics.subList(0, Math.max(limit, 0))) : metrics;
+    }
+
+    private Lane lane(String productId) {
+        return lanes.computeIfAbsent(productId, id -> new Lane());
+    }
+
+    /**
+     * A checkout's place in the lanes of its products. Closing it leaves
+     * them; closing it again does nothing.
+     */
+    public static final class Ticket implements AutoCloseable {
+        private final List<Lane> lanes;
+        private boolean closed;
+
+        private Ticket(List<Lane> lanes) {
+            this.lanes = lanes;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Lane lane : lanes) {
+                lane.leave();
+            }
+        }
+    }
+
+    private static final class Lane {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+        private final LongAdder soldOut = new LongAdder();
+
+        boolean tryEnter(int capacity) {
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= capacity) {
+                    return false;
+                }
+            } while (!inFlight.compareAndSet(current, current + 1));
+            peakInFlight.accumulateAndGet(current + 1, Math::max);
+            return true;
+        }
+
+        void leave() {
+            inFlight.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.awe.onlinestore.service;
+
+import com.awe.onlinestore.model.Address;
+import com.awe.onlinestore.model.Cart;
+import com.awe.onlinestore.model.CheckoutStatus;
+import com.awe.onlinestore.model.Customer;
+import com.awe.onlinestore.model.Order;
+import com.awe.onlinestore.model.OrderItem;
+import com.awe.onlinestore.model.PipelineStageMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Places orders off the request thread, so a shopper's request returns as
+ * soon as the checkout is queued instead of waiting for the disk.
+ *
+ * <p>A checkout goes through four stages of {@link CheckoutService}:
+ * validate, reserve stock, build the order and persist it. Each stage has
+ * its own pool of workers, sized by {@code checkout.pipeline.*-threads},
+ * and a queue in front of it that holds at most
+ * {@code checkout.pipeline.queue-capacity} checkouts (256 by default).
+ * When the first queue is full the checkout is turned away and the shopper
+ * told to try again; when a later queue is full, the worker handing the
+ * checkout on runs the next stage itself, which slows the stage before it
+ * down instead of dropping a checkout that already holds stock.</p>
+ *
+ * <p>{@link #submit} returns the ID the order will have; the shopper polls
+ * {@link #getStatus(String, String)} with it until the order is confirmed or
+ * the checkout has failed. A checkout belongs to the session that submitted
+ * it and is not found from any other, so an order ID cannot be used to look
+ * at somebody else's order. Finished checkouts are kept for
+ * {@code checkout.pipeline.status-ttl-seconds} (ten minutes by default), in
+ * the order they finished, and dropped as new ones are submitted.</p>
+ *
+ * <p>Payment is not a stage: it needs the shopper's card details, which are
+ * taken once the order is confirmed, by {@link PaymentService}.</p>
+ */
+@Service
+public class CheckoutPipeline {
+    private static final int DEFAULT_VALIDATE_THREADS = 2;
+    private static final int DEFAULT_RESERVE_THREADS = 4;
+    private static final int DEFAULT_BUILD_THREADS = 2;
+    private static final int DEFAULT_PERSIST_THREADS = 16;
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final long DEFAULT_STATUS_TTL_SECONDS = 600;
+
+    @Autowired
+    private CheckoutService checkoutService;
+
+    @Value("${checkout.pipeline.validate-threads:2}")
+    private int validateThreads = DEFAULT_VALIDATE_THREADS;
+
+    @Value("${checkout.pipeline.reserve-threads:4}")
+    private int reserveThreads = DEFAULT_RESERVE_THREADS;
+
+    @Value("${checkout.pipeline.build-threads:2}")
+    private int buildThreads = DEFAULT_BUILD_THREADS;
+
+    // Persist workers mostly wait for the group commit, and the more of them
+    // wait together, the more orders each sync carries
+    @Value("${checkout.pipeline.persist-threads:16}")
+    private int persistThreads = DEFAULT_PERSIST_THREADS;
+
+    @Value("${checkout.pipeline.queue-capacity:256}")
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    @Value("${checkout.pipeline.status-ttl-seconds:600}")
+    private long statusTtlSeconds = DEFAULT_STATUS_TTL_SECONDS;
+
+    private final Map<String, Checkout> checkouts = new ConcurrentHashMap<>();
+    // Finished checkouts, oldest first; also the order in which they expire
+    private final Queue<Checkout> finished = new ConcurrentLinkedQueue<>();
+    // Stage name to its workers, in pipeline order
+    private final Map<String, ThreadPoolExecutor> stages = new LinkedHashMap<>();
+
+    private ThreadPoolExecutor validateStage;
+    private ThreadPoolExecutor reserveStage;
+    private ThreadPoolExecutor buildStage;
+    private ThreadPoolExecutor persistStage;
+
+    public CheckoutPipeline() {
+    }
+
+    CheckoutPipeline(CheckoutService checkoutService, int threadsPerStage, int queueCapacity,
+                     long statusTtlSeconds) {
+        this.checkoutService = checkoutService;
+        this.validateThreads = threadsPerStage;
+        this.reserveThreads = threadsPerStage;
+        this.buildThreads = threadsPerStage;
+        this.persistThreads = threadsPerStage;
+        this.queueCapacity = queueCapacity;
+        this.statusTtlSeconds = statusTtlSeconds;
+    }
+
+    @PostConstruct
+    public void init() {
+        // Only the first stage turns work away; the others push back on the
+        // stage feeding them
+        validateStage = stage("validate", validateThreads, new ThreadPoolExecutor.AbortPolicy());
+        reserveStage = stage("reserve", reserveThreads, new ThreadPoolExecutor.CallerRunsPolicy());
+        buildStage = stage("build", buildThreads, new ThreadPoolExecutor.CallerRunsPolicy());
+        persistStage = stage("persist", persistThreads, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Front to back, so the checkouts already queued drain through the
+        // stages still running behind them
+        for (ThreadPoolExecutor stage : stages.values()) {
+            stage.shutdown();
+            try {
+                stage.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queues a checkout of a cart. The cart is copied, so the shopper can go
+     * on changing it meanwhile.
+     *
+     * @param cart the shopping cart
+     * @param customer the customer
+     * @param shippingAddress the shipping address
+     * @param sessionId the shopper's session, the only one that can see the
+     *                  checkout; a stock hold placed under it is used up
+     * @return the ID the order will have, to poll {@link #getStatus(String, String)} with
+     * @throws CheckoutRejectedException if the pipeline is too busy to take
+     *         another checkout right now
+     */
+    public String submit(Cart cart, Customer customer, Address shippingAddress, String sessionId) {
+        Objects.requireNonNull(sessionId, "sessionId");
+        evictFinished(System.currentTimeMillis());
+
+        Checkout checkout = new Checkout(checkoutService.newOrderId(), copy(cart), customer,
+            shippingAddress, sessionId);
+        checkouts.put(checkout.orderId, checkout);
+        try {
+            validateStage.execute(() -> runStage(checkout, () -> validate(checkout)));
+        } catch (RejectedExecutionException e) {
+            checkouts.remove(checkout.orderId);
+            System.out.println("🚦 Checkout pipeline full, turning checkout away");
+            throw new CheckoutRejectedException(
+                "Checkout is very busy right now. Please try again in a moment.", null, true);
+        }
+        System.out.println("📥 Checkout queued: " + checkout.orderId);
+        return checkout.orderId;
+    }
+
+    /**
+     * Gets how far a submitted checkout has got.
+     *
+     * @param orderId the ID returned by {@link #submit}
+     * @param sessionId the session asking
+     * @return the status, or null if there is no such checkout, it was
+     *         submitted from another session, or it finished so long ago
+     *         that it has been forgotten
+     */
+    public CheckoutStatus getStatus(String orderId, String sessionId) {
+        Checkout checkout = find(orderId, sessionId);
+        if (checkout == null) {
+            return null;
+        }
+        return new CheckoutStatus(checkout.orderId, checkout.state, checkout.stage, checkout.message);
+    }
+
+    /**
+     * Gets the order placed by a submitted checkout.
+     *
+     * @param orderId the ID returned by {@link #submit}
+     * @param sessionId the session asking
+     * @return the order, or null unless the checkout was submitted from the
+     *         same session and its order is confirmed
+     */
+    public Order getOrder(String orderId, String sessionId) {
+        Checkout checkout = find(orderId, sessionId);
+        if (checkout == null || checkout.state != CheckoutStatus.State.CONFIRMED) {
+            return null;
+        }
+        return checkout.order;
+    }
+
+    /**
+     * Gets a snapshot of every stage, in pipeline order.
+     *
+     * @return the stage metrics
+     */
+    public List<PipelineStageMetrics> getMetrics() {
+        List<PipelineStageMetrics> metrics = new ArrayList<>(stages.size());
+        for (Map.Entry<String, ThreadPoolExecutor> stage : stages.entrySet()) {
+            ThreadPoolExecutor executor = stage.getValue();
+            metrics.add(new PipelineStageMetrics(stage.getKey(), executor.getMaximumPoolSize(),
+                executor.getActiveCount(), executor.getQueue().size(), queueCapacity,
+                executor.getCompletedTaskCount()));
+        }
+        return metrics;
+    }
+
+    /**
+     * Looks up a checkout on behalf of a session.
+     *
+     * @return the checkout, or null if there is none or another session owns it
+     */
+    private Checkout find(String orderId, String sessionId) {
+        Checkout checkout = checkouts.get(orderId);
+        return checkout != null && checkout.sessionId.equals(sessionId) ? checkout : null;
+    }
+
+    private void validate(Checkout checkout) {
+        if (!checkoutService.validate(checkout.cart, checkout.customer, checkout.shippingAddress)) {
+            fail(checkout, "Please check your shipping details and try again.");
+            return;
+        }
+        handOff(checkout, "reserve", reserveStage, () -> reserve(checkout));
+    }
+
+    private void reserve(Checkout checkout) {
+        checkout.ticket = checkoutService.reserve(checkout.cart, checkout.sessionId);
+        if (checkout.ticket == null) {
+            fail(checkout, "Some items in your cart are no longer in stock.");
+            return;
+        }
+        handOff(checkout, "build", buildStage, () -> build(checkout));
+    }
+
+    private void build(Checkout checkout) {
+        checkout.order = checkoutService.buildOrder(checkout.orderId, checkout.cart,
+            checkout.customer, checkout.shippingAddress);
+        handOff(checkout, "persist", persistStage, () -> persist(checkout));
+    }
+
+    private void persist(Checkout checkout) {
+        if (!checkoutService.persistOrder(checkout.order, checkout.cart)) {
+            fail(checkout, "Checkout failed. Please try again.");
+            return;
+        }
+        checkout.ticket.close();
+        checkout.ticket = null;
+        finish(checkout, CheckoutStatus.State.CONFIRMED, null);
+        System.out.println("✅ Checkout confirmed: " + checkout.orderId);
+    }
+
+    private void handOff(Checkout checkout, String stage, ThreadPoolExecutor executor, Runnable work) {
+        checkout.stage = stage;
+        executor.execute(() -> runStage(checkout, work));
+    }
+
+    private void runStage(Checkout checkout, Runnable work) {
+        try {
+            work.run();
+        } catch (CheckoutRejectedException e) {
+            fail(checkout, e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("❌ Checkout " + checkout.orderId + " failed in " + checkout.stage
+                + " stage: " + e.getMessage());
+            fail(checkout, "Checkout failed. Please try again.");
+        }
+    }
+
+    private void fail(Checkout checkout, String message) {
+        // Whatever stock the checkout still holds goes back before the shopper hears
+        if (checkout.ticket != null) {
+            checkoutService.release(checkout.cart);
+            checkout.ticket.close();
+            checkout.ticket = null;
+        }
+        finish(checkout, CheckoutStatus.State.FAILED, message);
+        System.out.println("Checkout " + checkout.orderId + " failed: " + message);
+    }
+
+    private void finish(Checkout checkout, CheckoutStatus.State state, String message) {
+        checkout.finishedAt = System.currentTimeMillis();
+        checkout.message = message;
+        checkout.state = state;
+        // Only the order is needed from here on
+        checkout.cart = null;
+        checkout.customer = null;
+        checkout.shippingAddress = null;
+        finished.add(checkout);
+    }
+
+    private void evictFinished(long now) {
+        long ttlMillis = TimeUnit.SECONDS.toMillis(statusTtlSeconds);
+        while (true) {
+            Checkout oldest = finished.peek();
+            if (oldest == null || oldest.finishedAt + ttlMillis > now) {
+                return;
+            }
+            if (finished.remove(oldest)) {
+                checkouts.remove(oldest.orderId, oldest);
+            }
+        }
+    }
+
+    private ThreadPoolExecutor stage(String name, int threads, RejectedExecutionHandler whenFull) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "checkout-" + name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, whenFull);
+        stages.put(name, executor);
+        return executor;
+    }
+
+    private static Cart copy(Cart cart) {
+        if (cart == null) {
+            return null;
+        }
+        Cart copy = new Cart(cart.getCustomerId());
+        List<OrderItem> items = new ArrayList<>();
+        for (OrderItem item : cart.getItems()) {
+            items.add(new OrderItem(item.getProduct(), item.getQuantity()));
+        }
+        copy.setItems(items);
+        return copy;
+    }
+
+    /**
+     * One checkout on its way through the pipeline. Each stage hands it to
+     * the next through an executor queue, which makes its fields visible to
+     * the next stage's worker; the state read by pollers is volatile.
+     */
+    private static final class Checkout {
+        private final String orderId;
+        private final String sessionId;
+        private Cart cart;
+        private Customer customer;
+        private Address shippingAddress;
+        private CheckoutAdmission.Ticket ticket;
+        private Order order;
+        private long finishedAt;
+        private volatile String stage = "validate";
+        private volatile String message;
+        private volatile CheckoutStatus.State state = CheckoutStatus.State.PENDING;
+
+        private Checkout(String orderId, Cart cart, Customer customer, Address shippingAddress,
+                         String sessionId) {
+            this.orderId = orderId;
+            this.cart = cart;
+            this.customer = customer;
+            this.shippingAddress = shippingAddress;
+            this.sessionId = sessionId;
+        }
+    }
+}
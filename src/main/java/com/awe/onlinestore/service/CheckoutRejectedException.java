@@ -0,0 +1,35 @@
+package com.awe.onlinestore.service;
+
+/**
+ * Thrown when a checkout is turned away before any stock is touched, either
+ * because a product in the cart has sold out or because so many checkouts
+ * for it are already under way that the shopper should try again shortly.
+ */
+public class CheckoutRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String productId;
+    private final boolean retryable;
+
+    /**
+     * Creates the exception.
+     *
+     * @param message the reason, fit to show to the shopper
+     * @param productId the product the checkout was turned away for
+     * @param retryable true if trying again later may succeed, false if the
+     *                  product is sold out
+     */
+    public CheckoutRejectedException(String message, String productId, boolean retryable) {
+        super(message);
+        this.productId = productId;
+        this.retryable = retryable;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
@@ -1,10 +1,12 @@
 package com.awe.onlinestore.service;
 
 import com.awe.onlinestore.dao.Database;
+import com.awe.onlinestore.dao.UnitOfWork;
 import com.awe.onlinestore.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
 @Service
 public class CheckoutService {
@@ -13,7 +15,10 @@ public class CheckoutService {
     private Database database;
     
     @Autowired
-    private CatalogueService catalogueService;
+    private InventoryService inventoryService;
+
+    @Autowired
+    private CheckoutAdmission checkoutAdmission;
 
     /**
      * Processes checkout for a customer's cart.
@@ -22,85 +27,156 @@ public class CheckoutService {
      * @param customer the customer
      * @param shippingAddress the shipping address
      * @return the created order, or null if failed
+     * @throws CheckoutRejectedException if a product has sold out or is too
+     *         busy to take another checkout right now
      */
     public Order processCheckout(Cart cart, Customer customer, Address shippingAddress) {
+        return processCheckout(cart, customer, shippingAddress, null);
+    }
+
+    /**
+     * Processes checkout for a customer's cart, using the stock held for it
+     * when the checkout page was shown.
+     *
+     * @param cart the shopping cart
+     * @param customer the customer
+     * @param shippingAddress the shipping address
+     * @param holdId the stock hold placed for the cart, or null if there is none
+     * @return the created order, or null if failed
+     * @throws CheckoutRejectedException if a product has sold out or is too
+     *         busy to take another checkout right now
+     */
+    public Order processCheckout(Cart cart, Customer customer, Address shippingAddress, String holdId) {
         System.out.println("🔧 Starting checkout process...");
-        
+
+        if (!validate(cart, customer, shippingAddress)) {
+            return null;
+        }
+
+        // Turn the checkout away early if a product is sold out or swamped,
+        // then reserve stock for the whole cart
+        Order order;
+        try (CheckoutAdmission.Ticket ticket = reserve(cart, holdId)) {
+            if (ticket == null) {
+                System.out.println("Checkout failed due to cart validation issues.");
+                return null;
+            }
+
+            // Create order, committing the reserved stock with it
+            order = buildOrder(newOrderId(), cart, customer, shippingAddress);
+            if (!persistOrder(order, cart)) {
+                release(cart);
+                System.out.println("Failed to create order.");
+                return null;
+            }
+        }
+
+        System.out.println("Order created successfully!");
+        System.out.printf("Order ID: %s%n", order.getOrderId());
+        System.out.printf("Total Amount: $%.2f%n", order.getTotalAmount());
+
+        return order;
+    }
+
+    /**
+     * Checks that a checkout has everything it needs. First stage of a
+     * checkout, here and in {@link CheckoutPipeline}.
+     *
+     * @param cart the shopping cart
+     * @param customer the customer
+     * @param shippingAddress the shipping address
+     * @return true if the checkout can go ahead
+     */
+    boolean validate(Cart cart, Customer customer, Address shippingAddress) {
         if (cart == null || cart.isEmpty()) {
             System.out.println("Cart is empty. Cannot proceed with checkout.");
-            return null;
+            return false;
         }
 
         if (customer == null) {
             System.out.println("Customer is null.");
-            return null;
+            return false;
         }
 
         if (shippingAddress == null || !shippingAddress.isValid()) {
             System.out.println("Invalid shipping address.");
-            return null;
+            return false;
         }
 
         System.out.println("All validations passed.");
         System.out.println("Cart items: " + cart.getItems().size());
         System.out.println("Customer: " + customer.getName());
+        return true;
+    }
 
-        // Validate cart items
-        if (!validateCartItems(cart)) {
-            System.out.println("Checkout failed due to cart validation issues.");
-            return null;
-        }
-
-        // Create order
-        Order order = createOrder(cart, customer, shippingAddress);
-        if (order == null) {
-            System.out.println("Failed to create order.");
+    /**
+     * Admits a checkout and reserves the stock for its cart.
+     *
+     * @param cart the shopping cart
+     * @param holdId the stock hold placed for the cart, or null if there is none
+     * @return the admission ticket to close once the order is saved or the
+     *         reservation released, or null if the stock could not be reserved
+     * @throws CheckoutRejectedException if a product has sold out or is too
+     *         busy to take another checkout right now
+     */
+    CheckoutAdmission.Ticket reserve(Cart cart, String holdId) {
+        CheckoutAdmission.Ticket ticket = checkoutAdmission.admit(holdId, cart.getItems());
+        if (!reserveCartItems(cart, holdId)) {
+            ticket.close();
             return null;
         }
+        return ticket;
+    }
 
-        System.out.println("Order created successfully!");
-        System.out.printf("Order ID: %s%n", order.getOrderId());
-        System.out.printf("Total Amount: $%.2f%n", order.getTotalAmount());
+    /**
+     * Gives back the stock reserved for a cart whose order was not saved.
+     *
+     * @param cart the shopping cart
+     */
+    void release(Cart cart) {
+        inventoryService.release(cart.getItems());
+    }
 
-        return order;
+    String newOrderId() {
+        return "ORD_" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
     }
 
     /**
-     * Validates all items in the cart.
+     * Reserves the stock for every item in the cart. Either every item is
+     * reserved or none is, so a failed checkout leaves stock untouched.
      *
-     * @param cart the cart to validate
-     * @return true if all items are valid
+     * @param cart the cart to reserve
+     * @param holdId the stock hold placed for the cart, or null if there is none
+     * @return true if all items were reserved
      */
-    private boolean validateCartItems(Cart cart) {
-        boolean allValid = true;
+    private boolean reserveCartItems(Cart cart, String holdId) {
+        boolean reserved = inventoryService.reserve(holdId, cart.getItems());
 
         for (OrderItem item : cart.getItems()) {
             Product product = item.getProduct();
-            int requestedQuantity = item.getQuantity();
-
-            if (!catalogueService.checkStockAvailability(product.getProductId(), requestedQuantity)) {
+            int available = inventoryService.getAvailableStock(product.getProductId());
+            if (reserved) {
+                System.out.printf("Stock reserved for: %s (Requested: %d, Remaining: %d)%n",
+                    product.getName(), item.getQuantity(), available);
+            } else if (available < item.getQuantity()) {
                 System.out.printf("Insufficient stock for: %s (Requested: %d, Available: %d)%n",
-                    product.getName(), requestedQuantity, product.getStockQuantity());
-                allValid = false;
-            } else {
-                System.out.printf("Stock OK for: %s (Requested: %d, Available: %d)%n",
-                    product.getName(), requestedQuantity, product.getStockQuantity());
+                    product.getName(), item.getQuantity(), Math.max(available, 0));
             }
         }
 
-        return allValid;
+        return reserved;
     }
 
     /**
-     * Creates an order from the cart.
+     * Creates a confirmed order from the cart, without saving it.
      *
+     * @param orderId the ID to give the order
      * @param cart the shopping cart
      * @param customer the customer
      * @param shippingAddress the shipping address
-     * @return the created order
+     * @return the order
      */
-    private Order createOrder(Cart cart, Customer customer, Address shippingAddress) {
-        String orderId = "ORD_" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+    Order buildOrder(String orderId, Cart cart, Customer customer, Address shippingAddress) {
         System.out.println("📝 Creating order: " + orderId);
         
         Order order = new Order(orderId, customer, shippingAddress);
@@ -111,24 +187,35 @@ public class CheckoutService {
             order.addItem(orderItem);
             System.out.printf("➕ Added to order: %s x%d%n", 
                 cartItem.getProduct().getName(), cartItem.getQuantity());
-
-            // Update product stock
-            boolean stockUpdated = catalogueService.updateProductStock(
-                cartItem.getProduct().getProductId(), 
-                cartItem.getQuantity()
-            );
-            System.out.printf("📊 Stock update for %s: %s%n", 
-                cartItem.getProduct().getName(), stockUpdated ? "SUCCESS" : "FAILED");
         }
 
-        // Confirm order and save
         order.confirmOrder();
-        database.saveOrder(order);
-        System.out.println("💾 Order saved to database.");
-
         return order;
     }
 
+    /**
+     * Saves an order together with the sale of its reserved stock, as one
+     * durable write, and waits for it to reach stable storage.
+     *
+     * @param order the order to save
+     * @param cart the cart whose reserved stock is sold
+     * @return true if the order was saved; if not, the caller still holds
+     *         the reservation and must {@link #release(Cart)} it
+     */
+    boolean persistOrder(Order order, Cart cart) {
+        UnitOfWork unitOfWork = database.beginUnitOfWork();
+        unitOfWork.saveOrder(order);
+        inventoryService.commit(cart.getItems(), unitOfWork);
+        try {
+            unitOfWork.commit().join();
+        } catch (CompletionException e) {
+            System.err.println("❌ Order could not be persisted: " + e.getCause().getMessage());
+            return false;
+        }
+        System.out.println("💾 Order saved to database.");
+        return true;
+    }
+
     /**
      * Displays order summary before confirmation (for console).
      *
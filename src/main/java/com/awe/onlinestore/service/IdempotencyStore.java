@@ -0,0 +1,153 @@
+package com.awe.onlinestore.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the result of each submission made under an idempotency key, so
+ * a retried or double-clicked submission gets the original result instead of
+ * placing a second order or payment.
+ *
+ * <p>The first submission under a key runs; any repeat of it while it is
+ * still running waits for it, and any repeat afterwards gets its result
+ * straight away. Only results are remembered: a submission that fails, by
+ * returning null or throwing, forgets its key so that it can be tried again,
+ * and repeats that were waiting on it see the same failure.</p>
+ *
+ * <p>Keys are kept for {@code idempotency.ttl-seconds} (an hour by default)
+ * and at most {@code idempotency.max-keys} of them (10,000 by default) at
+ * once. Every key lives for the same time, so they expire in the order they
+ * were made; each new key drops the expired keys at the front of that
+ * order, and the oldest keys early if the store is full.</p>
+ */
+@Service
+public class IdempotencyStore {
+    private static final int DEFAULT_MAX_KEYS = 10_000;
+    private static final long DEFAULT_TTL_SECONDS = 3600;
+
+    @Value("${idempotency.max-keys:10000}")
+    private int maxKeys = DEFAULT_MAX_KEYS;
+
+    @Value("${idempotency.ttl-seconds:3600}")
+    private long ttlSeconds = DEFAULT_TTL_SECONDS;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Every entry made, oldest first; also the order in which they expire
+    private final Queue<Entry> arrivals = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger arrivalCount = new AtomicInteger();
+
+    public IdempotencyStore() {
+    }
+
+    IdempotencyStore(int maxKeys, long ttlSeconds) {
+        this.maxKeys = maxKeys;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    /**
+     * Runs a submission once per key.
+     *
+     * @param scope what kind of submission this is, such as {@code "checkout"};
+     *              keys in different scopes never match
+     * @param key the idempotency key sent with the submission; if null or
+     *            empty, the submission simply runs
+     * @param submission the work to run; a null result counts as a failure
+     * @return the submission's result, or the result of the first submission
+     *         made under the same key
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V execute(String scope, String key, Supplier<V> submission) {
+        if (key == null || key.trim().isEmpty()) {
+            return submission.get();
+        }
+        String scopedKey = scope + ":" + key.trim();
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(scopedKey, now + TimeUnit.SECONDS.toMillis(ttlSeconds));
+        while (true) {
+            Entry existing = entries.putIfAbsent(scopedKey, entry);
+            if (existing == null) {
+                break;
+            }
+            if (!existing.isExpired(now)) {
+                System.out.println("🔁 Repeated submission " + scopedKey + ", returning the original result");
+                return (V) existing.await();
+            }
+            entries.remove(scopedKey, existing);
+        }
+        arrivals.add(entry);
+        arrivalCount.incrementAndGet();
+        evict(now);
+
+        V result;
+        try {
+            result = submission.get();
+        } catch (RuntimeException e) {
+            entries.remove(scopedKey, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        }
+        if (result == null) {
+            entries.remove(scopedKey, entry);
+        }
+        entry.result.complete(result);
+        return result;
+    }
+
+    /**
+     * Gets the number of keys currently remembered, including submissions
+     * still running.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        while (true) {
+            Entry oldest = arrivals.peek();
+            if (oldest == null || (!oldest.isExpired(now) && arrivalCount.get() <= maxKeys)) {
+                return;
+            }
+            if (arrivals.remove(oldest)) {
+                arrivalCount.decrementAndGet();
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final long expiresAt;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private Entry(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+
+        Object await() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package com.awe.onlinestore.service;
+
+import com.awe.onlinestore.dao.Database;
+import com.awe.onlinestore.dao.StockKeeper;
+import com.awe.onlinestore.dao.UnitOfWork;
+import com.awe.onlinestore.model.OrderItem;
+import com.awe.onlinestore.model.StockEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service owning the stock level of every product, so that concurrent
+ * checkouts can never sell the same unit twice.
+ *
+ * <p>Each product's stock is split into units available to anyone and units
+ * held for a shopper, packed together in one {@link AtomicLong} taken from
+ * the inventory ledger the first time the product is used. Every change, whether
+ * selling, holding or releasing, is a single compare-and-set on that word
+ * instead of reading the product, checking and saving it back, so two
+ * buyers of the last unit cannot both succeed, and buyers of the same hot
+ * product never wait on a lock to find out. A cart is changed line by line;
+ * if any line is short, the lines already changed are undone and the cart
+ * is left as it was.</p>
+ *
+ * <p>Holds set aside a cart's stock while its owner fills in the checkout
+ * form, so it cannot sell out between page load and order. A hold lasts for
+ * {@code inventory.hold-ttl-seconds} (ten minutes by default); a
+ * {@link TimerWheel} ticking once a second returns expired holds to the
+ * available stock without scanning the others.</p>
+ *
+ * <p>Every sale and restock is recorded as a {@link StockEvent} in the
+ * inventory ledger, a short append that shares the next group commit, rather
+ * than by saving the product. A sale is recorded as the reservation and its
+ * commit together, in the same unit of work as the order, so a checkout is
+ * one journal write. Holds and reservations that have not been sold yet are
+ * not recorded: they never leave memory and are simply gone after a
+ * restart. The catalogue's stock quantities, which listings and product pages show,
+ * are written back once a second for the products that changed, as the
+ * available plus the held units. This service is the database's
+ * {@link StockKeeper}: a product saved with a new stock quantity moves the
+ * count to that level and records the difference as a restock or
+ * write-off, so the count, the ledger and the catalogue never disagree.</p>
+ */
+@Service
+public class InventoryService {
+    private static final long DEFAULT_HOLD_TTL_SECONDS = 600;
+    private static final long HOLD_TICK_MILLIS = 1000;
+    private static final long WRITE_BACK_INTERVAL_MILLIS = 1000;
+    private static final int HOLD_WHEEL_SLOTS = 1024;
+
+    @Autowired
+    private Database database;
+
+    @Value("${inventory.hold-ttl-seconds:600}")
+    private long holdTtlSeconds = DEFAULT_HOLD_TTL_SECONDS;
+
+    private final Map<String, Stock> stocks = new ConcurrentHashMap<>();
+    private final Map<String, Hold> holds = new ConcurrentHashMap<>();
+    private final TimerWheel<Hold> holdExpiry =
+        new TimerWheel<>(HOLD_TICK_MILLIS, HOLD_WHEEL_SLOTS, System.currentTimeMillis(), this::expire);
+    /** Products whose catalogue stock quantity is out of date. */
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService worker;
+
+    @PostConstruct
+    public void init() {
+        database.setStockKeeper(this::stockSaved);
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        worker.scheduleWithFixedDelay(() -> expireHolds(System.currentTimeMillis()),
+            HOLD_TICK_MILLIS, HOLD_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        worker.scheduleWithFixedDelay(this::writeBackStock,
+            WRITE_BACK_INTERVAL_MILLIS, WRITE_BACK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (worker != null) {
+            worker.shutdown();
+            try {
+                worker.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+        writeBackStock();
+    }
+
+    /**
+     * Reserves the stock for every line of a cart, or for none of them.
+     * Lines for the same product are added together. A successful
+     * reservation must be followed by {@link #commit(List)} once the order
+     * is saved, or by {@link #release(List)} if it is not.
+     *
+     * @param items the cart lines
+     * @return true if every line was reserved, false if none were
+     */
+    public boolean reserve(List<OrderItem> items) {
+        return reserve(null, items);
+    }
+
+    /**
+     * Reserves the stock for every line of a cart, or for none of them,
+     * using up the hold placed for the cart first. Units held for products
+     * no longer in the cart go back to the available stock. The hold is
+     * kept if the reservation fails.
+     *
+     * @param holdId the hold placed for the cart, or null if there is none
+     * @param items the cart lines
+     * @return true if every line was reserved, false if none were
+     */
+    public boolean reserve(String holdId, List<OrderItem> items) {
+        Map<String, Integer> quantities = quantitiesOf(items);
+        if (quantities == null) {
+            return false;
+        }
+        // Claim the hold, so that it cannot expire or be used twice meanwhile
+        Hold hold = holdId == null ? null : holds.remove(holdId);
+        Map<String, Integer> held = hold == null ? Collections.emptyMap() : hold.quantities;
+
+        TreeSet<String> productIds = new TreeSet<>(quantities.keySet());
+        productIds.addAll(held.keySet());
+        Map<String, int[]> changes = new TreeMap<>();
+        for (String productId : productIds) {
+            int fromHold = held.getOrDefault(productId, 0);
+            int wanted = quantities.getOrDefault(productId, 0);
+            changes.put(productId, new int[]{fromHold - wanted, -fromHold});
+        }
+        if (!applyAll(changes)) {
+            restore(hold);
+            return false;
+        }
+
+        changed.addAll(quantities.keySet());
+        return true;
+    }
+
+    /**
+     * Records the stock taken by {@link #reserve(List)} as sold, as one
+     * durable write, and waits for it to reach stable storage. If it does
+     * not, the stock is put back.
+     *
+     * @param items the cart lines that were reserved
+     * @return true if the sale was recorded
+     */
+    public boolean commit(List<OrderItem> items) {
+        Map<String, Integer> quantities = quantitiesOf(items);
+        if (quantities == null) {
+            return false;
+        }
+        UnitOfWork unitOfWork = database.beginUnitOfWork();
+        stageSale(quantities, unitOfWork);
+        try {
+            unitOfWork.commit().join();
+        } catch (CompletionException e) {
+            System.err.println("❌ Sale could not be recorded: " + e.getCause().getMessage());
+            putBack(quantities);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stages the stock taken by {@link #reserve(List)} as sold in the unit of
+     * work that saves the order it was reserved for, so the sale and the
+     * order become durable together. If the unit of work fails, the stock
+     * is still reserved and must be {@link #release(List) released}.
+     *
+     * @param items the cart lines that were reserved
+     * @param unitOfWork the unit of work saving the order
+     */
+    public void commit(List<OrderItem> items, UnitOfWork unitOfWork) {
+        Map<String, Integer> quantities = quantitiesOf(items);
+        if (quantities == null) {
+            return;
+        }
+        stageSale(quantities, unitOfWork);
+    }
+
+    /**
+     * Puts back stock taken by {@link #reserve(List)}, for example when the
+     * order it was reserved for could not be saved. Nothing was recorded for
+     * the reservation, so nothing is recorded for the release either.
+     *
+     * @param items the cart lines that were reserved
+     */
+    public void release(List<OrderItem> items) {
+        Map<String, Integer> quantities = quantitiesOf(items);
+        if (quantities == null) {
+            return;
+        }
+        putBack(quantities);
+    }
+
+    /**
+     * Adds newly arrived units to a product's stock.
+     *
+     * @param productId the product
+     * @param quantity the number of units, positive
+     * @return true if the stock was added, false if there is no such product
+     */
+    public boolean restock(String productId, int quantity) {
+        if (quantity <= 0 || !apply(productId, quantity, 0)) {
+            return false;
+        }
+        if (!record(productId, StockEvent.Type.RESTOCK, quantity)) {
+            apply(productId, -quantity, 0);
+            return false;
+        }
+        changed.add(productId);
+        return true;
+    }
+
+    /**
+     * Moves a product's stock to the level it is being saved with, for the
+     * database. The level counts the available and the held units, as the
+     * catalogue does; held units stay held, so a level below them takes
+     * every available unit. The difference is recorded as a restock or a
+     * write-off.
+     *
+     * @param productId the product
+     * @param level the stock quantity the product is being saved with
+     * @return the stock level reached, to save the product with
+     */
+    int stockSaved(String productId, int level) {
+        Stock stock = stock(productId);
+        if (stock == null) {
+            return level;
+        }
+        long current;
+        int available;
+        int held;
+        int change;
+        do {
+            current = stock.get();
+            available = Stock.available(current);
+            held = Stock.held(current);
+            change = Math.max(level - held, 0) - available;
+        } while (change != 0 && !stock.compareAndSet(current, Stock.pack(available + change, held)));
+
+        if (change != 0) {
+            StockEvent.Type type = change > 0 ? StockEvent.Type.RESTOCK : StockEvent.Type.WRITE_OFF;
+            if (!record(productId, type, Math.abs(change))) {
+                apply(productId, -change, 0);
+            }
+        }
+        // Written back anyway if a checkout moved the count meanwhile
+        changed.add(productId);
+        current = stock.get();
+        return Stock.available(current) + Stock.held(current);
+    }
+
+    /**
+     * Holds the stock for every line of a cart, or for none of them, until
+     * the hold is used by {@link #reserve(String, List)}, cancelled, or
+     * expires. Holding again under the same id replaces the previous hold
+     * and restarts its time.
+     *
+     * @param holdId identifies the hold, such as the shopper's session
+     * @param items the cart lines
+     * @return true if every line is now held; false if nothing is, in which
+     *         case any previous hold under the id is kept
+     */
+    public boolean hold(String holdId, List<OrderItem> items) {
+        Map<String, Integer> quantities = quantitiesOf(items);
+        if (holdId == null || quantities == null) {
+            return false;
+        }
+        Hold previous = holds.remove(holdId);
+        Map<String, Integer> held = previous == null ? Collections.emptyMap() : previous.quantities;
+
+        // Move only the difference, so units already held are never let go
+        TreeSet<String> productIds = new TreeSet<>(quantities.keySet());
+        productIds.addAll(held.keySet());
+        Map<String, int[]> changes = new TreeMap<>();
+        for (String productId : productIds) {
+            int more = quantities.getOrDefault(productId, 0) - held.getOrDefault(productId, 0);
+            if (more != 0) {
+                changes.put(productId, new int[]{-more, more});
+            }
+        }
+        if (!applyAll(changes)) {
+            restore(previous);
+            return false;
+        }
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(holdTtlSeconds);
+        Hold hold = new Hold(holdId, quantities);
+        Hold displaced = holds.put(holdId, hold);
+        if (displaced != null) {
+            // Placed by a concurrent call under the same id
+            returnToAvailable(displaced);
+        }
+        holdExpiry.schedule(hold, deadline);
+        return true;
+    }
+
+    /**
+     * Cancels a hold, returning its stock to the available stock.
+     *
+     * @param holdId the hold
+     * @return true if the hold existed
+     */
+    public boolean cancelHold(String holdId) {
+        Hold hold = holdId == null ? null : holds.remove(holdId);
+        if (hold == null) {
+            return false;
+        }
+        returnToAvailable(hold);
+        return true;
+    }
+
+    /**
+     * Gets the stock that can still be reserved or held for a product.
+     *
+     * @param productId the product
+     * @return the available quantity, or -1 if there is no such product
+     */
+    public int getAvailableStock(String productId) {
+        Stock stock = stock(productId);
+        return stock == null ? -1 : Stock.available(stock.get());
+    }
+
+    /**
+     * Gets the stock a shopper could reserve for a product: the available
+     * stock plus whatever their own hold has set aside.
+     *
+     * @param holdId the shopper's hold, or null if there is none
+     * @param productId the product
+     * @return the reservable quantity, or -1 if there is no such product
+     */
+    public int getReservableStock(String holdId, String productId) {
+        int available = getAvailableStock(productId);
+        Hold hold = holdId == null ? null : holds.get(holdId);
+        if (available < 0 || hold == null) {
+            return available;
+        }
+        return available + hold.quantities.getOrDefault(productId, 0);
+    }
+
+    /**
+     * Gets the stock of a product held for shoppers who are checking out.
+     *
+     * @param productId the product
+     * @return the held quantity, or -1 if there is no such product
+     */
+    public int getHeldStock(String productId) {
+        Stock stock = stock(productId);
+        return stock == null ? -1 : Stock.held(stock.get());
+    }
+
+    /**
+     * Gets how long a hold lasts.
+     */
+    public long getHoldTtlSeconds() {
+        return holdTtlSeconds;
+    }
+
+    /**
+     * Gets the number of holds in place.
+     */
+    public int getHoldCount() {
+        return holds.size();
+    }
+
+    /**
+     * Saves the current stock level of every product whose stock has
+     * changed since the last write-back to the catalogue.
+     *
+     * @return the number of products saved
+     */
+    synchronized int writeBackStock() {
+        int written = 0;
+        for (String productId : changed) {
+            // Removed before reading the level, so a change made meanwhile is written next time
+            changed.remove(productId);
+            int stored = database.getStockQuantity(productId);
+            long current = stocks.get(productId).get();
+            int level = Stock.available(current) + Stock.held(current);
+            if (stored >= 0 && stored != level) {
+                database.saveStockLevel(productId, level);
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Returns the stock of every hold whose time is up.
+     *
+     * @param nowMillis the current time
+     * @return the number of holds expired
+     */
+    int expireHolds(long nowMillis) {
+        return holdExpiry.advance(nowMillis);
+    }
+
+    /**
+     * Called by the timer wheel. A hold that has been used, cancelled or
+     * replaced since it was scheduled is no longer in the map and is ignored.
+     */
+    private void expire(Hold hold) {
+        if (holds.remove(hold.holdId, hold)) {
+            returnToAvailable(hold);
+        }
+    }
+
+    /**
+     * Puts back a hold claimed by an operation that then failed, or returns
+     * its stock if another hold has taken its place meanwhile.
+     */
+    private void restore(Hold hold) {
+        if (hold != null && holds.putIfAbsent(hold.holdId, hold) != null) {
+            returnToAvailable(hold);
+        }
+    }
+
+    /**
+     * Records a stock change in the ledger and waits for it to be durable.
+     *
+     * @return true if the change was recorded
+     */
+    private boolean record(String productId, StockEvent.Type type, int quantity) {
+        try {
+            database.recordStockEvent(productId, type, quantity).join();
+            return true;
+        } catch (CompletionException e) {
+            System.err.println("❌ Stock change could not be recorded: " + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    private void putBack(Map<String, Integer> quantities) {
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            if (apply(line.getKey(), line.getValue(), 0)) {
+                changed.add(line.getKey());
+            }
+        }
+    }
+
+    /**
+     * Stages the reservation and sale of every line in one unit of work, so
+     * the ledger never holds a reservation whose sale was lost.
+     */
+    private static void stageSale(Map<String, Integer> quantities, UnitOfWork unitOfWork) {
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            unitOfWork.recordStockEvent(line.getKey(), StockEvent.Type.RESERVE, line.getValue());
+            unitOfWork.recordStockEvent(line.getKey(), StockEvent.Type.COMMIT, line.getValue());
+        }
+    }
+
+    private void returnToAvailable(Hold hold) {
+        for (Map.Entry<String, Integer> line : hold.quantities.entrySet()) {
+            apply(line.getKey(), line.getValue(), -line.getValue());
+        }
+    }
+
+    /**
+     * Applies a change to several products' stock, or to none of them.
+     *
+     * @param changes the {@code [available, held]} change for each product
+     * @return true if every change was applied
+     */
+    private boolean applyAll(Map<String, int[]> changes) {
+        List<Map.Entry<String, int[]>> applied = new ArrayList<>(changes.size());
+        for (Map.Entry<String, int[]> change : changes.entrySet()) {
+            int[] delta = change.getValue();
+            if (!apply(change.getKey(), delta[0], delta[1])) {
+                for (Map.Entry<String, int[]> undo : applied) {
+                    apply(undo.getKey(), -undo.getValue()[0], -undo.getValue()[1]);
+                }
+                return false;
+            }
+            applied.add(change);
+        }
+        return true;
+    }
+
+    /**
+     * Changes a product's available and held stock in one step, if neither
+     * would drop below zero.
+     */
+    private boolean apply(String productId, int availableDelta, int heldDelta) {
+        Stock stock = stock(productId);
+        if (stock == null) {
+            return false;
+        }
+        long current;
+        int available;
+        int held;
+        do {
+            current = stock.get();
+            available = Stock.available(current) + availableDelta;
+            held = Stock.held(current) + heldDelta;
+            if (available < 0 || held < 0) {
+                return false;
+            }
+        } while (!stock.compareAndSet(current, Stock.pack(available, held)));
+        return true;
+    }
+
+    /**
+     * Gets a product's stock, loading it from the catalogue on first use.
+     *
+     * @return the stock, or null if there is no such product
+     */
+    private Stock stock(String productId) {
+        Stock stock = stocks.get(productId);
+        if (stock != null) {
+            return stock;
+        }
+        return stocks.computeIfAbsent(productId, id -> {
+            int quantity = database.getUnreservedStock(id);
+            return quantity < 0 ? null : new Stock(quantity);
+        });
+    }
+
+    /**
+     * Adds up the quantity of each product in a list of cart lines, in
+     * product ID order.
+     *
+     * @return the quantities, or null if a line is missing its product or
+     *         has no positive quantity
+     */
+    private static Map<String, Integer> quantitiesOf(List<OrderItem> items) {
+        if (items == null || items.isEmpty()) {
+            return null;
+        }
+        Map<String, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : items) {
+            if (item == null || item.getProduct() == null || item.getQuantity() <= 0) {
+                return null;
+            }
+            quantities.merge(item.getProduct().getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    /**
+     * A product's available units in the high half and held units in the
+     * low half of one word, so both change together.
+     */
+    private static final class Stock {
+        private final AtomicLong word;
+
+        Stock(int available) {
+            word = new AtomicLong(pack(available, 0));
+        }
+
+        long get() {
+            return word.get();
+        }
+
+        boolean compareAndSet(long expected, long updated) {
+            return word.compareAndSet(expected, updated);
+        }
+
+        static long pack(int available, int held) {
+            return ((long) available << 32) | (held & 0xffffffffL);
+        }
+
+        static int available(long stock) {
+            return (int) (stock >>> 32);
+        }
+
+        static int held(long stock) {
+            return (int) stock;
+        }
+    }
+
+    /**
+     * The units of each product held under one id.
+     */
+    private static final class Hold {
+        private final String holdId;
+        private final Map<String, Integer> quantities;
+
+        Hold(String holdId, Map<String, Integer> quantities) {
+            this.holdId = holdId;
+            this.quantities = quantities;
+        }
+    }
+}
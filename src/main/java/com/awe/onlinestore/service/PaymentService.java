@@ -2,10 +2,12 @@
 package com.awe.onlinestore.service;
 
 import com.awe.onlinestore.dao.Database;
+import com.awe.onlinestore.dao.UnitOfWork;
 import com.awe.onlinestore.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.UUID;
+import java.util.concurrent.CompletionException;
 
 @Service
 public class PaymentService {
@@ -52,10 +54,17 @@ public class PaymentService {
             return false;
         }
 
-        // Save payment and update order
-        database.savePayment(paymentMethod);
+        // Save payment and update order as one durable write
         order.markAsPaid();
-        database.saveOrder(order);
+        UnitOfWork unitOfWork = database.beginUnitOfWork();
+        unitOfWork.savePayment(paymentMethod);
+        unitOfWork.saveOrder(order);
+        try {
+            unitOfWork.commit().join();
+        } catch (CompletionException e) {
+            System.out.println("Payment could not be recorded: " + e.getCause().getMessage());
+            return false;
+        }
 
         System.out.println("Payment processed successfully!");
         System.out.printf("Payment ID: %s%n", paymentMethod.getPaymentId());
@@ -0,0 +1,132 @@
+package com.awe.onlinestore.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Bounded least-recently-used cache of catalogue query results.
+ *
+ * <p>Every entry remembers the catalogue version it was computed at (see
+ * {@link com.awe.onlinestore.dao.Database#getCatalogueVersion()}) and is only
+ * served while the catalogue is still at that version, so a product save
+ * invalidates every cached result at once without working out which queries
+ * it affects. A result computed at an older version never replaces one
+ * already cached for a newer version.</p>
+ *
+ * <p>The version also moves when the inventory writes stock counts back to
+ * the catalogue, at most once a second while stock is changing, because
+ * cached products carry their stock quantity. Under steady checkout load
+ * entries therefore live for about a second: the cache absorbs bursts of the
+ * same query but does not keep results across write-backs.</p>
+ *
+ * <p>The bound is on the total weight of the cached results, normally the
+ * number of products they hold, so a few listings of the whole catalogue
+ * cannot crowd out memory. A result heavier than the whole bound is returned
+ * but not cached.</p>
+ *
+ * @param <V> the cached result type; results must not be modified once cached
+ */
+class QueryCache<V> {
+    private final long maxWeight;
+    private final ToIntFunction<V> weigher;
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxWeight the most weight to keep cached
+     * @param weigher gives the weight of a result; each entry weighs at least 1
+     */
+    QueryCache(long maxWeight, ToIntFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Gets a cached result, computing and caching it if there is no entry for
+     * the current version.
+     *
+     * @param key the normalized query, see {@link #key(Object...)}
+     * @param version the current catalogue version
+     * @param compute computes the result; runs without holding the cache lock
+     * @return the result
+     */
+    V get(String key, long version, Supplier<V> compute) {
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.version == version) {
+                return entry.value;
+            }
+        }
+
+        // A save racing with the computation moves the version on, so the
+        // result is filed under the version read before it started and gets
+        // recomputed by the next request
+        V value = compute.get();
+        Entry<V> entry = new Entry<>(version, value, Math.max(weigher.applyAsInt(value), 1));
+        synchronized (this) {
+            Entry<V> previous = entries.get(key);
+            if (previous != null && previous.version > version) {
+                // A slower request started before a save; keep the newer result
+                return value;
+            }
+            if (previous != null) {
+                entries.remove(key);
+                weight -= previous.weight;
+            }
+            if (entry.weight <= maxWeight) {
+                entries.put(key, entry);
+                weight += entry.weight;
+                evict();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Gets the number of cached results.
+     *
+     * @return the number of entries, current or stale
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        Iterator<Entry<V>> leastRecent = entries.values().iterator();
+        while (weight > maxWeight && leastRecent.hasNext()) {
+            weight -= leastRecent.next().weight;
+            leastRecent.remove();
+        }
+    }
+
+    /**
+     * Builds a cache key from already normalized query parameters.
+     *
+     * @param parts the query parameters; null is kept distinct from empty
+     * @return the key
+     */
+    static String key(Object... parts) {
+        StringBuilder key = new StringBuilder();
+        for (Object part : parts) {
+            key.append(part == null ? "\u0000" : part).append('\u0001');
+        }
+        return key.toString();
+    }
+
+    private static final class Entry<V> {
+        private final long version;
+        private final V value;
+        private final int weight;
+
+        Entry(long version, V value, int weight) {
+            this.version = version;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
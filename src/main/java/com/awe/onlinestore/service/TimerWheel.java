@@ -0,0 +1,119 @@
+package com.awe.onlinestore.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel for expiring large numbers of deadlines cheaply.
+ *
+ * <p>Time is cut into ticks, and each deadline is filed in the slot for its
+ * tick modulo the number of slots. Advancing the wheel visits only the slots
+ * for the ticks that have passed, so the cost of a tick depends on what is
+ * filed in its slot rather than on everything scheduled. A deadline more
+ * than one revolution away stays in its slot until the revolution that
+ * reaches it. Deadlines fire at most one tick late and never early.</p>
+ *
+ * <p>Entries cannot be cancelled; the expiry callback should check that what
+ * it is given is still current. Callbacks run on the thread that advances
+ * the wheel, outside its lock.</p>
+ *
+ * @param <T> the type of the scheduled items
+ */
+class TimerWheel<T> {
+    private final long tickMillis;
+    private final List<ArrayDeque<Entry<T>>> slots;
+    private final Consumer<T> onExpiry;
+
+    /** The next tick to process; every earlier tick has been processed. */
+    private long nextTick;
+    private int size;
+
+    /**
+     * Creates a wheel starting at the given time.
+     *
+     * @param tickMillis the length of a tick
+     * @param slotCount the number of slots, a power of two
+     * @param startMillis the current time
+     * @param onExpiry called with each item whose deadline has passed
+     */
+    TimerWheel(long tickMillis, int slotCount, long startMillis, Consumer<T> onExpiry) {
+        if (tickMillis <= 0 || slotCount <= 0 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("tick must be positive and slots a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.onExpiry = onExpiry;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayDeque<>());
+        }
+        this.nextTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Schedules an item to expire at the given time.
+     *
+     * @param item the item
+     * @param deadlineMillis when it expires
+     */
+    synchronized void schedule(T item, long deadlineMillis) {
+        // Round up, so an item never fires before its deadline
+        long tick = Math.max(Math.floorDiv(deadlineMillis + tickMillis - 1, tickMillis), nextTick);
+        slots.get(slotOf(tick)).add(new Entry<>(item, tick));
+        size++;
+    }
+
+    /**
+     * Expires every item whose deadline is at or before the given time.
+     *
+     * @param nowMillis the current time
+     * @return the number of items expired
+     */
+    int advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        synchronized (this) {
+            long lastTick = nowMillis / tickMillis;
+            // After a full revolution every slot has been visited once
+            long firstTick = Math.max(nextTick, lastTick - slots.size() + 1);
+            for (long tick = firstTick; tick <= lastTick; tick++) {
+                Iterator<Entry<T>> entries = slots.get(slotOf(tick)).iterator();
+                while (entries.hasNext()) {
+                    Entry<T> entry = entries.next();
+                    if (entry.tick <= lastTick) {
+                        entries.remove();
+                        expired.add(entry.item);
+                    }
+                }
+            }
+            nextTick = Math.max(nextTick, lastTick + 1);
+            size -= expired.size();
+        }
+        for (T item : expired) {
+            onExpiry.accept(item);
+        }
+        return expired.size();
+    }
+
+    /**
+     * Gets the number of items waiting to expire.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    private int slotOf(long tick) {
+        return (int) (tick & (slots.size() - 1));
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final long tick;
+
+        Entry(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package com.awe.onlinestore.web;
 
 import com.awe.onlinestore.model.*;
-import com.awe.onlinestore.service.CheckoutService;
+import com.awe.onlinestore.service.CheckoutAdmission;
+import com.awe.onlinestore.service.CheckoutPipeline;
+import com.awe.onlinestore.service.CheckoutRejectedException;
+import com.awe.onlinestore.service.IdempotencyStore;
+import com.awe.onlinestore.service.InventoryService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import javax.servlet.http.HttpSession;
+import java.util.List;
 import java.util.UUID;
 
 @Controller
@@ -15,7 +22,16 @@ import java.util.UUID;
 public class CheckoutController {
     
     @Autowired
-    private CheckoutService checkoutService;
+    private CheckoutPipeline checkoutPipeline;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private CheckoutAdmission checkoutAdmission;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
     
     @GetMapping
     public String checkoutPage(HttpSession session, Model model) {
@@ -24,12 +40,25 @@ public class CheckoutController {
         if (cart == null || cart.isEmpty()) {
             return "redirect:/cart";
         }
+
+        // Left by a failed checkout; shown once
+        Object error = session.getAttribute("checkoutError");
+        if (error != null) {
+            session.removeAttribute("checkoutError");
+            model.addAttribute("error", error);
+        }
         
         // Create guest customer for demo
         Customer guestCustomer = new Customer("GUEST_" + UUID.randomUUID().toString().substring(0, 8),
                                             "guest", "guest", "Guest User", "guest@example.com");
         guestCustomer.addAddress(new Address("", "", "", ""));
         
+        // Hold the cart's stock while the form is filled in, so it cannot sell out meanwhile
+        model.addAttribute("stockHeld", inventoryService.hold(session.getId(), cart.getItems()));
+        model.addAttribute("holdMinutes", inventoryService.getHoldTtlSeconds() / 60);
+        // Sent back with the form, so submitting it twice places one order
+        model.addAttribute("idempotencyKey", UUID.randomUUID().toString());
+
         model.addAttribute("cart", cart);
         model.addAttribute("customer", guestCustomer);
         double subtotal = cart.calculateTotal();
@@ -50,12 +79,107 @@ public class CheckoutController {
                                  @RequestParam String city,
                                  @RequestParam String postcode,
                                  @RequestParam String country,
-                                 HttpSession session,
-                                 Model model) {
+                                 @RequestParam(required = false) String idempotencyKey,
+                                 HttpSession session) {
+        // The order is placed in the background; a repeat of the submission
+        // gets the same order ID back, even though it is already on its way
+        String orderId;
+        try {
+            orderId = idempotencyStore.execute("checkout:" + session.getId(), idempotencyKey,
+                () -> submitCheckout(name, email, street, city, postcode, country, session));
+        } catch (CheckoutRejectedException e) {
+            session.setAttribute("checkoutError", e.getMessage());
+            return "redirect:/checkout";
+        }
+
+        if (orderId == null) {
+            return "redirect:/cart";
+        }
+        return "redirect:/checkout/orders/" + orderId;
+    }
+
+    /**
+     * Shows a submitted checkout: the confirmation once its order is placed,
+     * the checkout page with the reason if it failed, and otherwise a page
+     * that polls until one of those happens. Checkouts submitted from another
+     * session are not found.
+     */
+    @GetMapping("/orders/{orderId}")
+    public String orderStatus(@PathVariable String orderId, HttpSession session, Model model) {
+        CheckoutStatus status = statusFor(orderId, session);
+
+        switch (status.getState()) {
+            case CONFIRMED:
+                // Clear cart after successful order
+                session.removeAttribute("cart");
+                model.addAttribute("order", checkoutPipeline.getOrder(orderId, session.getId()));
+                model.addAttribute("success", true);
+                return "order-confirmation";
+            case FAILED:
+                session.setAttribute("checkoutError", status.getMessage());
+                return "redirect:/checkout";
+            default:
+                model.addAttribute("status", status);
+                return "checkout-pending";
+        }
+    }
+
+    /**
+     * Returns a submitted checkout's status as JSON, for clients that poll
+     * without reloading the page. Checkouts submitted from another session
+     * are not found.
+     */
+    @GetMapping("/orders/{orderId}/status")
+    @ResponseBody
+    public CheckoutStatus checkoutStatus(@PathVariable String orderId, HttpSession session) {
+        return statusFor(orderId, session);
+    }
+
+    /**
+     * Returns the checkout pipeline's stages as JSON, in pipeline order.
+     */
+    @GetMapping("/pipeline")
+    @ResponseBody
+    public List<PipelineStageMetrics> pipelineMetrics() {
+        return checkoutPipeline.getMetrics();
+    }
+
+    /**
+     * Returns the checkout admission lanes as JSON, busiest first.
+     */
+    @GetMapping("/metrics")
+    @ResponseBody
+    public List<AdmissionMetrics> admissionMetrics(@RequestParam(defaultValue = "20") int limit) {
+        return checkoutAdmission.getMetrics(limit);
+    }
+
+    /**
+     * Gets the status of a checkout submitted from this session.
+     *
+     * @throws ResponseStatusException with 404 if there is no such checkout
+     *         or another session submitted it
+     */
+    private CheckoutStatus statusFor(String orderId, HttpSession session) {
+        CheckoutStatus status = checkoutPipeline.getStatus(orderId, session.getId());
+        if (status == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No such order");
+        }
+        return status;
+    }
+
+    /**
+     * Hands the session's cart to the checkout pipeline. The cart is cleared
+     * once the order is confirmed, so it is still there if checkout fails.
+     *
+     * @return the ID the order will have, or null if the cart is empty
+     * @throws CheckoutRejectedException if the pipeline is too busy
+     */
+    private String submitCheckout(String name, String email, String street, String city,
+                                  String postcode, String country, HttpSession session) {
         Cart cart = (Cart) session.getAttribute("cart");
         
         if (cart == null || cart.isEmpty()) {
-            return "redirect:/cart";
+            return null;
         }
         
         // Create customer with form data
@@ -66,20 +190,6 @@ public class CheckoutController {
         Address address = new Address(street, city, postcode, country);
         customer.addAddress(address);
         
-        // Process checkout
-        Order order = checkoutService.processCheckout(cart, customer, address);
-        
-        if (order != null) {
-            model.addAttribute("order", order);
-            model.addAttribute("success", true);
-            
-            // Clear cart after successful order
-            session.removeAttribute("cart");
-            
-            return "order-confirmation";
-        } else {
-            model.addAttribute("error", "Checkout failed. Please try again.");
-            return "redirect:/checkout";
-        }
+        return checkoutPipeline.submit(cart, customer, address, session.getId());
     }
 }
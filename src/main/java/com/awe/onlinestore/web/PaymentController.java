@@ -2,6 +2,7 @@
 package com.awe.onlinestore.web;
 
 import com.awe.onlinestore.model.*;
+import com.awe.onlinestore.service.IdempotencyStore;
 import com.awe.onlinestore.service.PaymentService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -14,6 +15,9 @@ public class PaymentController {
     
     @Autowired
     private PaymentService paymentService;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
     
     @PostMapping("/process")
     public String processPayment(@RequestParam String orderId,
@@ -24,38 +28,22 @@ public class PaymentController {
                                 @RequestParam(required = false) String cvv,
                                 @RequestParam(required = false) String chequeNumber,
                                 @RequestParam(required = false) String bankName,
+                                @RequestParam(required = false) String idempotencyKey,
                                 Model model) {
         
-        // In a real app, you would get the order from database
-        // For demo, we'll create a mock order
-        Order order = new Order(orderId, new Customer(), new Address());
-        order.setTotalAmount(100.0); // Mock amount
-        
-        Payment payment = null;
-        boolean paymentSuccess = false;
+        if (!"card".equals(paymentMethod) && !"cheque".equals(paymentMethod)) {
+            model.addAttribute("error", "Invalid payment method");
+            return "payment-error";
+        }
         
         try {
-            switch (paymentMethod) {
-                case "card":
-                    if (paymentService.validateCardDetails(cardNumber, expiryDate, cardHolderName, cvv)) {
-                        payment = paymentService.createCardPayment(cardNumber, expiryDate, cardHolderName, cvv);
-                        paymentSuccess = paymentService.processPayment(order, payment);
-                    }
-                    break;
-                    
-                case "cheque":
-                    if (paymentService.validateChequeDetails(chequeNumber, bankName)) {
-                        payment = paymentService.createChequePayment(chequeNumber, bankName);
-                        paymentSuccess = paymentService.processPayment(order, payment);
-                    }
-                    break;
-                    
-                default:
-                    model.addAttribute("error", "Invalid payment method");
-                    return "payment-error";
-            }
+            // A repeat of a submission that went through gets the same payment
+            // back instead of paying twice
+            Payment payment = idempotencyStore.execute("payment:" + orderId, idempotencyKey,
+                () -> pay(orderId, paymentMethod, cardNumber, expiryDate, cardHolderName, cvv,
+                          chequeNumber, bankName));
             
-            if (paymentSuccess) {
+            if (payment != null) {
                 model.addAttribute("orderId", orderId);
                 model.addAttribute("payment", payment);
                 return "payment-success";
@@ -69,4 +57,41 @@ public class PaymentController {
             return "payment-error";
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Validates the payment details and takes the payment.
+     *
+     * @return the payment, or null if the details were invalid or it failed
+     */
+    private Payment pay(String orderId, String paymentMethod, String cardNumber, String expiryDate,
+                        String cardHolderName, String cvv, String chequeNumber, String bankName) {
+        // In a real app, you would get the order from database
+        // For demo, we'll create a mock order
+        Order order = new Order(orderId, new Customer(), new Address());
+        order.setTotalAmount(100.0); // Mock amount
+        
+        Payment payment = null;
+        boolean paymentSuccess = false;
+        
+        switch (paymentMethod) {
+            case "card":
+                if (paymentService.validateCardDetails(cardNumber, expiryDate, cardHolderName, cvv)) {
+                    payment = paymentService.createCardPayment(cardNumber, expiryDate, cardHolderName, cvv);
+                    paymentSuccess = paymentService.processPayment(order, payment);
+                }
+                break;
+                
+            case "cheque":
+                if (paymentService.validateChequeDetails(chequeNumber, bankName)) {
+                    payment = paymentService.createChequePayment(chequeNumber, bankName);
+                    paymentSuccess = paymentService.processPayment(order, payment);
+                }
+                break;
+                
+            default:
+                break;
+        }
+        
+        return paymentSuccess ? payment : null;
+    }
+}
@@ -1,6 +1,7 @@
 package com.awe.onlinestore.web;
 
 import com.awe.onlinestore.model.Product;
+import com.awe.onlinestore.model.ProductPage;
 import com.awe.onlinestore.service.CatalogueService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -24,6 +25,9 @@ public class ProductController {
             @RequestParam(required = false) Boolean inStockOnly,
             @RequestParam(required = false) String sortBy,
             @RequestParam(required = false) String sortOrder,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "24") int size,
+            @RequestParam(required = false) String after,
             Model model) {
         
         // Default values
@@ -31,12 +35,15 @@ public class ProductController {
         if (sortBy == null) sortBy = "name";
         if (sortOrder == null) sortOrder = "asc";
         
-        List<Product> products = catalogueService.getFilteredAndSortedProducts(
-            category, minPrice, maxPrice, inStockOnly, sortBy, sortOrder);
+        ProductPage productPage = catalogueService.getProductPage(
+            category, minPrice, maxPrice, inStockOnly, sortBy, sortOrder, page, size, after);
         
         double[] priceRange = catalogueService.getPriceRange();
         
-        model.addAttribute("products", products);
+        model.addAttribute("products", productPage.getProducts());
+        model.addAttribute("productPage", productPage);
+        model.addAttribute("totalProducts", productPage.getTotalCount());
+        model.addAttribute("facets", catalogueService.getProductFacets(category, minPrice, maxPrice, inStockOnly));
         model.addAttribute("categories", catalogueService.getAllCategories());
         model.addAttribute("selectedCategory", category);
         model.addAttribute("minPrice", minPrice);
@@ -51,12 +58,21 @@ public class ProductController {
     }
     
     @GetMapping("/search")
-    public String searchProducts(@RequestParam String query, Model model) {
-        List<Product> products = catalogueService.searchProducts(query);
+    public String searchProducts(@RequestParam String query,
+                                 @RequestParam(defaultValue = "false") boolean fuzzy,
+                                 Model model) {
+        List<Product> products = catalogueService.searchProducts(query, fuzzy);
+        // Nothing matched as typed: look for misspellings before giving up
+        boolean corrected = false;
+        if (products.isEmpty() && !fuzzy) {
+            products = catalogueService.searchProducts(query, true);
+            corrected = !products.isEmpty();
+        }
         double[] priceRange = catalogueService.getPriceRange();
         
         model.addAttribute("products", products);
         model.addAttribute("searchQuery", query);
+        model.addAttribute("fuzzyResults", corrected);
         model.addAttribute("categories", catalogueService.getAllCategories());
         model.addAttribute("minPriceRange", priceRange[0]);
         model.addAttribute("maxPriceRange", priceRange[1]);
@@ -64,10 +80,20 @@ public class ProductController {
         return "products";
     }
     
+    /**
+     * Returns product name completions for the search box as JSON.
+     */
+    @GetMapping("/suggest")
+    @ResponseBody
+    public List<String> suggestProducts(@RequestParam String q,
+                                        @RequestParam(defaultValue = "8") int limit) {
+        return catalogueService.suggestProductNames(q, limit);
+    }
+    
     @GetMapping("/category/{category}")
     public String productsByCategory(@PathVariable String category, Model model) {
         List<Product> products = catalogueService.getProductsByCategory(category);
-        double[] priceRange = catalogueService.getPriceRange();
+        double[] priceRange = catalogueService.getPriceRange(category);
         
         model.addAttribute("products", products);
         model.addAttribute("category", category);
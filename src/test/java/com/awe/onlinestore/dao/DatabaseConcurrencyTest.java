@@ -0,0 +1,157 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Address;
+import com.awe.onlinestore.model.Customer;
+import com.awe.onlinestore.model.Order;
+import com.awe.onlinestore.model.OrderItem;
+import com.awe.onlinestore.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test for concurrent use of the Database.
+ * Writers keep re-saving products and orders while readers list, search and
+ * look them up, and a compaction runs part-way through; every read must see
+ * a whole saved version and nothing may be lost on restart.
+ */
+class DatabaseConcurrencyTest {
+    private static final int PRODUCTS = 50;
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int SAVES_PER_WRITER = 500;
+
+    @TempDir
+    Path dataDir;
+
+    private Database database;
+
+    @BeforeEach
+    void setUp() {
+        database = new Database(dataDir.toString(), 1);
+        database.init();
+        for (int i = 0; i < PRODUCTS; i++) {
+            database.saveProduct(stressProduct(i, 0));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void testConcurrentReadsAndWritesKeepRecordsWhole() throws Exception {
+        // Arrange
+        int expectedProducts = database.getAllProducts().size();
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Queue<String> violations = new ConcurrentLinkedQueue<>();
+        List<Future<?>> writers = new ArrayList<>();
+        List<Future<?>> others = new ArrayList<>();
+
+        // Act
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < SAVES_PER_WRITER; i++) {
+                    database.saveProduct(stressProduct((writer + i) % PRODUCTS, i));
+                    database.saveOrder(stressOrder("ORD_W" + writer + "_" + i, (writer + i) % PRODUCTS, i));
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            others.add(pool.submit(() -> {
+                start.await();
+                while (writing.get()) {
+                    List<Product> all = database.getAllProducts();
+                    if (all.size() != expectedProducts) {
+                        violations.add("listing saw " + all.size() + " products");
+                    }
+                    all.forEach(product -> checkWhole(product, violations));
+                    database.searchProducts("stress").forEach(product -> checkWhole(product, violations));
+                    checkWhole(database.getProduct("PS7"), violations);
+                    Order order = database.getOrder("ORD_W0_0");
+                    if (order != null && order.getItems().size() != 1) {
+                        violations.add("order ORD_W0_0 has " + order.getItems().size() + " items");
+                    }
+                }
+                return null;
+            }));
+        }
+        others.add(pool.submit(() -> {
+            start.await();
+            database.compactJournals(1);
+            return null;
+        }));
+
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        for (Future<?> other : others) {
+            other.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // Assert
+        assertTrue(violations.isEmpty(), "Inconsistent reads: " + violations);
+        database.shutdown();
+        database = new Database(dataDir.toString(), 1);
+        database.init();
+        assertEquals(expectedProducts, database.getAllProducts().size());
+        for (int w = 0; w < WRITERS; w++) {
+            for (int i = 0; i < SAVES_PER_WRITER; i++) {
+                assertNotNull(database.getOrder("ORD_W" + w + "_" + i), "lost order ORD_W" + w + "_" + i);
+            }
+        }
+        database.getAllProducts().forEach(product -> checkWhole(product, violations));
+        assertTrue(violations.isEmpty(), "Inconsistent records after restart: " + violations);
+    }
+
+    /**
+     * Every stress product is saved with price, stock and description derived
+     * from the same revision, so a read mixing two saves is detectable.
+     */
+    private static Product stressProduct(int index, int revision) {
+        return new Product("PS" + index, "Stress product " + index, "Revision " + revision,
+                           "Stress", 100.0 + revision, revision);
+    }
+
+    private static Order stressOrder(String orderId, int productIndex, int revision) {
+        Customer customer = new Customer("C_STRESS", "stress", "secret", "Stress Tester", "stress@example.com");
+        Address address = new Address("1 Test St", "Melbourne", "3000", "Australia");
+        customer.addAddress(address);
+        Order order = new Order(orderId, customer, address);
+        order.addItem(new OrderItem(stressProduct(productIndex, revision), 1));
+        return order;
+    }
+
+    private static void checkWhole(Product product, Queue<String> violations) {
+        if (product == null || !product.getProductId().startsWith("PS")) {
+            return;
+        }
+        int revision = product.getStockQuantity();
+        if (product.getPrice() != 100.0 + revision || !product.getDescription().equals("Revision " + revision)) {
+            violations.add(product.getProductId() + " mixes revisions: price " + product.getPrice()
+                           + ", stock " + revision + ", " + product.getDescription());
+        }
+    }
+}
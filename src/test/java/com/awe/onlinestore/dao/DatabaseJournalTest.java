@@ -0,0 +1,538 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Address;
+import com.awe.onlinestore.model.ChequeDetails;
+import com.awe.onlinestore.model.Customer;
+import com.awe.onlinestore.model.Order;
+import com.awe.onlinestore.model.OrderItem;
+import com.awe.onlinestore.model.Payment;
+import com.awe.onlinestore.model.Product;
+import com.awe.onlinestore.model.StockEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the journaled persistence in Database.
+ * Tests that saves survive a restart, that a torn journal tail is ignored
+ * that compaction folds the journal into the snapshot and that concurrent
+ * saves are coalesced into group commits. Also tests that a unit of work is
+ * written and replayed as one.
+ */
+class DatabaseJournalTest {
+
+    @TempDir
+    Path dataDir;
+
+    private Database database;
+
+    @BeforeEach
+    void setUp() {
+        database = new Database(dataDir.toString(), 1);
+        database.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void testSavesAreReplayedAfterRestart() {
+        // Arrange
+        Product product = new Product("P900", "Test Phone", "Journal test", "Smartphones", 999.00, 7);
+        database.saveProduct(product);
+        product.decreaseStock(2);
+        database.saveProduct(product);
+
+        Customer customer = new Customer("C900", "tester", "secret", "Test User", "test@example.com");
+        Address address = new Address("1 Test St", "Melbourne", "3000", "Australia");
+        Order order = new Order("ORD_TEST", customer, address);
+        order.addItem(new OrderItem(product, 2));
+        order.confirmOrder();
+        database.saveOrder(order);
+
+        // Act
+        Database reopened = restart();
+
+        // Assert
+        Product replayed = reopened.getProduct("P900");
+        assertNotNull(replayed);
+        assertEquals(5, replayed.getStockQuantity()); // latest record wins
+        assertNotNull(reopened.getOrder("ORD_TEST"));
+        assertEquals(2, reopened.getOrder("ORD_TEST").getItems().get(0).getQuantity());
+        reopened.shutdown();
+    }
+
+    @Test
+    void testTornJournalTailIsDiscarded() throws Exception {
+        // Arrange
+        database.saveProduct(new Product("P901", "Test Tablet", "Journal test", "Tablets", 499.00, 3));
+        database.shutdown();
+        try (RandomAccessFile log = new RandomAccessFile(dataDir.resolve("products.log").toFile(), "rw")) {
+            log.seek(log.length());
+            log.writeInt(1_000); // frame header promising more bytes than were written
+            log.writeInt(0);
+        }
+
+        // Act
+        database = new Database(dataDir.toString(), 1);
+        database.init();
+        database.saveProduct(new Product("P902", "Test Watch", "Journal test", "Wearables", 299.00, 4));
+        Database reopened = restart();
+
+        // Assert
+        assertNotNull(reopened.getProduct("P901"));
+        assertNotNull(reopened.getProduct("P902"));
+        reopened.shutdown();
+    }
+
+    @Test
+    void testUndecodableRecordFailsStartupWithoutTruncating() throws Exception {
+        // Arrange
+        database.saveProduct(new Product("P901", "Test Tablet", "Journal test", "Tablets", 499.00, 3));
+        database.shutdown();
+        Path log = dataDir.resolve("products.log");
+        byte[] intact = Files.readAllBytes(log);
+        byte[] payload = {(byte) 0x7F, 1}; // a record version this build does not know
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.seek(file.length());
+            file.writeInt(payload.length);
+            file.writeInt((int) crc.getValue());
+            file.write(payload);
+        }
+        long size = Files.size(log);
+
+        // Act
+        Database broken = new Database(dataDir.toString(), 1);
+
+        // Assert
+        assertThrows(UncheckedIOException.class, broken::init);
+        assertEquals(size, Files.size(log));
+
+        Files.write(log, intact);
+        database = new Database(dataDir.toString(), 1);
+        database.init();
+        assertNotNull(database.getProduct("P901"));
+    }
+
+    @Test
+    void testFailedGroupCommitIsRolledBack() throws Exception {
+        // Arrange
+        Path path = dataDir.resolve("flaky.log");
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        Journal<Product> journal = new Journal<Product>(path, ModelCodecs.products()) {
+            @Override
+            void write(List<byte[]> frames) throws IOException {
+                if (failNext.getAndSet(false)) {
+                    // Part of the batch reaches the file before the disk gives out
+                    super.write(Collections.singletonList(Arrays.copyOf(frames.get(0), 5)));
+                    throw new IOException("No space left on device");
+                }
+                super.write(frames);
+            }
+        };
+        GroupCommitter committer = new GroupCommitter(0);
+
+        // Act
+        CompletableFuture<Void> failed = committer.submit(journal,
+            journal.frame(new Product("P901", "Test Tablet", "Journal test", "Tablets", 499.00, 3)));
+        assertThrows(CompletionException.class, failed::join);
+        committer.submit(journal,
+            journal.frame(new Product("P902", "Test Watch", "Journal test", "Wearables", 299.00, 4))).join();
+        committer.close();
+        journal.close();
+
+        // Assert
+        List<String> replayed = new ArrayList<>();
+        try (Journal<Product> reopened = new Journal<>(path, ModelCodecs.products())) {
+            reopened.replay(product -> replayed.add(product.getProductId()), id -> { });
+        }
+        assertEquals(Collections.singletonList("P902"), replayed);
+    }
+
+    @Test
+    void testCompactionFoldsJournalIntoSnapshot() throws Exception {
+        // Arrange
+        Product product = new Product("P903", "Test Laptop", "Journal test", "Laptops", 1999.00, 6);
+        database.saveProduct(product).join();
+
+        // Act
+        database.compactJournals(1);
+        product.decreaseStock(1);
+        database.saveProduct(product).join();
+
+        // Assert
+        assertTrue(Files.exists(dataDir.resolve("products.tbl")));
+        assertFalse(Files.exists(dataDir.resolve("products.log.compacting")));
+        assertTrue(Files.size(dataDir.resolve("products.log")) > 0); // only the post-snapshot save
+        Database reopened = restart();
+        assertEquals(5, reopened.getProduct("P903").getStockQuantity());
+        assertEquals(18, reopened.getAllProducts().size()); // 17 sample products + P903
+    }
+
+    @Test
+    void testCatalogueVersionMovesOnSaveAndDelete() {
+        // Arrange
+        long initial = database.getCatalogueVersion();
+
+        // Act
+        database.saveProduct(new Product("P905", "Test Tablet", "Journal test", "Tablets", 5.00, 2));
+        long afterSave = database.getCatalogueVersion();
+        database.deleteProduct("P905");
+        database.deleteProduct("P905"); // already gone, nothing changes
+
+        // Assert
+        assertTrue(afterSave > initial);
+        assertEquals(afterSave + 1, database.getCatalogueVersion());
+    }
+
+    @Test
+    void testDeletedProductStaysDeletedAfterRestart() {
+        // Arrange
+        database.saveProduct(new Product("P904", "Test Speaker", "Journal test", "Audio", 5.00, 2));
+
+        // Act
+        database.deleteProduct("P904").join();
+        database.compactJournals(1);
+        database.deleteProduct("P001").join(); // only in the journal tail
+        Database reopened = restart();
+
+        // Assert
+        assertNull(reopened.getProduct("P904"));
+        assertNull(reopened.getProduct("P001"));
+        assertEquals(16, reopened.getAllProducts().size());
+        assertFalse(reopened.getCategories().contains("Audio"));
+        assertEquals(499.00, reopened.getPriceRange(null)[0], 0.001);
+    }
+
+    @Test
+    void testConcurrentSavesShareGroupCommits() throws Exception {
+        // Arrange
+        database.shutdown();
+        database = new Database(dataDir.toString(), 20);
+        database.init();
+        long commitsBefore = database.getGroupCommitCount();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<Void>> durable = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 200; i++) {
+            Product product = new Product("PG" + i, "Group " + i, "Group commit test", "Tablets", 100.0 + i, 1);
+            durable.add(CompletableFuture.supplyAsync(() -> database.saveProduct(product), pool)
+                .thenCompose(future -> future));
+        }
+        CompletableFuture.allOf(durable.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        // Assert
+        long groupCommits = database.getGroupCommitCount() - commitsBefore;
+        assertTrue(groupCommits < 200, "Saves should be coalesced, got " + groupCommits + " commits");
+        Database reopened = restart();
+        assertNotNull(reopened.getProduct("PG199"));
+    }
+
+    @Test
+    void testStockEventsAreReplayedAfterRestart() {
+        // Arrange
+        database.saveProduct(new Product("P900", "Test Phone", "Ledger test", "Smartphones", 999.00, 10));
+        database.recordStockEvent("P900", StockEvent.Type.RESTOCK, 5);
+        database.recordStockEvent("P900", StockEvent.Type.RESERVE, 3);
+        database.recordStockEvent("P900", StockEvent.Type.COMMIT, 3);
+        database.recordStockEvent("P900", StockEvent.Type.RESERVE, 2);
+        database.recordStockEvent("P900", StockEvent.Type.RELEASE, 2).join();
+        int beforeRestart = database.getUnreservedStock("P900");
+
+        // Act
+        Database reopened = restart();
+
+        // Assert
+        assertEquals(12, beforeRestart);
+        assertEquals(12, reopened.getUnreservedStock("P900"));
+        assertEquals(12, reopened.getProduct("P900").getStockQuantity()); // catalogue brought in line
+        List<StockEvent> history = reopened.getStockHistory("P900");
+        assertEquals(6, history.size());
+        assertEquals(StockEvent.Type.OPENING, history.get(0).getType());
+        assertEquals(10, history.get(0).getQuantity());
+        for (int i = 1; i < history.size(); i++) {
+            assertTrue(history.get(i).getSequence() > history.get(i - 1).getSequence());
+        }
+    }
+
+    @Test
+    void testOpenReservationIsReleasedOnRestart() {
+        // Arrange
+        database.saveProduct(new Product("P900", "Test Phone", "Ledger test", "Smartphones", 999.00, 10));
+        database.recordStockEvent("P900", StockEvent.Type.RESERVE, 4).join();
+
+        // Act
+        Database reopened = restart();
+
+        // Assert
+        assertEquals(10, reopened.getUnreservedStock("P900"));
+        List<StockEvent> history = reopened.getStockHistory("P900");
+        StockEvent last = history.get(history.size() - 1);
+        assertEquals(StockEvent.Type.RELEASE, last.getType());
+        assertEquals(4, last.getQuantity());
+    }
+
+    @Test
+    void testUnitOfWorkIsReplayedAfterRestart() throws Exception {
+        // Arrange
+        Product product = new Product("P900", "Test Phone", "Unit of work test", "Smartphones", 999.00, 10);
+        database.saveProduct(product);
+        database.recordStockEvent("P900", StockEvent.Type.RESERVE, 3);
+        Order order = testOrder("ORD_UOW", product, 3);
+        Payment payment = new ChequeDetails("PAY_UOW", 2997.00, "ORD_UOW", "000123", "Test Bank");
+        UnitOfWork unitOfWork = database.beginUnitOfWork();
+        unitOfWork.saveOrder(order);
+        unitOfWork.savePayment(payment);
+        unitOfWork.recordStockEvent("P900", StockEvent.Type.COMMIT, 3);
+
+        // Act
+        unitOfWork.commit().join();
+        long transactionLogSize = Files.size(dataDir.resolve("transactions.log"));
+        Database reopened = restart();
+
+        // Assert
+        assertTrue(transactionLogSize > 0);
+        assertEquals(0, Files.size(dataDir.resolve("orders.log"))); // no separate order write
+        assertNotNull(reopened.getOrder("ORD_UOW"));
+        assertNotNull(reopened.getPayment("PAY_UOW"));
+        assertEquals(7, reopened.getUnreservedStock("P900"));
+        List<StockEvent> history = reopened.getStockHistory("P900");
+        assertEquals(StockEvent.Type.COMMIT, history.get(history.size() - 1).getType());
+        assertThrows(IllegalStateException.class, unitOfWork::commit);
+    }
+
+    @Test
+    void testCompactionFoldsTransactionsIntoLedger() throws Exception {
+        // Arrange
+        Product product = new Product("P900", "Test Phone", "Unit of work test", "Smartphones", 999.00, 10);
+        database.saveProduct(product);
+        database.recordStockEvent("P900", StockEvent.Type.RESERVE, 2);
+        UnitOfWork unitOfWork = database.beginUnitOfWork();
+        unitOfWork.saveOrder(testOrder("ORD_FOLD", product, 2));
+        unitOfWork.recordStockEvent("P900", StockEvent.Type.COMMIT, 2);
+        unitOfWork.commit().join();
+
+        // Act
+        database.compactJournals(1);
+
+        // Assert
+        assertEquals(0, Files.size(dataDir.resolve("transactions.log")));
+        assertFalse(Files.exists(dataDir.resolve("transactions.log.compacting")));
+        assertEquals(3, database.getStockHistory("P900").size()); // opening, reserve, commit
+        Database reopened = restart();
+        assertNotNull(reopened.getOrder("ORD_FOLD"));
+        assertEquals(8, reopened.getUnreservedStock("P900"));
+        assertEquals(3, reopened.getStockHistory("P900").size());
+    }
+
+    @Test
+    void testInterruptedFoldIsNotCountedTwice() throws Exception {
+        // Arrange
+        Product product = new Product("P900", "Test Phone", "Unit of work test", "Smartphones", 999.00, 10);
+        database.saveProduct(product);
+        database.recordStockEvent("P900", StockEvent.Type.RESERVE, 2);
+        UnitOfWork unitOfWork = database.beginUnitOfWork();
+        unitOfWork.saveOrder(testOrder("ORD_FOLD", product, 2));
+        unitOfWork.recordStockEvent("P900", StockEvent.Type.COMMIT, 2);
+        unitOfWork.commit().join();
+        byte[] segment = Files.readAllBytes(dataDir.resolve("transactions.log"));
+        database.shutdown(); // folds the transaction into the ledger
+
+        // Act
+        // As if the crash came after the fold but before the segment was deleted
+        Files.write(dataDir.resolve("transactions.log.compacting"), segment);
+        database = new Database(dataDir.toString(), 1);
+        database.init();
+
+        // Assert
+        assertFalse(Files.exists(dataDir.resolve("transactions.log.compacting")));
+        assertEquals(8, database.getUnreservedStock("P900"));
+        assertEquals(3, database.getStockHistory("P900").size());
+        assertNotNull(database.getOrder("ORD_FOLD"));
+    }
+
+    @Test
+    void testLedgerStartsFromItsCheckpoint() throws Exception {
+        // Arrange
+        Product product = new Product("P900", "Test Phone", "Checkpoint test", "Smartphones", 999.00, 10);
+        database.saveProduct(product);
+        database.recordStockEvent("P900", StockEvent.Type.RESERVE, 3);
+        UnitOfWork unitOfWork = database.beginUnitOfWork();
+        unitOfWork.saveOrder(testOrder("ORD_CKPT", product, 3));
+        unitOfWork.recordStockEvent("P900", StockEvent.Type.COMMIT, 3);
+        unitOfWork.commit().join();
+        database.shutdown(); // folds the events and checkpoints the ledger
+
+        // Act
+        // Startup must not need the history at all
+        Files.delete(dataDir.resolve("inventory.ledger"));
+        database = new Database(dataDir.toString(), 1);
+        database.init();
+
+        // Assert
+        assertTrue(Files.exists(dataDir.resolve("inventory.dat")));
+        assertEquals(7, database.getUnreservedStock("P900"));
+        assertTrue(database.getStockHistory("P900").isEmpty());
+    }
+
+    @Test
+    void testLedgerIsRebuiltWithoutCheckpoint() throws Exception {
+        // Arrange
+        Product product = new Product("P900", "Test Phone", "Checkpoint test", "Smartphones", 999.00, 10);
+        database.saveProduct(product);
+        database.recordStockEvent("P900", StockEvent.Type.RESERVE, 3);
+        UnitOfWork unitOfWork = database.beginUnitOfWork();
+        unitOfWork.saveOrder(testOrder("ORD_CKPT", product, 3));
+        unitOfWork.recordStockEvent("P900", StockEvent.Type.COMMIT, 3);
+        unitOfWork.commit().join();
+        database.shutdown();
+
+        // Act
+        Files.delete(dataDir.resolve("inventory.dat"));
+        database = new Database(dataDir.toString(), 1);
+        database.init();
+
+        // Assert
+        assertTrue(Files.exists(dataDir.resolve("inventory.dat")));
+        assertEquals(7, database.getUnreservedStock("P900"));
+        assertEquals(3, database.getStockHistory("P900").size());
+    }
+
+    @Test
+    void testStockSavedWithProductIsNotRevertedOnRestart() {
+        // Arrange
+        Product product = new Product("P900", "Test Phone", "Ledger test", "Smartphones", 999.00, 10);
+        database.saveProduct(product);
+        database.recordStockEvent("P900", StockEvent.Type.RESERVE, 2);
+        database.recordStockEvent("P900", StockEvent.Type.COMMIT, 2).join();
+        database.saveStockLevel("P900", 8); // as the inventory service writes it back
+        product.setStockQuantity(15);
+        database.saveProduct(product).join();
+
+        // Act
+        Database reopened = restart();
+
+        // Assert
+        assertEquals(15, reopened.getProduct("P900").getStockQuantity());
+        assertEquals(15, reopened.getUnreservedStock("P900"));
+        List<StockEvent> history = reopened.getStockHistory("P900");
+        StockEvent last = history.get(history.size() - 1);
+        assertEquals(StockEvent.Type.RESTOCK, last.getType());
+        assertEquals(7, last.getQuantity());
+    }
+
+    @Test
+    void testStockSavedWithProductGoesThroughStockKeeper() {
+        // Arrange
+        Product product = new Product("P900", "Test Phone", "Ledger test", "Smartphones", 999.00, 10);
+        database.saveProduct(product).join();
+        List<String> handed = new ArrayList<>();
+        database.setStockKeeper((productId, level) -> {
+            handed.add(productId + "=" + level);
+            return level - 1;
+        });
+
+        // Act
+        product.setStockQuantity(15);
+        database.saveProduct(product).join();
+
+        // Assert
+        assertEquals(Collections.singletonList("P900=15"), handed);
+        assertEquals(14, database.getProduct("P900").getStockQuantity());
+        assertTrue(database.getStockHistory("P900").isEmpty()); // recording is up to the keeper
+    }
+
+    @Test
+    void testFailedCommitLeavesNoTrace() throws Exception {
+        // Arrange
+        Path logDir = Files.createDirectory(dataDir.resolve("failing"));
+        GroupCommitter committer = new GroupCommitter(0);
+        BinaryCodec<Order> orderCodec = ModelCodecs.orders(productId -> null, customerId -> null);
+        BinaryCodec<Payment> paymentCodec = ModelCodecs.payments();
+        EntityStore<Order> orders = new EntityStore<>(logDir.toString(), "orders", orderCodec,
+                                                      Order::getOrderId, committer);
+        EntityStore<Payment> payments = new EntityStore<>(logDir.toString(), "payments", paymentCodec,
+                                                          Payment::getPaymentId, committer);
+        InventoryLedger ledger = new InventoryLedger(logDir.resolve("inventory.ledger"),
+                                                     logDir.resolve("inventory.dat"));
+        TransactionLog transactionLog = new TransactionLog(logDir.toString(),
+            ModelCodecs.transactions(orderCodec, paymentCodec), committer, orders, payments, ledger,
+            productId -> 10);
+        orders.open();
+        payments.open();
+        transactionLog.open();
+        transactionLog.commit(Collections.emptyList(), Collections.emptyList(), Collections.singletonList(
+            new StockEvent(0, 0, "P900", StockEvent.Type.RESERVE, 3))).join();
+        committer.close(); // every later group commit fails
+
+        // Act
+        Product product = new Product("P900", "Test Phone", "Failure test", "Smartphones", 999.00, 10);
+        CompletableFuture<Void> failed = transactionLog.commit(
+            Collections.singletonList(testOrder("ORD_FAIL", product, 3)), Collections.emptyList(),
+            Collections.singletonList(new StockEvent(0, 0, "P900", StockEvent.Type.COMMIT, 3)));
+
+        // Assert
+        assertThrows(CompletionException.class, failed::join);
+        assertNull(orders.get("ORD_FAIL"));
+        assertEquals(Integer.valueOf(10), ledger.onHand().get("P900"));
+        assertEquals(7, ledger.unreserved("P900"));
+        transactionLog.close();
+        ledger.close();
+        orders.close();
+        payments.close();
+    }
+
+    @Test
+    void testUnreservedStockFallsBackToCatalogue() {
+        // Arrange
+        database.saveProduct(new Product("P900", "Test Phone", "Ledger test", "Smartphones", 999.00, 10));
+
+        // Act
+        int unreserved = database.getUnreservedStock("P900");
+
+        // Assert
+        assertEquals(10, unreserved);
+        assertEquals(-1, database.getUnreservedStock("P999"));
+        assertTrue(database.getStockHistory("P900").isEmpty());
+    }
+
+    private static Order testOrder(String orderId, Product product, int quantity) {
+        Customer customer = new Customer("C900", "tester", "secret", "Test User", "test@example.com");
+        Order order = new Order(orderId, customer, new Address("1 Test St", "Melbourne", "3000", "Australia"));
+        order.addItem(new OrderItem(product, quantity));
+        order.confirmOrder();
+        return order;
+    }
+
+    private Database restart() {
+        database.shutdown();
+        Database reopened = new Database(dataDir.toString(), 1);
+        reopened.init();
+        database = reopened;
+        return reopened;
+    }
+}
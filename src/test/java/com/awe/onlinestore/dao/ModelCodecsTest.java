@@ -0,0 +1,153 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.DataInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the binary model codecs and the legacy snapshot migration.
+ */
+class ModelCodecsTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void testProductRoundTrip() throws Exception {
+        // Arrange
+        BinaryCodec<Product> codec = ModelCodecs.products();
+        Product product = new Product("P001", "iPhone 17 Pro", "Flagship – A19 chip", "Smartphones", 1899.00, 40);
+
+        // Act
+        Product decoded = codec.decode(codec.encode(product));
+
+        // Assert
+        assertEquals("P001", decoded.getProductId());
+        assertEquals("iPhone 17 Pro", decoded.getName());
+        assertEquals("Flagship – A19 chip", decoded.getDescription());
+        assertEquals("Smartphones", decoded.getCategory());
+        assertEquals(1899.00, decoded.getPrice(), 0.001);
+        assertEquals(40, decoded.getStockQuantity());
+    }
+
+    @Test
+    void testOrderRoundTripResolvesCatalogueProducts() throws Exception {
+        // Arrange
+        Product phone = new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, 40);
+        Map<String, Product> catalogue = new HashMap<>();
+        catalogue.put("P001", phone);
+        Customer customer = new Customer("C001", "john_doe", "password123", "John Doe", "john.doe@email.com");
+        Address address = new Address("123 Main St", "Melbourne", "3000", "Australia");
+        customer.addAddress(address);
+        Map<String, Customer> accounts = new HashMap<>();
+        accounts.put("C001", customer);
+        BinaryCodec<Order> codec = ModelCodecs.orders(catalogue::get, accounts::get);
+
+        Order order = new Order("ORD_1", customer, address);
+        order.addItem(new OrderItem(phone, 2));
+        order.addItem(new OrderItem(new Product("P404", "Retired Phone", "Gone", "Smartphones", 99.00, 0), 1));
+        order.confirmOrder();
+
+        // Act
+        byte[] encoded = codec.encode(order);
+        Order decoded = codec.decode(encoded);
+        Order orphaned = ModelCodecs.orders(catalogue::get, customerId -> null).decode(encoded);
+
+        // Assert
+        assertEquals("ORD_1", decoded.getOrderId());
+        assertEquals(OrderStatus.CONFIRMED, decoded.getStatus());
+        assertEquals(order.getOrderDate(), decoded.getOrderDate());
+        assertEquals(order.getTotalAmount(), decoded.getTotalAmount(), 0.001);
+        assertSame(customer, decoded.getCustomer());
+        assertFalse(new String(encoded, StandardCharsets.UTF_8).contains("password123"));
+        assertEquals("C001", orphaned.getCustomer().getCustomerId());
+        assertEquals("John Doe", orphaned.getCustomer().getName());
+        assertEquals("Melbourne", decoded.getShippingAddress().getCity());
+        assertEquals(2, decoded.getItems().size());
+        assertSame(phone, decoded.getItems().get(0).getProduct());
+        assertEquals("Retired Phone", decoded.getItems().get(1).getProduct().getName());
+        assertEquals(99.00, decoded.getItems().get(1).getUnitPrice(), 0.001);
+    }
+
+    @Test
+    void testOrderWithEmbeddedCustomerStillDecodes() throws Exception {
+        // Arrange
+        BinaryWriter out = new BinaryWriter(128);
+        out.writeByte(1); // format 1 embedded the whole customer
+        out.writeString("ORD_OLD");
+        out.writeLong(Long.MIN_VALUE);
+        out.writeByte(0);
+        out.writeDouble(0.0);
+        out.writeBoolean(true);
+        out.writeString("C001");
+        out.writeString("john_doe");
+        out.writeString("password123");
+        out.writeString("John Doe");
+        out.writeString("john.doe@email.com");
+        out.writeVarInt(1);
+        out.writeString("123 Main St");
+        out.writeString("Melbourne");
+        out.writeString("3000");
+        out.writeString("Australia");
+        out.writeVarInt(2); // shipping to the customer's first address
+        out.writeVarInt(0);
+
+        // Act
+        Order decoded = ModelCodecs.orders(productId -> null, customerId -> null).decode(out.toByteArray());
+
+        // Assert
+        assertEquals("ORD_OLD", decoded.getOrderId());
+        assertEquals("John Doe", decoded.getCustomer().getName());
+        assertEquals("Melbourne", decoded.getShippingAddress().getCity());
+    }
+
+    @Test
+    void testPaymentRoundTripKeepsSubtype() throws Exception {
+        // Arrange
+        BinaryCodec<Payment> codec = ModelCodecs.payments();
+        CardDetails card = new CardDetails("PAY_1", 250.0, "ORD_1", "4111111111111111", "12/27", "John Doe", "123");
+        card.authorize();
+
+        // Act
+        Payment decoded = codec.decode(codec.encode(card));
+
+        // Assert
+        assertTrue(decoded instanceof CardDetails);
+        assertEquals("PAY_1", decoded.getPaymentId());
+        assertEquals(PaymentStatus.AUTHORIZED, decoded.getStatus());
+        assertEquals("****-****-****-1111", ((CardDetails) decoded).getMaskedCardNumber());
+    }
+
+    @Test
+    void testLegacySnapshotIsMigratedOnStartup() throws Exception {
+        // Arrange
+        Map<String, Customer> legacy = new HashMap<>();
+        legacy.put("C777", new Customer("C777", "legacy_user", "secret", "Legacy User", "legacy@email.com"));
+        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(dataDir.resolve("customers.dat")))) {
+            oos.writeObject(legacy);
+        }
+
+        // Act
+        Database database = new Database(dataDir.toString(), 1);
+        database.init();
+        database.shutdown();
+
+        // Assert
+        assertTrue(Files.exists(dataDir.resolve("customers.dat.legacy")));
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(dataDir.resolve("customers.dat")))) {
+            assertEquals(SnapshotFile.MAGIC, in.readInt());
+        }
+        Database reopened = new Database(dataDir.toString(), 1);
+        reopened.init();
+        assertEquals("Legacy User", reopened.getCustomer("C777").getName());
+        reopened.shutdown();
+    }
+}
@@ -0,0 +1,123 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import com.awe.onlinestore.model.ProductFacets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the product bitmap index.
+ */
+class ProductBitmapIndexTest {
+    private ProductBitmapIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductBitmapIndex();
+        index.saved(new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, 40));
+        index.saved(new Product("P002", "Galaxy S25 Ultra", "Android", "Smartphones", 1999.00, 0));
+        index.saved(new Product("P015", "MacBook Air", "Laptop", "Laptops", 1500.00, 22));
+        index.saved(new Product("P004", "Sony WH-1000XM6", "ANC", "Headphones", 549.00, 50));
+    }
+
+    @Test
+    void testFiltersAreCombined() {
+        assertEquals(Set.of("P001", "P002", "P015", "P004"), ids(null, null, null, false));
+        assertEquals(Set.of("P001"), ids(" SMARTPHONES", null, null, true));
+        assertEquals(Set.of("P001", "P015", "P004"), ids("", null, null, true));
+        assertTrue(ids("Tablets", null, null, false).isEmpty());
+    }
+
+    @Test
+    void testPriceRangeIsInclusiveAcrossBuckets() {
+        assertEquals(Set.of("P001", "P002", "P015"), ids(null, 1500.00, 1999.00, false));
+        assertEquals(Set.of("P001", "P015"), ids(null, 1500.00, 1998.99, false));
+        assertEquals(Set.of("P004"), ids(null, null, 549.00, false));
+        assertEquals(Set.of("P002"), ids(null, 1999.00, null, false));
+        assertTrue(ids(null, 600.00, 500.00, false).isEmpty());
+    }
+
+    @Test
+    void testChangesRefileTheProduct() {
+        // Act
+        index.saved(new Product("P002", "Galaxy S25 Ultra", "Android", "Phones", 999.00, 5));
+        index.removed("P004");
+        index.saved(new Product("P020", "Pixel 10", "Android", "Phones", 899.00, 3)); // reuses P004's ordinal
+
+        // Assert
+        assertEquals(Set.of("P001"), ids("Smartphones", null, null, false));
+        assertEquals(Set.of("P002", "P020"), ids("phones", 500.00, 1000.00, true));
+        assertEquals(Set.of("P001", "P002", "P015", "P020"), ids(null, null, null, false));
+    }
+
+    @Test
+    void testSortsOnColumnsWithTiesInIdOrder() {
+        // Arrange
+        index.saved(new Product("P003", "Pixel 10", "Android", "Smartphones", 549.00, 0));
+
+        // Act & Assert
+        assertEquals(Arrays.asList("P003", "P004", "P015", "P001", "P002"),
+            index.productIds(null, null, null, false, "price", false));
+        assertEquals(Arrays.asList("P002", "P001", "P015", "P003", "P004"),
+            index.productIds(null, null, null, false, "PRICE", true));
+        assertEquals(Arrays.asList("P004", "P001", "P015"),
+            index.productIds(null, null, null, true, "stock", true));
+        assertEquals(Arrays.asList("P004", "P015", "P001", "P002", "P003"),
+            index.productIds(null, null, null, false, "category", false));
+        assertEquals(Arrays.asList("P003", "P001"),
+            index.productIds("smartphones", null, 1900.00, false, "price", false));
+        assertThrows(IllegalArgumentException.class,
+            () -> index.productIds(null, null, null, false, "name", false));
+    }
+
+    @Test
+    void testFacetsIgnoreTheirOwnFilter() {
+        // Arrange
+        index.saved(new Product("P005", "Old Phone", "Discontinued", "Smartphones", 999.00, 0));
+        List<String> categories = Arrays.asList("Headphones", "Laptops", "Smartphones");
+        double[] bands = {100, 250, 500, 1000, 2000};
+
+        // Act
+        ProductFacets facets = index.facets("smartphones", null, 1000.0, true, categories, bands);
+
+        // Assert
+        assertEquals(Arrays.asList(1, 0, 0), List.copyOf(facets.getCategoryCounts().values()));
+        ProductFacets.PriceBucket band = facets.getPriceBuckets().get(4);
+        assertEquals(1000.0, band.getMinPrice(), 0.001);
+        assertEquals(2000.0, band.getPriceBelow(), 0.001);
+        assertEquals(1, band.getCount()); // the iPhone, outside the selected price range
+        assertEquals(0, facets.getInStockCount());
+        assertEquals(1, facets.getOutOfStockCount());
+        assertEquals(0, facets.getMatchCount());
+    }
+
+    @Test
+    void testPriceBandsAreHalfOpen() {
+        // Arrange
+        index.saved(new Product("P006", "Budget Earbuds", "Sub-cent price", "Headphones", 999.995, 5));
+        double[] bands = {100, 250, 500, 1000, 2000};
+
+        // Act
+        ProductFacets facets = index.facets(null, null, null, false, List.of(), bands);
+
+        // Assert
+        ProductFacets.PriceBucket below = facets.getPriceBuckets().get(3);
+        ProductFacets.PriceBucket above = facets.getPriceBuckets().get(4);
+        assertEquals(2, below.getCount()); // 549.00 and 999.995
+        assertEquals(3, above.getCount()); // 1500.00, 1899.00 and 1999.00
+        assertEquals(Set.of("P004", "P006"), ids(null, below.getMinPrice(), below.getMaxPrice(), false));
+        assertEquals(Set.of("P001", "P002", "P015"), ids(null, above.getMinPrice(), above.getMaxPrice(), false));
+    }
+
+    private Set<String> ids(String category, Double minPrice, Double maxPrice, boolean inStockOnly) {
+        List<String> ids = index.productIds(category, minPrice, maxPrice, inStockOnly);
+        Set<String> unique = new HashSet<>(ids);
+        assertEquals(unique.size(), ids.size());
+        return unique;
+    }
+}
@@ -0,0 +1,45 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the product category index.
+ */
+class ProductCategoryIndexTest {
+    private ProductCategoryIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductCategoryIndex();
+        index.saved(new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, 40));
+        index.saved(new Product("P003", "MacBook Pro", "Laptop", "Laptops", 3299.00, 20));
+        index.saved(new Product("P004", "Sony WH-1000XM6", "ANC", "Headphones", 549.00, 50));
+    }
+
+    @Test
+    void testCategoriesAreListedAlphabetically() {
+        assertEquals(Arrays.asList("Headphones", "Laptops", "Smartphones"), index.categories());
+    }
+
+    @Test
+    void testLookupIgnoresCase() {
+        assertEquals(Set.of("P001"), index.productIds(" SMARTPHONES "));
+        assertTrue(index.productIds("Tablets").isEmpty());
+    }
+
+    @Test
+    void testProductMovingCategoryUpdatesIndex() {
+        // Act
+        index.saved(new Product("P004", "Sony WH-1000XM6", "ANC", "Audio", 549.00, 50));
+
+        // Assert
+        assertTrue(index.productIds("Headphones").isEmpty());
+        assertEquals(Set.of("P004"), index.productIds("audio"));
+        assertEquals(Arrays.asList("Audio", "Laptops", "Smartphones"), index.categories());
+    }
+}
@@ -0,0 +1,63 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the product price index.
+ */
+class ProductPriceIndexTest {
+    private ProductPriceIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductPriceIndex();
+        index.saved(new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, 40));
+        index.saved(new Product("P002", "Galaxy S25 Ultra", "Android", "Smartphones", 1999.00, 35));
+        index.saved(new Product("P015", "MacBook Air", "Laptop", "Laptops", 1899.00, 22));
+        index.saved(new Product("P004", "Sony WH-1000XM6", "ANC", "Headphones", 549.00, 50));
+    }
+
+    @Test
+    void testGlobalRangeIsInPriceOrderWithInclusiveBounds() {
+        assertEquals(Arrays.asList("P001", "P015", "P002"), index.productIds(null, 1899.00, 1999.00, false));
+        assertEquals(Arrays.asList("P002", "P015", "P001", "P004"), index.productIds(null, null, null, true));
+    }
+
+    @Test
+    void testCategoryRange() {
+        assertEquals(Arrays.asList("P001"), index.productIds("smartphones", null, 1899.00, false));
+        assertEquals(Arrays.asList("P002"), index.productIds("Smartphones", 1900.00, null, false));
+        assertEquals(Collections.emptyList(), index.productIds("Tablets", null, null, false));
+    }
+
+    @Test
+    void testPriceAndCategoryChangesMoveTheEntry() {
+        // Act
+        index.saved(new Product("P001", "iPhone 17 Pro", "Flagship", "Phones", 1499.00, 40));
+
+        // Assert
+        assertEquals(Arrays.asList("P002"), index.productIds("Smartphones", null, null, false));
+        assertEquals(Arrays.asList("P001"), index.productIds("Phones", 1000.00, 1500.00, false));
+        assertEquals(Arrays.asList("P004", "P001", "P015", "P002"), index.productIds(null, null, null, false));
+    }
+
+    @Test
+    void testPriceRangeFollowsRepricingAndDeletion() {
+        // Arrange
+        assertArrayEquals(new double[]{549.00, 1999.00}, index.priceRange(null), 0.001);
+
+        // Act
+        index.removed("P004");
+        index.saved(new Product("P002", "Galaxy S25 Ultra", "Android", "Smartphones", 1299.00, 35));
+
+        // Assert
+        assertArrayEquals(new double[]{1299.00, 1899.00}, index.priceRange(null), 0.001);
+        assertArrayEquals(new double[]{1299.00, 1899.00}, index.priceRange("SMARTPHONES"), 0.001);
+        assertArrayEquals(new double[]{0, 0}, index.priceRange("Headphones"), 0.001);
+    }
+}
@@ -0,0 +1,106 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the product search index.
+ */
+class ProductSearchIndexTest {
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductSearchIndex();
+        index.saved(new Product("P001", "iPhone 17 Pro", "Apple's latest flagship with A19 chip", "Smartphones", 1899.00, 40));
+        index.saved(new Product("P002", "Samsung Galaxy S25 Ultra", "Top-tier Android with S Pen support", "Smartphones", 1999.00, 35));
+        index.saved(new Product("P003", "MacBook Pro 2024 (M3 Pro)", "High-performance laptop with M3 Pro chip", "Laptops", 3299.00, 20));
+    }
+
+    @Test
+    void testSearchIsCaseInsensitiveAcrossFields() {
+        assertEquals(Set.of("P001"), matches("IPHONE"));
+        assertEquals(Set.of("P003"), matches("laptops"));
+        assertEquals(Set.of("P001", "P003"), matches("chip"));
+    }
+
+    @Test
+    void testAllTermsMustMatch() {
+        assertEquals(Set.of("P003"), matches("pro chip m3"));
+        assertEquals(Set.of("P001", "P003"), matches("pro chip"));
+        assertTrue(matches("pro android").isEmpty());
+    }
+
+    @Test
+    void testTermsMatchWordPrefixes() {
+        assertEquals(Set.of("P001", "P002"), matches("smart"));
+        assertEquals(Set.of("P002"), matches("gal s25"));
+    }
+
+    @Test
+    void testResavingAProductReplacesItsTokens() {
+        // Act
+        index.saved(new Product("P001", "iPhone 17", "Standard model", "Smartphones", 1399.00, 40));
+
+        // Assert
+        assertTrue(matches("flagship").isEmpty());
+        assertEquals(Set.of("P001"), matches("standard"));
+        assertEquals(Set.of("P001", "P002"), matches("smartphones"));
+    }
+
+    @Test
+    void testQueryWithoutTermsMatchesNothing() {
+        assertTrue(matches("  !! ").isEmpty());
+    }
+
+    @Test
+    void testNameMatchesRankAboveDescriptionMatches() {
+        // Arrange
+        index.saved(new Product("P004", "Studio Display", "Pro grade monitor for creative work", "Monitors", 2499.00, 10));
+
+        // Act
+        List<String> ranked = index.search("pro", 10);
+
+        // Assert
+        assertEquals(Arrays.asList("P003", "P001", "P004"), ranked);
+        assertEquals(Arrays.asList("P003"), index.search("pro", 1));
+    }
+
+    @Test
+    void testExactWordRanksAbovePrefixMatch() {
+        // Arrange
+        index.saved(new Product("P005", "ProArt Display", "Colour accurate monitor", "Monitors", 1299.00, 10));
+        index.saved(new Product("P006", "Pro Display", "Colour accurate monitor", "Monitors", 1299.00, 10));
+
+        // Act & Assert
+        assertEquals(Arrays.asList("P006", "P005"), index.search("pro display", 10));
+    }
+
+    @Test
+    void testFuzzyModeToleratesTypos() {
+        assertTrue(matches("samsng galxy").isEmpty());
+        assertEquals(Arrays.asList("P002"), index.search("samsng galxy", 10, true));
+        assertEquals(Arrays.asList("P003"), index.search("macbok lptop", 10, true));
+        assertTrue(index.search("xyzzy", 10, true).isEmpty());
+    }
+
+    @Test
+    void testExactMatchRanksAboveFuzzyMatch() {
+        // Arrange
+        index.saved(new Product("P007", "Galaxy Tab S10", "Android tablet", "Tablets", 1199.00, 15));
+        index.saved(new Product("P008", "Galax Fan", "Desk fan", "Appliances", 49.00, 15));
+
+        // Act & Assert
+        assertEquals(Arrays.asList("P007", "P002", "P008"), index.search("galaxy", 10, true)); // "galax" is one edit off
+    }
+
+    private Set<String> matches(String query) {
+        return new HashSet<>(index.search(query, Integer.MAX_VALUE));
+    }
+}
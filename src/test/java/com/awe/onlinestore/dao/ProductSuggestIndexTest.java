@@ -0,0 +1,50 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the product name suggestion index.
+ */
+class ProductSuggestIndexTest {
+    private ProductSuggestIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductSuggestIndex();
+        index.saved(new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, 40));
+        index.saved(new Product("P010", "iPhone 17 Pro Max", "Flagship", "Smartphones", 2199.00, 30));
+        index.saved(new Product("P002", "Samsung Galaxy S25 Ultra", "Android", "Smartphones", 1999.00, 35));
+    }
+
+    @Test
+    void testSuggestsNamesStartingWithPrefix() {
+        assertEquals(Arrays.asList("iPhone 17 Pro", "iPhone 17 Pro Max"), index.suggest("IPH", 10));
+    }
+
+    @Test
+    void testSuggestsNamesWithAWordStartingWithPrefix() {
+        assertEquals(Arrays.asList("Samsung Galaxy S25 Ultra"), index.suggest("galaxy  s2", 10));
+        assertEquals(Arrays.asList("iPhone 17 Pro Max"), index.suggest("max", 10));
+    }
+
+    @Test
+    void testLimitIsApplied() {
+        List<String> suggestions = index.suggest("i", 1);
+        assertEquals(1, suggestions.size());
+    }
+
+    @Test
+    void testRenamedProductDropsOldName() {
+        // Act
+        index.saved(new Product("P002", "Samsung Galaxy S26", "Android", "Smartphones", 1999.00, 35));
+
+        // Assert
+        assertTrue(index.suggest("ultra", 10).isEmpty());
+        assertEquals(Arrays.asList("Samsung Galaxy S26"), index.suggest("sam", 10));
+    }
+}
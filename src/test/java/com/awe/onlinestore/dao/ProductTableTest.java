@@ -0,0 +1,156 @@
+package com.awe.onlinestore.dao;
+
+import com.awe.onlinestore.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the memory-mapped product table.
+ */
+class ProductTableTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void testCheckpointedProductsSurviveReopen() throws Exception {
+        // Arrange
+        ProductTable table = openTable();
+        table.put("P001", new Product("P001", "iPhone 17 Pro", "Flagship – A19 chip", "Smartphones", 1899.00, 40));
+        table.put("P002", new Product("P002", "Pixel 9 Pro", null, "Smartphones", 1699.00, 28));
+        table.put("P001", new Product("P001", "iPhone 17 Pro", "Flagship – A19 chip", "Smartphones", 1799.00, 38));
+
+        // Act
+        table.capture().write();
+        table.close();
+        ProductTable reopened = openTable();
+
+        // Assert
+        assertEquals(2, reopened.size());
+        Product phone = reopened.get("P001");
+        assertEquals("Flagship – A19 chip", phone.getDescription());
+        assertEquals(1799.00, phone.getPrice(), 0.001);
+        assertEquals(38, phone.getStockQuantity());
+        assertNull(reopened.get("P002").getDescription());
+        assertEquals("P001", reopened.values().get(0).getProductId());
+        reopened.close();
+    }
+
+    @Test
+    void testWritesAfterLastCheckpointAreNotTrusted() throws Exception {
+        // Arrange
+        ProductTable table = openTable();
+        table.put("P001", new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, 40));
+        table.capture().write();
+
+        // Act - left for the journal to replay
+        table.put("P002", new Product("P002", "Pixel 9 Pro", "Google", "Smartphones", 1699.00, 28));
+        table.close();
+        ProductTable reopened = openTable();
+
+        // Assert
+        assertEquals(1, reopened.size());
+        assertNull(reopened.get("P002"));
+        reopened.close();
+    }
+
+    @Test
+    void testCheckpointedRecordSurvivesLostChange() throws Exception {
+        // Arrange
+        ProductTable table = openTable();
+        table.put("P001", new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, 40));
+        table.capture().write();
+
+        // Act - changes whose journal entries never reached disk
+        table.put("P001", new Product("P001", "iPhone 17 Pro Max", "Bigger flagship", "Smartphones", 2199.00, 12));
+        table.remove("P001");
+        table.close();
+        ProductTable reopened = openTable();
+        reopened.put("P002", new Product("P002", "Pixel 9 Pro", "Google flagship", "Smartphones", 1699.00, 28));
+
+        // Assert
+        Product phone = reopened.get("P001");
+        assertEquals("iPhone 17 Pro", phone.getName());
+        assertEquals("Flagship", phone.getDescription());
+        assertEquals(1899.00, phone.getPrice(), 0.001);
+        assertEquals(40, reopened.stockQuantity("P001"));
+        assertEquals("Google flagship", reopened.get("P002").getDescription());
+        reopened.close();
+    }
+
+    @Test
+    void testReplacedSlotsAreReused() throws Exception {
+        // Arrange
+        ProductTable table = openTable();
+        table.put("P001", new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, 40));
+        table.put("P002", new Product("P002", "Pixel 9 Pro", "Google", "Smartphones", 1699.00, 28));
+        table.capture().write();
+        long size = Files.size(dataDir.resolve("products.tbl"));
+
+        // Act
+        for (int round = 0; round < 2000; round++) {
+            table.put("P001", new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, round));
+            table.capture().write();
+        }
+        int valuesBeforeReopen = table.values().size();
+        table.close();
+        ProductTable reopened = openTable();
+
+        // Assert
+        assertEquals(2, valuesBeforeReopen);
+        assertEquals(size, Files.size(dataDir.resolve("products.tbl")));
+        assertEquals(2, reopened.values().size());
+        assertEquals(1999, reopened.get("P001").getStockQuantity());
+        reopened.close();
+    }
+
+    @Test
+    void testReturnedProductsAreCopies() throws Exception {
+        // Arrange
+        ProductTable table = openTable();
+        table.put("P001", new Product("P001", "iPhone 17 Pro", "Flagship", "Smartphones", 1899.00, 40));
+
+        // Act
+        table.get("P001").decreaseStock(5);
+
+        // Assert
+        assertEquals(40, table.get("P001").getStockQuantity());
+        table.close();
+    }
+
+    @Test
+    void testExistingSnapshotIsImported() throws Exception {
+        // Arrange
+        Map<String, Product> legacy = new HashMap<>();
+        legacy.put("P777", new Product("P777", "Legacy Speaker", "Old format", "Audio", 149.00, 12));
+        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(dataDir.resolve("products.dat")))) {
+            oos.writeObject(legacy);
+        }
+
+        // Act
+        Database database = new Database(dataDir.toString(), 1);
+        database.init();
+        database.shutdown();
+
+        // Assert
+        assertFalse(Files.exists(dataDir.resolve("products.dat")));
+        assertTrue(Files.exists(dataDir.resolve("products.dat.migrated")));
+        Database reopened = new Database(dataDir.toString(), 1);
+        reopened.init();
+        assertEquals("Legacy Speaker", reopened.getProduct("P777").getName());
+        assertEquals(1, reopened.getAllProducts().size());
+        reopened.shutdown();
+    }
+
+    private ProductTable openTable() throws Exception {
+        ProductTable table = new ProductTable(dataDir.toString(), "products", ModelCodecs.products());
+        table.load();
+        return table;
+    }
+}
@@ -0,0 +1,71 @@
+package com.awe.onlinestore.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the token trigram index.
+ */
+class TokenTrigramIndexTest {
+    private TokenTrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TokenTrigramIndex();
+        for (String token : new String[]{"samsung", "galaxy", "galax", "iphone", "macbook", "laptop"}) {
+            index.add(token);
+        }
+    }
+
+    @Test
+    void testFindsTokensWithinTheEditBound() {
+        assertEquals(Map.of("samsung", 1), index.similar("samsng", 1));
+        assertEquals(Map.of("galaxy", 1, "galax", 0), index.similar("galax", 1));
+        assertEquals(Map.of("iphone", 2), index.similar("iphnoe", 2));
+        assertTrue(index.similar("iphnoe", 1).isEmpty());
+    }
+
+    @Test
+    void testFindsShortWordsSharingNoTrigram() {
+        // Arrange
+        index.add("fan");
+
+        // Act & Assert - $fo, fon, on$ against $fa, fan, an$
+        assertEquals(Map.of("fan", 1), index.similar("fon", 1));
+        // $lx, lxp, xpt, ptx, txp, xp$ against $la, lap, apt, pto, top, op$
+        assertEquals(Map.of("laptop", 2), index.similar("lxptxp", 2));
+        assertTrue(index.similar("lxptxp", 1).isEmpty());
+    }
+
+    @Test
+    void testRemovedShortTokensAreNotFound() {
+        // Arrange
+        index.add("fan");
+
+        // Act
+        index.remove("fan");
+
+        // Assert
+        assertTrue(index.similar("fon", 1).isEmpty());
+    }
+
+    @Test
+    void testRemovedTokensAreNotFound() {
+        // Act
+        index.remove("galaxy");
+
+        // Assert
+        assertEquals(Map.of("galax", 1), index.similar("galaxy", 1));
+    }
+
+    @Test
+    void testEditDistanceIsBounded() {
+        assertEquals(0, TokenTrigramIndex.editDistance("laptop", "laptop", 2));
+        assertEquals(1, TokenTrigramIndex.editDistance("lptop", "laptop", 2));
+        assertEquals(2, TokenTrigramIndex.editDistance("ipohne", "iphone", 2));
+        assertEquals(3, TokenTrigramIndex.editDistance("tablet", "laptop", 2));
+        assertEquals(2, TokenTrigramIndex.editDistance("pro", "phone", 1));
+    }
+}
@@ -2,6 +2,8 @@ package com.awe.onlinestore.service;
 
 import com.awe.onlinestore.dao.Database;
 import com.awe.onlinestore.model.Product;
+import com.awe.onlinestore.model.ProductFacets;
+import com.awe.onlinestore.model.ProductPage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,6 +11,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -23,6 +26,9 @@ class CatalogueServiceTest {
     @Mock
     private Database database;
 
+    @Mock
+    private InventoryService inventoryService;
+
     @InjectMocks
     private CatalogueService catalogueService;
 
@@ -59,7 +65,7 @@ class CatalogueServiceTest {
     void testSearchProducts() {
         // Arrange
         List<Product> expectedProducts = Arrays.asList(smartphone);
-        when(database.searchProducts("iphone")).thenReturn(expectedProducts);
+        when(database.searchProducts("iphone", 100, false)).thenReturn(expectedProducts);
         
         // Act
         List<Product> result = catalogueService.searchProducts("iphone");
@@ -68,7 +74,37 @@ class CatalogueServiceTest {
         assertNotNull(result);
         assertEquals(1, result.size());
         assertEquals("iPhone 17 Pro", result.get(0).getName());
-        verify(database, times(1)).searchProducts("iphone");
+        verify(database, times(1)).searchProducts("iphone", 100, false);
+    }
+
+    @Test
+    void testSearchProducts_RepeatedQueryIsCached() {
+        // Arrange
+        when(database.searchProducts("iphone", 100, false)).thenReturn(Arrays.asList(smartphone));
+        
+        // Act
+        List<Product> first = catalogueService.searchProducts("iphone");
+        List<Product> second = catalogueService.searchProducts("  IPhone ");
+        
+        // Assert
+        assertSame(first, second);
+        verify(database, times(1)).searchProducts("iphone", 100, false);
+        assertThrows(UnsupportedOperationException.class, () -> second.add(laptop));
+    }
+
+    @Test
+    void testSearchProducts_FuzzyModeIsCachedSeparately() {
+        // Arrange
+        when(database.searchProducts("samsng", 100, false)).thenReturn(Arrays.asList());
+        when(database.searchProducts("samsng", 100, true)).thenReturn(Arrays.asList(smartphone));
+        
+        // Act
+        List<Product> exact = catalogueService.searchProducts("samsng");
+        List<Product> fuzzy = catalogueService.searchProducts("samsng", true);
+        
+        // Assert
+        assertTrue(exact.isEmpty());
+        assertEquals(Arrays.asList(smartphone), fuzzy);
     }
 
     @Test
@@ -133,8 +169,7 @@ class CatalogueServiceTest {
     @Test
     void testGetAllCategories() {
         // Arrange
-        List<Product> products = Arrays.asList(smartphone, laptop, headphones);
-        when(database.getAllProducts()).thenReturn(products);
+        when(database.getCategories()).thenReturn(Arrays.asList("Headphones", "Laptops", "Smartphones"));
         
         // Act
         List<String> categories = catalogueService.getAllCategories();
@@ -188,20 +223,24 @@ class CatalogueServiceTest {
     void testUpdateProductStock_Success() {
         // Arrange
         when(database.getProduct("P001")).thenReturn(smartphone);
+        when(inventoryService.reserve(anyList())).thenReturn(true);
+        when(inventoryService.commit(anyList())).thenReturn(true);
         
         // Act
         boolean result = catalogueService.updateProductStock("P001", 3);
         
         // Assert
         assertTrue(result);
-        assertEquals(7, smartphone.getStockQuantity()); // 10 - 3 = 7
-        verify(database, times(1)).saveProduct(smartphone);
+        verify(inventoryService, times(1)).commit(argThat(items ->
+            items.size() == 1 && items.get(0).getQuantity() == 3));
+        verify(database, never()).saveProduct(any());
     }
 
     @Test
     void testUpdateProductStock_InsufficientStock() {
         // Arrange
         when(database.getProduct("P001")).thenReturn(smartphone);
+        when(inventoryService.reserve(anyList())).thenReturn(false);
         
         // Act
         boolean result = catalogueService.updateProductStock("P001", 15);
@@ -209,14 +248,15 @@ class CatalogueServiceTest {
         // Assert
         assertFalse(result);
         assertEquals(10, smartphone.getStockQuantity()); // Stock unchanged
+        verify(inventoryService, never()).commit(anyList());
         verify(database, never()).saveProduct(any());
     }
 
     @Test
     void testGetFilteredAndSortedProducts() {
         // Arrange
-        List<Product> allProducts = Arrays.asList(smartphone, laptop, headphones);
-        when(database.getAllProducts()).thenReturn(allProducts);
+        when(database.getFilteredProducts("Smartphones", 1000.0, 2000.0, true))
+            .thenReturn(Arrays.asList(smartphone));
         
         // Act
         List<Product> result = catalogueService.getFilteredAndSortedProducts(
@@ -228,15 +268,74 @@ class CatalogueServiceTest {
         assertEquals("iPhone 17 Pro", result.get(0).getName());
     }
 
+    @Test
+    void testGetFilteredAndSortedProducts_PriceDescendingSortsOnIndexColumns() {
+        // Arrange
+        when(database.canSortByColumn("price")).thenReturn(true);
+        when(database.getFilteredProducts(null, null, null, true, "price", true))
+            .thenReturn(Arrays.asList(laptop, smartphone, headphones));
+        
+        // Act
+        List<Product> result = catalogueService.getFilteredAndSortedProducts(
+            null, null, null, true, "price", "desc");
+        
+        // Assert
+        assertEquals(Arrays.asList(laptop, smartphone, headphones), result);
+        verify(database, never()).getFilteredProducts(any(), any(), any(), anyBoolean());
+    }
+
+    @Test
+    void testGetFilteredAndSortedProducts_NameDescending() {
+        // Arrange
+        when(database.getFilteredProducts(null, null, null, false))
+            .thenReturn(Arrays.asList(smartphone, laptop, headphones));
+        
+        // Act
+        List<Product> result = catalogueService.getFilteredAndSortedProducts(
+            null, null, null, false, "name", "desc");
+        
+        // Assert
+        assertEquals(Arrays.asList(smartphone, headphones, laptop), result); // "iPhone", "Sony", "MacBook"
+    }
+
+    @Test
+    void testGetFilteredAndSortedProducts_RecomputedAfterCatalogueChange() {
+        // Arrange
+        when(database.getCatalogueVersion()).thenReturn(0L, 0L, 1L);
+        when(database.getFilteredProducts("Laptops", null, null, false))
+            .thenReturn(Arrays.asList(laptop));
+        
+        // Act
+        catalogueService.getFilteredAndSortedProducts("Laptops", null, null, false, "name", "asc");
+        catalogueService.getFilteredAndSortedProducts("laptops", null, null, false, "NAME", "asc");
+        catalogueService.getFilteredAndSortedProducts("Laptops", null, null, false, "name", "asc");
+        
+        // Assert
+        verify(database, times(2)).getFilteredProducts("Laptops", null, null, false);
+    }
+
+    @Test
+    void testGetProductFacets_CountedOnIndexesAndCached() {
+        // Arrange
+        ProductFacets counted = new ProductFacets(Collections.emptyMap(), Collections.emptyList(), 0, 1, 0);
+        when(database.getProductFacets(eq("smartphones"), isNull(), eq(1000.0), eq(true), any(double[].class)))
+            .thenReturn(counted);
+        
+        // Act
+        ProductFacets facets = catalogueService.getProductFacets(" Smartphones", null, 1000.0, true);
+        ProductFacets again = catalogueService.getProductFacets("smartphones", null, 1000.0, true);
+        
+        // Assert
+        assertSame(counted, facets);
+        assertSame(counted, again);
+        verify(database, times(1)).getProductFacets(anyString(), any(), any(), anyBoolean(), any(double[].class));
+        verify(database, never()).getAllProducts();
+    }
+
     @Test
     void testGetPriceRange() {
         // Arrange
-        List<Product> products = Arrays.asList(
-            new Product("P001", "Product1", "Desc1", "Cat1", 100.0, 10),
-            new Product("P002", "Product2", "Desc2", "Cat2", 500.0, 5),
-            new Product("P003", "Product3", "Desc3", "Cat3", 300.0, 8)
-        );
-        when(database.getAllProducts()).thenReturn(products);
+        when(database.getPriceRange(null)).thenReturn(new double[]{100.0, 500.0});
         
         // Act
         double[] priceRange = catalogueService.getPriceRange();
@@ -246,4 +345,132 @@ class CatalogueServiceTest {
         assertEquals(100.0, priceRange[0], 0.001);
         assertEquals(500.0, priceRange[1], 0.001);
     }
+
+    @Test
+    void testSuggestProductNames_CapsLimit() {
+        // Arrange
+        when(database.suggestProductNames("iph", 20)).thenReturn(Arrays.asList("iPhone 17 Pro"));
+        
+        // Act
+        List<String> result = catalogueService.suggestProductNames("  iph ", 500);
+        
+        // Assert
+        assertEquals(Arrays.asList("iPhone 17 Pro"), result);
+        verify(database, times(1)).suggestProductNames("iph", 20);
+    }
+
+    @Test
+    void testSuggestProductNames_EmptyQuery() {
+        // Act
+        List<String> result = catalogueService.suggestProductNames(" ", 8);
+        
+        // Assert
+        assertTrue(result.isEmpty());
+        verify(database, never()).suggestProductNames(anyString(), anyInt());
+    }
+
+    @Test
+    void testGetProductPage_PriceOrderLoadsOnlyThePage() {
+        // Arrange
+        when(database.canSortByColumn("price")).thenReturn(true);
+        when(database.getFilteredProductIds(null, null, null, false, "price", false))
+            .thenReturn(Arrays.asList("P003", "P001", "P002"));
+        when(database.getProduct("P001")).thenReturn(smartphone);
+        
+        // Act
+        ProductPage page = catalogueService.getProductPage(null, null, null, false, "price", "asc", 2, 1, null);
+        
+        // Assert
+        assertEquals(Arrays.asList(smartphone), page.getProducts());
+        assertEquals(3, page.getTotalCount());
+        assertTrue(page.getNextCursor().endsWith(":P001"));
+        verify(database, never()).getProduct("P002");
+        verify(database, never()).getProduct("P003");
+    }
+
+    @Test
+    void testGetProductPage_PriceCursorSurvivesReprice() {
+        // Arrange
+        when(database.canSortByColumn("price")).thenReturn(true);
+        when(database.getFilteredProductIds(null, null, null, false, "price", false))
+            .thenReturn(Arrays.asList("P003", "P001", "P002"), Arrays.asList("P001", "P002", "P003"));
+        when(database.getProduct("P001")).thenReturn(smartphone);
+        when(database.getProduct("P002")).thenReturn(laptop);
+        when(database.getProduct("P003")).thenReturn(headphones);
+        
+        // Act
+        ProductPage first = catalogueService.getProductPage(null, null, null, false, "price", "asc", 1, 1, null);
+        headphones.setPrice(3999.00);
+        ProductPage second = catalogueService.getProductPage(null, null, null, false, "price", "asc", 2, 1,
+            first.getNextCursor());
+        
+        // Assert
+        assertEquals(Arrays.asList(headphones), first.getProducts());
+        assertEquals(Arrays.asList(smartphone), second.getProducts());
+    }
+
+    @Test
+    void testGetProductPage_PastTheEndIsEmpty() {
+        // Arrange
+        when(database.canSortByColumn("price")).thenReturn(true);
+        when(database.getFilteredProductIds(null, null, null, false, "price", false))
+            .thenReturn(Arrays.asList("P003", "P001", "P002"));
+        when(database.getFilteredProductIds(null, null, null, false))
+            .thenReturn(Arrays.asList("P003", "P001", "P002"));
+        
+        // Act
+        ProductPage byPrice = catalogueService.getProductPage(null, null, null, false, "price", "asc",
+            Integer.MAX_VALUE, 100, null);
+        ProductPage byName = catalogueService.getProductPage(null, null, null, false, "name", "asc",
+            20_000_000, 100, null);
+        
+        // Assert
+        assertTrue(byPrice.getProducts().isEmpty());
+        assertFalse(byPrice.hasNext());
+        assertTrue(byName.getProducts().isEmpty());
+        assertEquals(3, byName.getTotalCount());
+        verify(database, never()).getProduct(anyString());
+    }
+
+    @Test
+    void testGetProductPage_NameOrderWithCursor() {
+        // Arrange
+        when(database.getFilteredProductIds(null, null, null, false))
+            .thenReturn(Arrays.asList("P003", "P001", "P002"));
+        when(database.getProduct("P001")).thenReturn(smartphone);
+        when(database.getProduct("P002")).thenReturn(laptop);
+        when(database.getProduct("P003")).thenReturn(headphones);
+        
+        // Act
+        ProductPage first = catalogueService.getProductPage(null, null, null, false, "name", "asc", 1, 2, null);
+        ProductPage second = catalogueService.getProductPage(null, null, null, false, "name", "asc", 2, 2,
+            first.getNextCursor());
+        
+        // Assert
+        assertEquals(Arrays.asList(laptop, headphones), first.getProducts()); // "MacBook", "Sony"
+        assertTrue(first.hasNext());
+        assertEquals(Arrays.asList(smartphone), second.getProducts()); // "iPhone"
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    void testGetProductPage_NameCursorSurvivesRename() {
+        // Arrange
+        when(database.getFilteredProductIds(null, null, null, false))
+            .thenReturn(Arrays.asList("P003", "P001", "P002"));
+        when(database.getProduct("P001")).thenReturn(smartphone);
+        when(database.getProduct("P002")).thenReturn(laptop);
+        when(database.getProduct("P003")).thenReturn(headphones);
+        
+        // Act
+        ProductPage first = catalogueService.getProductPage(null, null, null, false, "name", "asc", 1, 2, null);
+        headphones.setName("AirPods Max");
+        ProductPage second = catalogueService.getProductPage(null, null, null, false, "name", "asc", 2, 2,
+            first.getNextCursor());
+        
+        // Assert
+        assertEquals(Arrays.asList(laptop, headphones), first.getProducts()); // "MacBook", "Sony"
+        assertEquals(Arrays.asList(smartphone), second.getProducts()); // "iPhone"
+        assertFalse(second.hasNext());
+    }
 }
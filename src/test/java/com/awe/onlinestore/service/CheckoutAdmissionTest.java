@@ -0,0 +1,120 @@
+package com.awe.onlinestore.service;
+
+import com.awe.onlinestore.model.AdmissionMetrics;
+import com.awe.onlinestore.model.OrderItem;
+import com.awe.onlinestore.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for CheckoutAdmission class.
+ * Tests that sold-out products and full lanes turn checkouts away and that
+ * the lanes report their depth.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class CheckoutAdmissionTest {
+    private static final int LANE_CAPACITY = 64;
+
+    @Mock
+    private InventoryService inventoryService;
+
+    @InjectMocks
+    private CheckoutAdmission checkoutAdmission;
+
+    private Product smartphone;
+    private Product laptop;
+
+    @BeforeEach
+    void setUp() {
+        smartphone = new Product("P001", "iPhone 17 Pro",
+                               "Apple flagship smartphone", "Smartphones", 1899.00, 1000);
+        laptop = new Product("P002", "MacBook Pro",
+                           "Apple laptop", "Laptops", 3299.00, 0);
+        when(inventoryService.getReservableStock(any(), eq("P001"))).thenReturn(1000);
+        when(inventoryService.getReservableStock(any(), eq("P002"))).thenReturn(0);
+        when(inventoryService.getAvailableStock("P001")).thenReturn(1000);
+    }
+
+    @Test
+    void testAdmitAndLeave() {
+        // Arrange
+        List<OrderItem> items = Collections.singletonList(new OrderItem(smartphone, 1));
+
+        // Act
+        CheckoutAdmission.Ticket ticket = checkoutAdmission.admit(null, items);
+        int depthInside = checkoutAdmission.getMetrics(10).get(0).getInFlight();
+        ticket.close();
+        ticket.close();
+        AdmissionMetrics after = checkoutAdmission.getMetrics(10).get(0);
+
+        // Assert
+        assertEquals(1, depthInside);
+        assertEquals(0, after.getInFlight());
+        assertEquals(1, after.getAdmitted());
+        assertEquals(1, after.getPeakInFlight());
+    }
+
+    @Test
+    void testSoldOutIsNotRetryable() {
+        // Arrange
+        List<OrderItem> items = Arrays.asList(new OrderItem(smartphone, 1), new OrderItem(laptop, 1));
+
+        // Act
+        CheckoutRejectedException e = assertThrows(CheckoutRejectedException.class,
+            () -> checkoutAdmission.admit(null, items));
+
+        // Assert
+        assertFalse(e.isRetryable());
+        assertEquals("P002", e.getProductId());
+        assertTrue(e.getMessage().contains("MacBook Pro"));
+        for (AdmissionMetrics metrics : checkoutAdmission.getMetrics(10)) {
+            assertEquals(0, metrics.getInFlight());
+        }
+    }
+
+    @Test
+    void testFullLaneShedsAndLeavesOtherLanes() {
+        // Arrange
+        // Sorts before P001, so its lane is entered before P001's turns out full
+        Product headphones = new Product("P000", "Sony WH-1000XM6",
+                                         "Noise cancelling headphones", "Headphones", 549.00, 1000);
+        when(inventoryService.getReservableStock(any(), eq("P000"))).thenReturn(1000);
+        List<CheckoutAdmission.Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < LANE_CAPACITY; i++) {
+            tickets.add(checkoutAdmission.admit(null, Collections.singletonList(new OrderItem(smartphone, 1))));
+        }
+
+        // Act
+        CheckoutRejectedException e = assertThrows(CheckoutRejectedException.class,
+            () -> checkoutAdmission.admit(null,
+                Arrays.asList(new OrderItem(headphones, 1), new OrderItem(smartphone, 1))));
+        tickets.get(0).close();
+        CheckoutAdmission.Ticket afterLeaving =
+            checkoutAdmission.admit(null, Collections.singletonList(new OrderItem(smartphone, 1)));
+
+        // Assert
+        assertTrue(e.isRetryable());
+        assertEquals("P001", e.getProductId());
+        assertNotNull(afterLeaving);
+        List<AdmissionMetrics> metrics = checkoutAdmission.getMetrics(10);
+        assertEquals("P001", metrics.get(0).getProductId());
+        assertEquals(LANE_CAPACITY, metrics.get(0).getInFlight());
+        assertEquals(1, metrics.get(0).getShed());
+        assertEquals("P000", metrics.get(1).getProductId());
+        assertEquals(0, metrics.get(1).getInFlight());
+    }
+}
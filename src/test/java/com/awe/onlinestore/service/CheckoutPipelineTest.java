@@ -0,0 +1,206 @@
+package com.awe.onlinestore.service;
+
+import com.awe.onlinestore.model.Address;
+import com.awe.onlinestore.model.Cart;
+import com.awe.onlinestore.model.CheckoutStatus;
+import com.awe.onlinestore.model.Customer;
+import com.awe.onlinestore.model.Order;
+import com.awe.onlinestore.model.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for CheckoutPipeline class.
+ * Tests that checkouts go through every stage, that failures give their
+ * stock back, that a full pipeline turns checkouts away and that only the
+ * session that submitted a checkout can see it.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class CheckoutPipelineTest {
+
+    @Mock
+    private CheckoutService checkoutService;
+
+    @Mock
+    private InventoryService inventoryService;
+
+    @InjectMocks
+    private CheckoutAdmission checkoutAdmission;
+
+    private CheckoutPipeline pipeline;
+    private Cart cart;
+    private Customer customer;
+    private Address address;
+
+    @BeforeEach
+    void setUp() {
+        Product smartphone = new Product("P001", "iPhone 17 Pro",
+                                       "Apple flagship smartphone", "Smartphones", 1899.00, 50);
+        cart = new Cart();
+        cart.addItem(smartphone, 2);
+        customer = new Customer("C001", "guest", "guest", "Guest User", "guest@example.com");
+        address = new Address("1 Main St", "Melbourne", "3000", "Australia");
+
+        when(inventoryService.getReservableStock(any(), eq("P001"))).thenReturn(50);
+        when(checkoutService.newOrderId()).thenReturn("ORD_1", "ORD_2", "ORD_3");
+        when(checkoutService.validate(any(), any(), any())).thenReturn(true);
+        when(checkoutService.reserve(any(), any())).thenAnswer(invocation ->
+            checkoutAdmission.admit(null, invocation.<Cart>getArgument(0).getItems()));
+        when(checkoutService.buildOrder(any(), any(), any(), any())).thenAnswer(invocation ->
+            new Order(invocation.getArgument(0), invocation.getArgument(2), invocation.getArgument(3)));
+        when(checkoutService.persistOrder(any(), any())).thenReturn(true);
+
+        pipeline = new CheckoutPipeline(checkoutService, 2, 16, 600);
+        pipeline.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void testCheckoutIsConfirmedAfterEveryStage() throws Exception {
+        // Act
+        String orderId = pipeline.submit(cart, customer, address, "session-1");
+        CheckoutStatus status = awaitFinished(orderId);
+
+        // Assert
+        assertEquals("ORD_1", orderId);
+        assertEquals(CheckoutStatus.State.CONFIRMED, status.getState());
+        assertEquals("persist", status.getStage());
+        assertEquals("ORD_1", pipeline.getOrder(orderId, "session-1").getOrderId());
+        assertEquals(0, checkoutAdmission.getMetrics(10).get(0).getInFlight());
+        verify(checkoutService).reserve(any(), eq("session-1"));
+        verify(checkoutService).persistOrder(any(), any());
+        verify(checkoutService, never()).release(any());
+    }
+
+    @Test
+    void testCartIsCopiedWhenSubmitted() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        when(checkoutService.validate(any(), any(), any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+
+        // Act
+        String orderId = pipeline.submit(cart, customer, address, "session-1");
+        cart.clear();
+        release.countDown();
+        CheckoutStatus status = awaitFinished(orderId);
+
+        // Assert
+        assertTrue(cart.isEmpty());
+        assertEquals(CheckoutStatus.State.CONFIRMED, status.getState());
+        verify(checkoutService).persistOrder(any(), argThat(copy -> copy.getTotalQuantity() == 2));
+    }
+
+    @Test
+    void testSoldOutCheckoutFails() throws Exception {
+        // Arrange
+        when(checkoutService.reserve(any(), any()))
+            .thenThrow(new CheckoutRejectedException("Sorry, iPhone 17 Pro has sold out.", "P001", false));
+
+        // Act
+        String orderId = pipeline.submit(cart, customer, address, "session-1");
+        CheckoutStatus status = awaitFinished(orderId);
+
+        // Assert
+        assertEquals(CheckoutStatus.State.FAILED, status.getState());
+        assertEquals("Sorry, iPhone 17 Pro has sold out.", status.getMessage());
+        assertNull(pipeline.getOrder(orderId, "session-1"));
+        verify(checkoutService, never()).buildOrder(any(), any(), any(), any());
+        verify(checkoutService, never()).release(any());
+    }
+
+    @Test
+    void testFailedSaveGivesStockBack() throws Exception {
+        // Arrange
+        when(checkoutService.persistOrder(any(), any())).thenReturn(false);
+
+        // Act
+        String orderId = pipeline.submit(cart, customer, address, "session-1");
+        CheckoutStatus status = awaitFinished(orderId);
+
+        // Assert
+        assertEquals(CheckoutStatus.State.FAILED, status.getState());
+        assertEquals("persist", status.getStage());
+        assertEquals(0, checkoutAdmission.getMetrics(10).get(0).getInFlight());
+        verify(checkoutService).release(any());
+    }
+
+    @Test
+    void testFullPipelineTurnsCheckoutsAway() throws Exception {
+        // Arrange
+        pipeline.shutdown();
+        pipeline = new CheckoutPipeline(checkoutService, 1, 1, 600);
+        pipeline.init();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(checkoutService.validate(any(), any(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+
+        // Act
+        String running = pipeline.submit(cart, customer, address, "session-1");
+        started.await(5, TimeUnit.SECONDS);
+        String queued = pipeline.submit(cart, customer, address, "session-1");
+        CheckoutRejectedException rejected = assertThrows(CheckoutRejectedException.class,
+            () -> pipeline.submit(cart, customer, address, "session-1"));
+        release.countDown();
+
+        // Assert
+        assertTrue(rejected.isRetryable());
+        assertNull(pipeline.getStatus("ORD_3", "session-1"));
+        assertEquals(CheckoutStatus.State.CONFIRMED, awaitFinished(running).getState());
+        assertEquals(CheckoutStatus.State.CONFIRMED, awaitFinished(queued).getState());
+    }
+
+    @Test
+    void testUnknownCheckoutHasNoStatus() {
+        // Act & Assert
+        assertNull(pipeline.getStatus("ORD_MISSING", "session-1"));
+        assertNull(pipeline.getOrder("ORD_MISSING", "session-1"));
+    }
+
+    @Test
+    void testOtherSessionCannotSeeCheckout() throws Exception {
+        // Act
+        String orderId = pipeline.submit(cart, customer, address, "session-1");
+        awaitFinished(orderId);
+
+        // Assert
+        assertNull(pipeline.getStatus(orderId, "session-2"));
+        assertNull(pipeline.getOrder(orderId, "session-2"));
+        assertNotNull(pipeline.getOrder(orderId, "session-1"));
+    }
+
+    private CheckoutStatus awaitFinished(String orderId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        CheckoutStatus status = pipeline.getStatus(orderId, "session-1");
+        while (status.getState() == CheckoutStatus.State.PENDING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            status = pipeline.getStatus(orderId, "session-1");
+        }
+        return status;
+    }
+}
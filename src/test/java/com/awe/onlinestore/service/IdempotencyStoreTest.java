@@ -0,0 +1,125 @@
+package com.awe.onlinestore.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for IdempotencyStore class.
+ * Tests that a key runs its submission once, that failures are not
+ * remembered and that keys expire and are bounded.
+ */
+class IdempotencyStoreTest {
+
+    @Test
+    void testRepeatedKeyReturnsOriginalResult() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(100, 3600);
+        AtomicInteger runs = new AtomicInteger();
+
+        // Act
+        String first = store.execute("checkout", "key-1", () -> "ORD_" + runs.incrementAndGet());
+        String repeat = store.execute("checkout", "key-1", () -> "ORD_" + runs.incrementAndGet());
+        String otherScope = store.execute("payment", "key-1", () -> "PAY_" + runs.incrementAndGet());
+        String noKey = store.execute("checkout", null, () -> "ORD_" + runs.incrementAndGet());
+
+        // Assert
+        assertEquals("ORD_1", first);
+        assertEquals("ORD_1", repeat);
+        assertEquals("PAY_2", otherScope);
+        assertEquals("ORD_3", noKey);
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void testRepeatWhileRunningWaitsForFirst() throws Exception {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(100, 3600);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+
+        // Act
+        Future<String> first = pool.submit(() -> store.execute("checkout", "key-1", () -> {
+            started.countDown();
+            await(release);
+            return "ORD_" + runs.incrementAndGet();
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<String> repeat = pool.submit(() ->
+            store.execute("checkout", "key-1", () -> "ORD_" + runs.incrementAndGet()));
+        Thread.sleep(50);
+        release.countDown();
+
+        // Assert
+        assertEquals("ORD_1", first.get(5, TimeUnit.SECONDS));
+        assertEquals("ORD_1", repeat.get(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        pool.shutdown();
+    }
+
+    @Test
+    void testFailureIsNotRemembered() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(100, 3600);
+
+        // Act
+        String failed = store.execute("checkout", "key-1", () -> null);
+        assertThrows(IllegalStateException.class, () -> store.execute("checkout", "key-2", () -> {
+            throw new IllegalStateException("sold out");
+        }));
+        String retried = store.execute("checkout", "key-1", () -> "ORD_1");
+        String retriedAfterException = store.execute("checkout", "key-2", () -> "ORD_2");
+
+        // Assert
+        assertNull(failed);
+        assertEquals("ORD_1", retried);
+        assertEquals("ORD_2", retriedAfterException);
+    }
+
+    @Test
+    void testExpiredKeyRunsAgain() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(100, 0);
+
+        // Act
+        String first = store.execute("checkout", "key-1", () -> "ORD_1");
+        String afterExpiry = store.execute("checkout", "key-1", () -> "ORD_2");
+
+        // Assert
+        assertEquals("ORD_1", first);
+        assertEquals("ORD_2", afterExpiry);
+    }
+
+    @Test
+    void testOldestKeysAreDroppedWhenFull() {
+        // Arrange
+        IdempotencyStore store = new IdempotencyStore(2, 3600);
+        store.execute("checkout", "key-1", () -> "ORD_1");
+        store.execute("checkout", "key-2", () -> "ORD_2");
+
+        // Act
+        store.execute("checkout", "key-3", () -> "ORD_3");
+        String oldest = store.execute("checkout", "key-1", () -> "ORD_1_AGAIN");
+        String newest = store.execute("checkout", "key-3", () -> "ORD_3_AGAIN");
+
+        // Assert
+        assertEquals("ORD_1_AGAIN", oldest);
+        assertEquals("ORD_3", newest);
+        assertTrue(store.size() <= 2);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.awe.onlinestore.service;
+
+import com.awe.onlinestore.dao.Database;
+import com.awe.onlinestore.dao.UnitOfWork;
+import com.awe.onlinestore.model.OrderItem;
+import com.awe.onlinestore.model.Product;
+import com.awe.onlinestore.model.StockEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for InventoryService class.
+ * Tests all-or-nothing cart reservations and that concurrent buyers of the
+ * same product never take more than its stock.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class InventoryServiceTest {
+
+    @Mock
+    private Database database;
+
+    @Mock
+    private UnitOfWork unitOfWork;
+
+    @InjectMocks
+    private InventoryService inventoryService;
+
+    private Product smartphone;
+    private Product laptop;
+
+    @BeforeEach
+    void setUp() {
+        smartphone = new Product("P001", "iPhone 17 Pro",
+                               "Apple flagship smartphone", "Smartphones", 1899.00, 10);
+        laptop = new Product("P002", "MacBook Pro",
+                           "Apple laptop", "Laptops", 3299.00, 2);
+        when(database.getUnreservedStock("P001")).thenReturn(10);
+        when(database.getUnreservedStock("P002")).thenReturn(2);
+        when(database.getUnreservedStock("P999")).thenReturn(-1);
+        when(database.getStockQuantity("P001")).thenAnswer(invocation -> smartphone.getStockQuantity());
+        when(database.getStockQuantity("P002")).thenAnswer(invocation -> laptop.getStockQuantity());
+        when(database.saveStockLevel(anyString(), anyInt())).thenReturn(CompletableFuture.completedFuture(null));
+        when(database.recordStockEvent(anyString(), any(StockEvent.Type.class), anyInt()))
+            .thenReturn(CompletableFuture.completedFuture(null));
+        when(database.beginUnitOfWork()).thenReturn(unitOfWork);
+        when(unitOfWork.commit()).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    void testReserveTakesStockForEveryLine() {
+        // Arrange
+        List<OrderItem> items = Arrays.asList(new OrderItem(smartphone, 3), new OrderItem(laptop, 2));
+
+        // Act
+        boolean result = inventoryService.reserve(items);
+
+        // Assert
+        assertTrue(result);
+        assertEquals(7, inventoryService.getAvailableStock("P001"));
+        assertEquals(0, inventoryService.getAvailableStock("P002"));
+        verify(database, never()).recordStockEvent(anyString(), any(StockEvent.Type.class), anyInt());
+        verify(database, never()).beginUnitOfWork();
+        verify(database, never()).saveStockLevel(anyString(), anyInt());
+    }
+
+    @Test
+    void testWriteBackSavesChangedStockOnce() {
+        // Arrange
+        inventoryService.reserve(Collections.singletonList(new OrderItem(smartphone, 3)));
+        inventoryService.reserve(Collections.singletonList(new OrderItem(smartphone, 2)));
+
+        // Act
+        int saved = inventoryService.writeBackStock();
+        int savedAgain = inventoryService.writeBackStock();
+
+        // Assert
+        assertEquals(1, saved);
+        assertEquals(0, savedAgain);
+        verify(database, times(1)).saveStockLevel("P001", 5);
+    }
+
+    @Test
+    void testCommitRecordsSale() {
+        // Arrange
+        List<OrderItem> items = Collections.singletonList(new OrderItem(smartphone, 3));
+        inventoryService.reserve(items);
+
+        // Act
+        boolean result = inventoryService.commit(items);
+
+        // Assert
+        assertTrue(result);
+        assertEquals(7, inventoryService.getAvailableStock("P001"));
+        verify(unitOfWork).recordStockEvent("P001", StockEvent.Type.RESERVE, 3);
+        verify(unitOfWork).recordStockEvent("P001", StockEvent.Type.COMMIT, 3);
+        verify(unitOfWork, times(1)).commit();
+    }
+
+    @Test
+    void testFailedSaleIsPutBack() {
+        // Arrange
+        List<OrderItem> items = Collections.singletonList(new OrderItem(smartphone, 3));
+        when(unitOfWork.commit()).thenReturn(CompletableFuture.failedFuture(new IOException("Disk full")));
+        inventoryService.reserve(items);
+
+        // Act
+        boolean result = inventoryService.commit(items);
+
+        // Assert
+        assertFalse(result);
+        assertEquals(10, inventoryService.getAvailableStock("P001"));
+    }
+
+    @Test
+    void testCommitStagesSaleInUnitOfWork() {
+        // Arrange
+        List<OrderItem> items = Arrays.asList(new OrderItem(smartphone, 3), new OrderItem(smartphone, 1));
+        UnitOfWork orderUnitOfWork = mock(UnitOfWork.class);
+        inventoryService.reserve(items);
+
+        // Act
+        inventoryService.commit(items, orderUnitOfWork);
+
+        // Assert
+        verify(orderUnitOfWork).recordStockEvent("P001", StockEvent.Type.RESERVE, 4);
+        verify(orderUnitOfWork).recordStockEvent("P001", StockEvent.Type.COMMIT, 4);
+        verify(orderUnitOfWork, never()).commit();
+        verify(database, never()).beginUnitOfWork();
+        verify(database, never()).recordStockEvent(anyString(), any(StockEvent.Type.class), anyInt());
+    }
+
+    @Test
+    void testRestock() {
+        // Act
+        boolean result = inventoryService.restock("P002", 5);
+        boolean unknown = inventoryService.restock("P999", 5);
+
+        // Assert
+        assertTrue(result);
+        assertFalse(unknown);
+        assertEquals(7, inventoryService.getAvailableStock("P002"));
+        verify(database).recordStockEvent("P002", StockEvent.Type.RESTOCK, 5);
+    }
+
+    @Test
+    void testStockSavedWithProductMovesCount() {
+        // Arrange
+        inventoryService.reserve(Collections.singletonList(new OrderItem(smartphone, 3)));
+
+        // Act
+        int level = inventoryService.stockSaved("P001", 15);
+
+        // Assert
+        assertEquals(15, level);
+        assertEquals(15, inventoryService.getAvailableStock("P001"));
+        verify(database).recordStockEvent("P001", StockEvent.Type.RESTOCK, 8);
+    }
+
+    @Test
+    void testStockSavedBelowHeldUnitsKeepsHold() {
+        // Arrange
+        inventoryService.hold("S1", Collections.singletonList(new OrderItem(smartphone, 4)));
+
+        // Act
+        int level = inventoryService.stockSaved("P001", 1);
+
+        // Assert
+        assertEquals(4, level);
+        assertEquals(0, inventoryService.getAvailableStock("P001"));
+        assertEquals(4, inventoryService.getHeldStock("P001"));
+        verify(database).recordStockEvent("P001", StockEvent.Type.WRITE_OFF, 6);
+    }
+
+    @Test
+    void testReserveTakesNothingWhenOneLineIsShort() {
+        // Arrange
+        List<OrderItem> items = Arrays.asList(new OrderItem(smartphone, 3), new OrderItem(laptop, 5));
+
+        // Act
+        boolean result = inventoryService.reserve(items);
+
+        // Assert
+        assertFalse(result);
+        assertEquals(10, inventoryService.getAvailableStock("P001"));
+        assertEquals(2, inventoryService.getAvailableStock("P002"));
+        verify(database, never()).recordStockEvent(anyString(), any(StockEvent.Type.class), anyInt());
+    }
+
+    @Test
+    void testReserveAddsUpLinesForTheSameProduct() {
+        // Arrange
+        List<OrderItem> items = Arrays.asList(new OrderItem(laptop, 1), new OrderItem(laptop, 2));
+
+        // Act
+        boolean result = inventoryService.reserve(items);
+
+        // Assert
+        assertFalse(result);
+        assertEquals(2, inventoryService.getAvailableStock("P002"));
+    }
+
+    @Test
+    void testReserveUnknownProduct() {
+        // Arrange
+        Product missing = new Product("P999", "Discontinued", "Gone", "Misc", 10.00, 5);
+
+        // Act
+        boolean result = inventoryService.reserve(
+            Arrays.asList(new OrderItem(smartphone, 1), new OrderItem(missing, 1)));
+
+        // Assert
+        assertFalse(result);
+        assertEquals(10, inventoryService.getAvailableStock("P001"));
+        assertEquals(-1, inventoryService.getAvailableStock("P999"));
+    }
+
+    @Test
+    void testReleasePutsStockBack() {
+        // Arrange
+        List<OrderItem> items = Collections.singletonList(new OrderItem(smartphone, 4));
+        inventoryService.reserve(items);
+
+        // Act
+        inventoryService.release(items);
+
+        // Assert
+        assertEquals(10, inventoryService.getAvailableStock("P001"));
+        verify(database, never()).recordStockEvent(anyString(), any(StockEvent.Type.class), anyInt());
+        assertEquals(0, inventoryService.writeBackStock());
+    }
+
+    @Test
+    void testHoldSetsStockAsideWithoutSaving() {
+        // Arrange
+        List<OrderItem> items = Collections.singletonList(new OrderItem(laptop, 2));
+
+        // Act
+        boolean held = inventoryService.hold("S1", items);
+        boolean othersReserve = inventoryService.reserve(Collections.singletonList(new OrderItem(laptop, 1)));
+
+        // Assert
+        assertTrue(held);
+        assertFalse(othersReserve);
+        assertEquals(0, inventoryService.getAvailableStock("P002"));
+        assertEquals(2, inventoryService.getHeldStock("P002"));
+        verify(database, never()).recordStockEvent(anyString(), any(StockEvent.Type.class), anyInt());
+        assertEquals(0, inventoryService.writeBackStock());
+    }
+
+    @Test
+    void testReserveUsesHold() {
+        // Arrange
+        List<OrderItem> items = Collections.singletonList(new OrderItem(laptop, 2));
+        inventoryService.hold("S1", items);
+
+        // Act
+        boolean result = inventoryService.reserve("S1", items);
+
+        // Assert
+        assertTrue(result);
+        assertEquals(0, inventoryService.getAvailableStock("P002"));
+        assertEquals(0, inventoryService.getHeldStock("P002"));
+        assertEquals(0, inventoryService.getHoldCount());
+    }
+
+    @Test
+    void testReserveReturnsHeldUnitsNoLongerInCart() {
+        // Arrange
+        inventoryService.hold("S1", Arrays.asList(new OrderItem(smartphone, 4), new OrderItem(laptop, 1)));
+
+        // Act
+        boolean result = inventoryService.reserve("S1", Collections.singletonList(new OrderItem(smartphone, 1)));
+
+        // Assert
+        assertTrue(result);
+        assertEquals(9, inventoryService.getAvailableStock("P001"));
+        assertEquals(2, inventoryService.getAvailableStock("P002"));
+        assertEquals(0, inventoryService.getHeldStock("P001"));
+        assertEquals(0, inventoryService.getHeldStock("P002"));
+    }
+
+    @Test
+    void testHoldAgainMovesOnlyTheDifference() {
+        // Arrange
+        inventoryService.hold("S1", Collections.singletonList(new OrderItem(smartphone, 4)));
+
+        // Act
+        boolean result = inventoryService.hold("S1", Collections.singletonList(new OrderItem(smartphone, 6)));
+
+        // Assert
+        assertTrue(result);
+        assertEquals(4, inventoryService.getAvailableStock("P001"));
+        assertEquals(6, inventoryService.getHeldStock("P001"));
+        assertEquals(1, inventoryService.getHoldCount());
+    }
+
+    @Test
+    void testExpiredHoldReturnsStock() {
+        // Arrange
+        inventoryService.hold("S1", Collections.singletonList(new OrderItem(laptop, 2)));
+
+        // Act
+        int early = inventoryService.expireHolds(System.currentTimeMillis());
+        int expired = inventoryService.expireHolds(System.currentTimeMillis()
+            + TimeUnit.SECONDS.toMillis(inventoryService.getHoldTtlSeconds()) + 1_000);
+
+        // Assert
+        assertEquals(0, early);
+        assertEquals(1, expired);
+        assertEquals(2, inventoryService.getAvailableStock("P002"));
+        assertEquals(0, inventoryService.getHeldStock("P002"));
+        assertEquals(0, inventoryService.getHoldCount());
+    }
+
+    @Test
+    void testUsedHoldDoesNotExpireLater() {
+        // Arrange
+        List<OrderItem> items = Collections.singletonList(new OrderItem(laptop, 2));
+        inventoryService.hold("S1", items);
+        inventoryService.reserve("S1", items);
+
+        // Act
+        inventoryService.expireHolds(System.currentTimeMillis()
+            + TimeUnit.SECONDS.toMillis(inventoryService.getHoldTtlSeconds()) + 1_000);
+
+        // Assert
+        assertEquals(0, inventoryService.getAvailableStock("P002"));
+    }
+
+    @Test
+    void testCancelHold() {
+        // Arrange
+        inventoryService.hold("S1", Collections.singletonList(new OrderItem(smartphone, 3)));
+
+        // Act
+        boolean cancelled = inventoryService.cancelHold("S1");
+
+        // Assert
+        assertTrue(cancelled);
+        assertFalse(inventoryService.cancelHold("S1"));
+        assertEquals(10, inventoryService.getAvailableStock("P001"));
+    }
+
+    @Test
+    void testConcurrentReservationsNeverOversell() throws Exception {
+        // Arrange
+        int buyers = 8;
+        int attemptsPerBuyer = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(buyers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        // Act
+        for (int b = 0; b < buyers; b++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                int bought = 0;
+                for (int i = 0; i < attemptsPerBuyer; i++) {
+                    if (inventoryService.reserve(Collections.singletonList(new OrderItem(smartphone, 1)))) {
+                        bought++;
+                    }
+                }
+                return bought;
+            }));
+        }
+        start.countDown();
+        int sold = 0;
+        for (Future<Integer> result : results) {
+            sold += result.get();
+        }
+        pool.shutdown();
+
+        // Assert
+        assertEquals(10, sold);
+        assertEquals(0, inventoryService.getAvailableStock("P001"));
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.awe.onlinestore.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the catalogue query cache.
+ */
+class QueryCacheTest {
+
+    @Test
+    void testResultIsReusedUntilVersionChanges() {
+        // Arrange
+        QueryCache<List<String>> cache = new QueryCache<>(10, List::size);
+        AtomicInteger computations = new AtomicInteger();
+
+        // Act
+        cache.get("phones", 1, () -> Arrays.asList("P00" + computations.incrementAndGet()));
+        List<String> cached = cache.get("phones", 1, () -> Arrays.asList("P00" + computations.incrementAndGet()));
+        List<String> refreshed = cache.get("phones", 2, () -> Arrays.asList("P00" + computations.incrementAndGet()));
+
+        // Assert
+        assertEquals(Arrays.asList("P001"), cached);
+        assertEquals(Arrays.asList("P002"), refreshed);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testSlowOlderResultDoesNotReplaceNewerEntry() {
+        // Arrange
+        QueryCache<List<String>> cache = new QueryCache<>(10, List::size);
+
+        // Act - a request at version 1 finishes after one at version 2 has been cached
+        List<String> stale = cache.get("phones", 1, () -> {
+            cache.get("phones", 2, () -> Arrays.asList("P002"));
+            return Arrays.asList("P001");
+        });
+
+        // Assert
+        assertEquals(Arrays.asList("P001"), stale);
+        assertEquals(Arrays.asList("P002"), cache.get("phones", 2, () -> { throw new AssertionError("should be cached"); }));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvictedByWeight() {
+        // Arrange
+        QueryCache<List<String>> cache = new QueryCache<>(4, List::size);
+        cache.get("a", 1, () -> Arrays.asList("P001", "P002"));
+        cache.get("b", 1, () -> Arrays.asList("P003", "P004"));
+        cache.get("a", 1, () -> { throw new AssertionError("should be cached"); });
+
+        // Act
+        cache.get("c", 1, () -> Arrays.asList("P005"));
+
+        // Assert
+        assertEquals(2, cache.size());
+        assertEquals(Arrays.asList("P001", "P002"), cache.get("a", 1, () -> { throw new AssertionError("should be cached"); }));
+        assertEquals(Arrays.asList("P009"), cache.get("b", 1, () -> Arrays.asList("P009")));
+    }
+
+    @Test
+    void testOversizedResultIsNotCached() {
+        // Arrange
+        QueryCache<List<String>> cache = new QueryCache<>(1, List::size);
+
+        // Act
+        List<String> result = cache.get("all", 1, () -> Arrays.asList("P001", "P002"));
+
+        // Assert
+        assertEquals(2, result.size());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testKeyKeepsNullApartFromEmpty() {
+        assertNotEquals(QueryCache.key(null, "name"), QueryCache.key("", "name"));
+        assertEquals(QueryCache.key("laptops", 10.0, true), QueryCache.key("laptops", 10.0, true));
+    }
+}
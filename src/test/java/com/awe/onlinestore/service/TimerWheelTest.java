@@ -0,0 +1,85 @@
+package com.awe.onlinestore.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TimerWheel class.
+ * Tests that items expire on the first advance at or after their deadline,
+ * including deadlines more than one revolution away.
+ */
+class TimerWheelTest {
+    private static final long TICK = 100;
+    private static final int SLOTS = 8;
+
+    private final List<String> expired = new ArrayList<>();
+    private final TimerWheel<String> wheel = new TimerWheel<>(TICK, SLOTS, 0, expired::add);
+
+    @Test
+    void testItemExpiresAtItsDeadline() {
+        // Arrange
+        wheel.schedule("a", 250);
+
+        // Act
+        int early = wheel.advance(299);
+        int due = wheel.advance(300);
+
+        // Assert
+        assertEquals(0, early);
+        assertEquals(1, due);
+        assertEquals(Arrays.asList("a"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testItemBeyondOneRevolutionWaitsForItsRound() {
+        // Arrange
+        long deadline = TICK * SLOTS * 2 + 50;
+        wheel.schedule("far", deadline);
+        wheel.schedule("near", 100);
+
+        // Act
+        wheel.advance(TICK * SLOTS + 100);
+        List<String> afterOneRevolution = new ArrayList<>(expired);
+        wheel.advance(deadline + TICK);
+
+        // Assert
+        assertEquals(Arrays.asList("near"), afterOneRevolution);
+        assertEquals(Arrays.asList("near", "far"), expired);
+    }
+
+    @Test
+    void testAdvancingFarAheadExpiresEverythingDue() {
+        // Arrange
+        for (int i = 0; i < 50; i++) {
+            wheel.schedule("item" + i, i * 37L);
+        }
+        wheel.schedule("later", 100_000);
+
+        // Act
+        int count = wheel.advance(10_000);
+
+        // Assert
+        assertEquals(50, count);
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void testPastDeadlineExpiresOnNextTick() {
+        // Arrange
+        wheel.advance(1_000);
+        wheel.schedule("late", 500);
+
+        // Act
+        int sameTick = wheel.advance(1_050);
+        int count = wheel.advance(1_000 + TICK);
+
+        // Assert
+        assertEquals(0, sameTick);
+        assertEquals(1, count);
+        assertEquals(Arrays.asList("late"), expired);
+    }
+}